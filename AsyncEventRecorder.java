@@ -29,7 +29,8 @@ import org.strongback.components.Clock;
  * A thread-safe and lock-free {@link EventRecorder} implementation that records all events to a thread-safe queue and then when
  * {@link #execute(long) executed} writes all enqueued events in the same order as received. The {@link AsyncEventRecorder} is
  * {@link Executable}, and is designed to be {@link Executor#register(Executable) registered} with an {@link Executor} to
- * automatically and periodically write the enqueued events to the given {@link EventWriter}.
+ * automatically and periodically write the enqueued events to the given {@link EventWriter}. The events can also be written to
+ * an optional {@link EventTimeline} that is used to {@link #query(String, long, long, EventHandler) query} recent events.
  *
  * @author Randall Hauch
  */
@@ -92,12 +93,18 @@ final class AsyncEventRecorder implements EventRecorder {
 
     private final ConcurrentMap<String, EventType> eventTypes = new ConcurrentHashMap<>();
     private final QueuedWriter queuedWriter;
+    private final EventTimeline timeline;
     private final Clock clock;
 
     protected AsyncEventRecorder(EventWriter writer, Clock clock) {
+        this(writer, null, clock);
+    }
+
+    protected AsyncEventRecorder(EventWriter writer, EventTimeline timeline, Clock clock) {
         this.eventTypes.put(NEW_EVENT_TYPE.typeName(), NEW_EVENT_TYPE);
         this.clock = clock;
-        this.queuedWriter = new QueuedWriter(writer);
+        this.timeline = timeline;
+        this.queuedWriter = new QueuedWriter(both(writer, timeline));
     }
 
     protected int typeNumber(String eventType) {
@@ -129,6 +136,51 @@ final class AsyncEventRecorder implements EventRecorder {
         queuedWriter.execute(timeInMillis);
     }
 
+    @Override
+    public int query(String eventType, long fromMillis, long toMillis, EventHandler handler) {
+        return timeline != null ? timeline.query(eventType, fromMillis, toMillis, handler) : 0;
+    }
+
+    /**
+     * Obtain an {@link EventWriter} that writes to both of the given writers.
+     *
+     * @param first the first writer; may be null
+     * @param second the second writer; may be null
+     * @return the writer; may be null only if both of the writers are null
+     */
+    protected static EventWriter both(EventWriter first, EventWriter second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        return new EventWriter() {
+            @Override
+            public void recordEventType(long timeInMillis, EventType newType) {
+                first.recordEventType(timeInMillis, newType);
+                second.recordEventType(timeInMillis, newType);
+            }
+
+            @Override
+            public void recordEvent(long timeInMillis, int eventType, String value) {
+                first.recordEvent(timeInMillis, eventType, value);
+                second.recordEvent(timeInMillis, eventType, value);
+            }
+
+            @Override
+            public void recordEvent(long timeInMillis, int eventType, int value) {
+                first.recordEvent(timeInMillis, eventType, value);
+                second.recordEvent(timeInMillis, eventType, value);
+            }
+
+            @Override
+            public void close() {
+                try {
+                    first.close();
+                } finally {
+                    second.close();
+                }
+            }
+        };
+    }
+
     @FunctionalInterface
     protected static interface Event {
         public void write(EventWriter writer);
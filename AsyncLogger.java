@@ -0,0 +1,346 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.strongback.Logger.Level;
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * A hierarchy of {@link Logger}s that hand off messages to a separate logging thread, which then writes them to
+ * {@link System#out} and {@link System#err}. The thread that logs a message (often Strongback's executor thread) never formats
+ * messages, never writes to the console, and never blocks.
+ * <p>
+ * There is one {@link #root() root logger} plus any number of {@link #logger(String) named loggers} (e.g., "{@code drive}" or
+ * "{@code drive.left}"). Each logger can be {@link #enable(String, Level) given its own level} at any time, and otherwise uses
+ * the level of its nearest ancestor.
+ * <p>
+ * Messages are handed off through a bounded, lock-free ring buffer of reusable entries: a logging thread claims the next entry
+ * with a single compare-and-set, fills in the level, the message format, the arguments and any exception, and then publishes the
+ * entry. The logging thread formats and writes the published entries in order, and sleeps briefly whenever the buffer is empty.
+ * When the buffer is full, new messages are dropped and the number of dropped messages is reported later.
+ * <p>
+ * Arguments are formatted on the logging thread, so any argument that is not an immutable value (a string, a boxed primitive or
+ * an enum) is converted to a string when the message is logged, so that the message shows the argument as it was at that time.
+ * <p>
+ * Repeated exceptions are rate-limited: the stack trace of an exception of the same class thrown from the same place is
+ * written at most once per interval, so a misbehaving command cannot flood the console with stack traces. Messages are always
+ * written, and those whose stack trace is suppressed include a description of the exception instead. The number of suppressed
+ * stack traces is written with the next stack trace that is not suppressed.
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+final class AsyncLogger {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final long DEFAULT_STACK_TRACE_INTERVAL_IN_MILLIS = 5000L;
+    private static final long IDLE_PAUSE_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int MAX_TRACKED_EXCEPTIONS = 256;
+
+    private final NamedLogger root = new NamedLogger(null, this, NamedLogger.mask(Level.INFO));
+    private final ConcurrentMap<String, NamedLogger> loggers = new ConcurrentHashMap<>();
+    private final Map<String, Level> levels = new ConcurrentHashMap<>();
+    private volatile Level rootLevel = Level.INFO;
+    private final Entry[] entries;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0L;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicReference<Thread> thread = new AtomicReference<>();
+    private final PrintStream out;
+    private final PrintStream err;
+    private final long stackTraceIntervalInNanos;
+
+    // These are only used by the logging thread ...
+    private final Map<String, ExceptionHistory> exceptions = new HashMap<>();
+
+    AsyncLogger() {
+        this(System.out, System.err, DEFAULT_CAPACITY, DEFAULT_STACK_TRACE_INTERVAL_IN_MILLIS);
+    }
+
+    /**
+     * Create a new logger.
+     *
+     * @param out the stream to which messages are written; may not be null
+     * @param err the stream to which stack traces are written; may not be null
+     * @param capacity the minimum number of messages that can be waiting to be written; must be positive
+     * @param stackTraceIntervalInMillis the minimum time between writing the same kind of exception thrown from the same place
+     */
+    AsyncLogger(PrintStream out, PrintStream err, int capacity, long stackTraceIntervalInMillis) {
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.entries = new Entry[size];
+        for (int i = 0; i != size; ++i) {
+            entries[i] = new Entry();
+        }
+        this.mask = size - 1;
+        this.out = out;
+        this.err = err;
+        this.stackTraceIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(stackTraceIntervalInMillis);
+    }
+
+    /**
+     * Get the root logger, whose level is used by all named loggers that do not have their own level.
+     *
+     * @return the root logger; never null
+     */
+    public Logger root() {
+        return root;
+    }
+
+    /**
+     * Get the logger with the given name. Names are hierarchical with each level separated by a '.' character, so that a
+     * logger named "{@code drive.left}" uses the level of "{@code drive}" unless it has its own level.
+     *
+     * @param name the name of the logger; may be null or empty for the root logger
+     * @return the logger; never null
+     */
+    public Logger logger(String name) {
+        if (name == null || name.isEmpty()) return root;
+        NamedLogger logger = loggers.get(name);
+        if (logger == null) {
+            synchronized (this) {
+                logger = loggers.computeIfAbsent(name, n -> new NamedLogger(n, this, effectiveMask(n)));
+            }
+        }
+        return logger;
+    }
+
+    /**
+     * Set the level of the root logger.
+     *
+     * @param level the level; may not be null
+     * @return this object so that methods can be chained together; never null
+     */
+    public AsyncLogger enable(Level level) {
+        return enable(null, level);
+    }
+
+    /**
+     * Set the level of the named logger and all of its descendants that do not have their own level. The change applies to
+     * loggers that have already been obtained, even while they are being used to log messages.
+     *
+     * @param name the name of the logger; may be null or empty for the root logger
+     * @param level the level; may be null to remove the named logger's own level so that it uses its parent's level, but may
+     *        not be null for the root logger
+     * @return this object so that methods can be chained together; never null
+     */
+    public synchronized AsyncLogger enable(String name, Level level) {
+        if (name == null || name.isEmpty()) {
+            if (level == null) throw new IllegalArgumentException("The level of the root logger may not be null");
+            rootLevel = level;
+        } else if (level == null) {
+            levels.remove(name);
+        } else {
+            levels.put(name, level);
+        }
+        // Recompute the effective levels of all loggers ...
+        root.setEnabled(NamedLogger.mask(rootLevel));
+        loggers.forEach((loggerName, logger) -> logger.setEnabled(effectiveMask(loggerName)));
+        return this;
+    }
+
+    private int effectiveMask(String name) {
+        String current = name;
+        while (current != null) {
+            Level level = levels.get(current);
+            if (level != null) return NamedLogger.mask(level);
+            int index = current.lastIndexOf('.');
+            current = index > 0 ? current.substring(0, index) : null;
+        }
+        return NamedLogger.mask(rootLevel);
+    }
+
+    /**
+     * Get the number of messages that were dropped because the buffer was full.
+     *
+     * @return the number of dropped messages
+     */
+    public long droppedMessageCount() {
+        return dropped.get();
+    }
+
+    void enqueue(String name, String levelName, Throwable t, String format, Object[] args) {
+        if (thread.get() == null) start();
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= entries.length) {
+                // The buffer is full, so drop the message rather than wait ...
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        Entry entry = entries[(int) sequence & mask];
+        entry.name = name;
+        entry.level = levelName;
+        entry.throwable = t;
+        entry.format = format;
+        entry.args = snapshot(args);
+        // Publish the entry ...
+        entry.sequence = sequence + 1;
+    }
+
+    /**
+     * Convert to strings any arguments that might change before the logging thread formats them.
+     *
+     * @param args the arguments; may be null
+     * @return the given arguments if they are all immutable, or otherwise a copy in which the mutable arguments are replaced
+     *         with their string representations
+     */
+    private static Object[] snapshot(Object[] args) {
+        if (args == null) return null;
+        Object[] result = args;
+        for (int i = 0; i != args.length; ++i) {
+            if (!isImmutable(args[i])) {
+                if (result == args) result = args.clone();
+                result[i] = String.valueOf(args[i]);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isImmutable(Object arg) {
+        return arg == null || arg instanceof String || arg instanceof Integer || arg instanceof Long || arg instanceof Double
+                || arg instanceof Float || arg instanceof Short || arg instanceof Byte || arg instanceof Boolean
+                || arg instanceof Character || arg instanceof Enum;
+    }
+
+    private void start() {
+        Thread logging = new Thread(this::run, "Strongback Logger");
+        logging.setDaemon(true);
+        logging.setPriority(Thread.NORM_PRIORITY - 1);
+        // Only the thread that publishes the logging thread starts it, so there is never more than one ...
+        if (thread.compareAndSet(null, logging)) {
+            logging.start();
+            // Write anything remaining when the JVM shuts down ...
+            Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "Strongback Logger Shutdown"));
+        }
+    }
+
+    private void run() {
+        while (true) {
+            if (drain() == 0) LockSupport.parkNanos(IDLE_PAUSE_IN_NANOS);
+        }
+    }
+
+    /**
+     * Write all published messages. This is called only by the logging thread or when the JVM is shutting down.
+     *
+     * @return the number of messages that were written or suppressed
+     */
+    synchronized int drain() {
+        int count = 0;
+        long next = head;
+        Entry entry = entries[(int) next & mask];
+        while (entry.sequence == next + 1) {
+            String name = entry.name;
+            String levelName = entry.level;
+            Throwable t = entry.throwable;
+            String format = entry.format;
+            Object[] args = entry.args;
+            entry.throwable = null;
+            entry.format = null;
+            entry.args = null;
+            // Release the entry so that it can be reused ...
+            head = ++next;
+            write(name, levelName, t, format, args);
+            ++count;
+            entry = entries[(int) next & mask];
+        }
+        long droppedCount = dropped.getAndSet(0);
+        if (droppedCount != 0) out.println("WARN " + droppedCount + " log messages were dropped");
+        return count;
+    }
+
+    private void write(String name, String levelName, Throwable t, String format, Object[] args) {
+        String prefix = name != null ? levelName + " [" + name + "] " : levelName + " ";
+        String suffix = "";
+        boolean writeStackTrace = t != null;
+        if (t != null) {
+            ExceptionHistory history = history(t);
+            long now = System.nanoTime();
+            if (history.written && now - history.lastWrittenInNanos < stackTraceIntervalInNanos) {
+                // Write the message, but describe the exception rather than writing its stack trace ...
+                ++history.suppressed;
+                writeStackTrace = false;
+                suffix = ": " + t;
+            } else {
+                if (history.suppressed != 0) suffix = " (" + history.suppressed + " similar stack traces suppressed)";
+                history.written = true;
+                history.lastWrittenInNanos = now;
+                history.suppressed = 0;
+            }
+        }
+        if (format != null) {
+            out.println(prefix + Logger.format(format, args) + suffix);
+        } else if (!suffix.isEmpty()) {
+            out.println(prefix + (writeStackTrace ? suffix.trim() : t.toString()));
+        }
+        if (writeStackTrace) t.printStackTrace(err);
+    }
+
+    private ExceptionHistory history(Throwable t) {
+        StackTraceElement[] stack = t.getStackTrace();
+        String key = stack.length != 0 ? t.getClass().getName() + " at " + stack[0] : t.getClass().getName();
+        ExceptionHistory history = exceptions.get(key);
+        if (history == null) {
+            if (exceptions.size() >= MAX_TRACKED_EXCEPTIONS) exceptions.clear();
+            history = new ExceptionHistory();
+            exceptions.put(key, history);
+        }
+        return history;
+    }
+
+    @Override
+    public String toString() {
+        return levels.isEmpty() ? root.toString() : root.toString() + " " + levels;
+    }
+
+    /**
+     * A reusable slot in the ring buffer. The fields are written by the thread that claimed the slot, and are then published by
+     * writing the volatile {@link #sequence}.
+     */
+    private static final class Entry {
+        protected volatile long sequence = 0L;
+        protected String name;
+        protected String level;
+        protected Throwable throwable;
+        protected String format;
+        protected Object[] args;
+    }
+
+    /**
+     * The history of one kind of exception thrown from one place.
+     */
+    private static final class ExceptionHistory {
+        protected boolean written;
+        protected long lastWrittenInNanos;
+        protected int suppressed;
+    }
+}
@@ -16,10 +16,11 @@
 
 package org.strongback;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.BooleanSupplier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.strongback.annotation.Immutable;
 import org.strongback.annotation.ThreadSafe;
@@ -29,109 +30,332 @@ import org.strongback.components.Switch;
  * A threadsafe {@link SwitchReactor} implementation that relies upon being periodically {@link Executable#execute(long)
  * executed}. This class is carefully written to ensure that all functions are registered atomically even while
  * {@link #execute(long)} is being called.
+ * <p>
+ * Registering a function compiles all of the registered switches and functions into a new immutable {@link Snapshot}, where
+ * each switch has a fixed index and the functions for each kind of state or transition are stored in flat arrays. Each
+ * {@link #execute(long) execution} uses the current snapshot to read the state of every switch into a bitset, and then computes
+ * which switches were triggered, untriggered, remain triggered and remain untriggered using bitwise operations on 64 switches
+ * at a time. Only the functions of those switches that have functions for the corresponding state or transition are called, and
+ * no objects are allocated.
+ * <p>
+ * The functions for one switch and one kind of state or transition are called in the order they were registered. It is not
+ * currently possible to remove functions that have been registered.
+ * <p>
+ * Time-based detectors (debouncing, long presses, multiple clicks and rate-limited repeats) are also compiled into the
+ * snapshot as flat arrays of switch indexes, kinds and parameters. Each detector's state is kept in primitive arrays that are
+ * updated every execution from the switch states and the execution time.
  *
  * @author Randall Hauch
  */
 @ThreadSafe
 final class AsyncSwitchReactor implements Executable, SwitchReactor {
 
-    private final ConcurrentMap<Switch, Container> listeners = new ConcurrentHashMap<>();
+    private static final int WHEN_TRIGGERED = 0;
+    private static final int WHEN_UNTRIGGERED = 1;
+    private static final int WHILE_TRIGGERED = 2;
+    private static final int WHILE_UNTRIGGERED = 3;
+    private static final int KINDS = 4;
+
+    private static final int DEBOUNCE_TRIGGERED = 0;
+    private static final int DEBOUNCE_UNTRIGGERED = 1;
+    private static final int LONG_PRESS = 2;
+    private static final int MULTI_CLICK = 3;
+    private static final int REPEAT = 4;
+
+    // Guarded by 'this' and used only to compile new snapshots ...
+    private final Map<Switch, Integer> indexes = new HashMap<>();
+    private final List<Switch> switches = new ArrayList<>();
+    private final List<List<List<Runnable>>> functions = new ArrayList<>();
+    private final List<Detector> detectors = new ArrayList<>();
+
+    private volatile Snapshot snapshot = new Snapshot(new Switch[0], new ArrayList<>(), new ArrayList<>());
+
+    // These are only used by the thread calling 'execute' ...
+    private long[] previous = new long[0];
+    private long[] current = new long[0];
+    private boolean[] detectorRaw = new boolean[0];
+    private int[] detectorState = new int[0];
+    private long[] detectorTime = new long[0];
 
     @Override
     public void execute(long time) {
-        listeners.forEach((swtch, container) -> container.notifyListeners(swtch.isTriggered()));
+        Snapshot snapshot = this.snapshot;
+        int words = snapshot.words;
+        if (previous.length != words) {
+            // Switches are only ever added to the end, so the existing states keep their positions ...
+            long[] prev = new long[words];
+            System.arraycopy(previous, 0, prev, 0, Math.min(previous.length, words));
+            previous = prev;
+            current = new long[words];
+        }
+        long[] prev = previous;
+        long[] now = current;
+
+        // Read the state of every switch ...
+        Switch[] switches = snapshot.switches;
+        int count = switches.length;
+        for (int word = 0; word != words; ++word) {
+            long bits = 0L;
+            int base = word << 6;
+            int end = Math.min(count, base + 64);
+            for (int i = base; i != end; ++i) {
+                if (switches[i].isTriggered()) bits |= 1L << (i - base);
+            }
+            now[word] = bits;
+        }
+
+        // Compute the transitions and states, and call the functions for only those switches that need them ...
+        long[] hasWhenTriggered = snapshot.hasFunctions[WHEN_TRIGGERED];
+        long[] hasWhenUntriggered = snapshot.hasFunctions[WHEN_UNTRIGGERED];
+        long[] hasWhileTriggered = snapshot.hasFunctions[WHILE_TRIGGERED];
+        long[] hasWhileUntriggered = snapshot.hasFunctions[WHILE_UNTRIGGERED];
+        for (int word = 0; word != words; ++word) {
+            long was = prev[word];
+            long is = now[word];
+            prev[word] = is;
+            int base = word << 6;
+            fire(snapshot, WHEN_TRIGGERED, base, is & ~was & hasWhenTriggered[word]);
+            fire(snapshot, WHEN_UNTRIGGERED, base, ~is & was & hasWhenUntriggered[word]);
+            fire(snapshot, WHILE_TRIGGERED, base, is & was & hasWhileTriggered[word]);
+            fire(snapshot, WHILE_UNTRIGGERED, base, ~is & ~was & hasWhileUntriggered[word]);
+        }
+
+        if (snapshot.detectorSwitches.length != 0) detect(snapshot, now, time);
+    }
+
+    /**
+     * Update the state of every detector given the current switch states and time, and call the functions of the detectors
+     * that fire.
+     */
+    private void detect(Snapshot snapshot, long[] now, long time) {
+        int[] switchIndexes = snapshot.detectorSwitches;
+        int count = switchIndexes.length;
+        if (detectorRaw.length != count) {
+            // Detectors are only ever added to the end, so the existing states keep their positions ...
+            detectorRaw = Arrays.copyOf(detectorRaw, count);
+            detectorState = Arrays.copyOf(detectorState, count);
+            detectorTime = Arrays.copyOf(detectorTime, count);
+        }
+        boolean[] raw = detectorRaw;
+        int[] state = detectorState;
+        long[] since = detectorTime;
+        int[] kinds = snapshot.detectorKinds;
+        long[] millis = snapshot.detectorMillis;
+        int[] clicks = snapshot.detectorClicks;
+        Runnable[] functions = snapshot.detectorFunctions;
+        for (int i = 0; i != count; ++i) {
+            int index = switchIndexes[i];
+            boolean triggered = (now[index >>> 6] & (1L << (index & 63))) != 0L;
+            boolean changed = triggered != raw[i];
+            raw[i] = triggered;
+            switch (kinds[i]) {
+                case DEBOUNCE_TRIGGERED:
+                case DEBOUNCE_UNTRIGGERED:
+                    // The state is 1 when the debounced switch is triggered, and 'since' is when the switch last changed ...
+                    if (changed) since[i] = time;
+                    boolean stable = state[i] != 0;
+                    if (triggered != stable && time - since[i] >= millis[i]) {
+                        state[i] = triggered ? 1 : 0;
+                        if (triggered == (kinds[i] == DEBOUNCE_TRIGGERED)) functions[i].run();
+                    }
+                    break;
+                case LONG_PRESS:
+                    // The state is 1 once the function has been called, and 'since' is when the switch was triggered ...
+                    if (!triggered) {
+                        state[i] = 0;
+                    } else {
+                        if (changed) since[i] = time;
+                        if (state[i] == 0 && time - since[i] >= millis[i]) {
+                            state[i] = 1;
+                            functions[i].run();
+                        }
+                    }
+                    break;
+                case MULTI_CLICK:
+                    // The state is the number of clicks so far, and 'since' is when the first of those clicks happened ...
+                    if (changed && triggered) {
+                        if (state[i] == 0 || time - since[i] > millis[i]) {
+                            state[i] = 0;
+                            since[i] = time;
+                        }
+                        if (++state[i] >= clicks[i]) {
+                            state[i] = 0;
+                            functions[i].run();
+                        }
+                    }
+                    break;
+                case REPEAT:
+                    // The 'since' is when the function was last called ...
+                    if (triggered && (changed || time - since[i] >= millis[i])) {
+                        since[i] = time;
+                        functions[i].run();
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static void fire(Snapshot snapshot, int kind, int base, long bits) {
+        if (bits == 0L) return;
+        int[] starts = snapshot.starts[kind];
+        Runnable[] functions = snapshot.functions[kind];
+        while (bits != 0L) {
+            int index = base + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            for (int i = starts[index], end = starts[index + 1]; i != end; ++i) {
+                functions[i].run();
+            }
+        }
     }
 
     @Override
     public void onTriggered(Switch swtch, Runnable function) {
-        listeners.computeIfAbsent(swtch,(s)->new Container()).addWhenTriggered(function);
+        add(swtch, WHEN_TRIGGERED, function);
     }
 
     @Override
     public void onUntriggered(Switch swtch, Runnable function) {
-        listeners.computeIfAbsent(swtch,(s)->new Container()).addWhenUntriggered(function);
+        add(swtch, WHEN_UNTRIGGERED, function);
     }
 
     @Override
     public void whileTriggered(Switch swtch, Runnable function) {
-        listeners.computeIfAbsent(swtch,(s)->new Container()).addWhileTriggered(function);
+        add(swtch, WHILE_TRIGGERED, function);
     }
 
     @Override
     public void whileUntriggered(Switch swtch, Runnable function) {
-        listeners.computeIfAbsent(swtch,(s)->new Container()).addWhileUntriggered(function);
+        add(swtch, WHILE_UNTRIGGERED, function);
     }
 
-    /**
-     * A container class for all listener functions associated with a specific {@link Switch}. The class is threadsafe to allow
-     * for new listener functions to be added while the existing functions are called based upon the switch's current state.
-     * <p>
-     * To achieve efficient and lock-free concurrent operations, each of the functions for a specific Switch state or transition
-     * are maintained in a simple linked-list structure (see {@link Listener}). Each immutable Listener is created to hold one
-     * function and an optional "next" listener. To add a new function, a new Listener object is created with the function and
-     * the current Listener object for that state, and the Container's reference to that state's listeners is updated with the
-     * new Listener object. In essence, new functions are added to the front of the linked list without using any locking.
-     * <p>
-     * It is not currently possible to remove functions that have been registered.
-     *
-     * @author Randall Hauch
-     */
-    @ThreadSafe
-    private static final class Container {
-        private boolean previouslyTriggered;
-        private final AtomicReference<Listener> whenTriggered = new AtomicReference<>();
-        private final AtomicReference<Listener> whenUntriggered = new AtomicReference<>();
-        private final AtomicReference<Listener> whileTriggered = new AtomicReference<>();
-        private final AtomicReference<Listener> whileUntriggered = new AtomicReference<>();
-
-        public void notifyListeners(boolean nowTriggered) {
-            notifyAtomicallyWhen(()->!previouslyTriggered && nowTriggered, whenTriggered);
-            notifyAtomicallyWhen(()->previouslyTriggered && !nowTriggered, whenUntriggered);
-            notifyAtomicallyWhen(()->previouslyTriggered && nowTriggered, whileTriggered);
-            notifyAtomicallyWhen(()->!previouslyTriggered && !nowTriggered, whileUntriggered);
-            previouslyTriggered = nowTriggered;
-        }
+    @Override
+    public void onTriggeredDebounced(Switch swtch, long debounceInMillis, Runnable function) {
+        addDetector(swtch, DEBOUNCE_TRIGGERED, debounceInMillis, 0, function);
+    }
 
-        private void notifyAtomicallyWhen(BooleanSupplier criteria, AtomicReference<Listener> listenerRef ) {
-            Listener listener = listenerRef.get();
-            if ( listener != null && criteria.getAsBoolean() ) listener.fire();
-        }
+    @Override
+    public void onUntriggeredDebounced(Switch swtch, long debounceInMillis, Runnable function) {
+        addDetector(swtch, DEBOUNCE_UNTRIGGERED, debounceInMillis, 0, function);
+    }
 
-        public void addWhenTriggered(Runnable function) {
-            whenTriggered.updateAndGet((existing)->new Listener(function,existing));
-        }
+    @Override
+    public void onLongPress(Switch swtch, long holdInMillis, Runnable function) {
+        addDetector(swtch, LONG_PRESS, holdInMillis, 0, function);
+    }
 
-        public void addWhenUntriggered(Runnable function) {
-            whenUntriggered.updateAndGet((existing)->new Listener(function,existing));
-        }
+    @Override
+    public void onMultiClick(Switch swtch, int clicks, long windowInMillis, Runnable function) {
+        if (clicks <= 0) throw new IllegalArgumentException("The number of clicks must be positive");
+        addDetector(swtch, MULTI_CLICK, windowInMillis, clicks, function);
+    }
 
-        public void addWhileTriggered(Runnable function) {
-            whileTriggered.updateAndGet((existing)->new Listener(function,existing));
-        }
+    @Override
+    public void whileTriggeredEvery(Switch swtch, long intervalInMillis, Runnable function) {
+        addDetector(swtch, REPEAT, intervalInMillis, 0, function);
+    }
+
+    private synchronized void addDetector(Switch swtch, int kind, long millis, int clicks, Runnable function) {
+        if (millis < 0) throw new IllegalArgumentException("The time may not be negative");
+        detectors.add(new Detector(indexOf(swtch), kind, millis, clicks, function));
+        snapshot = new Snapshot(switches.toArray(new Switch[switches.size()]), functions, detectors);
+    }
 
-        public void addWhileUntriggered(Runnable function) {
-            whileUntriggered.updateAndGet((existing)->new Listener(function,existing));
+    private synchronized void add(Switch swtch, int kind, Runnable function) {
+        functions.get(indexOf(swtch)).get(kind).add(function);
+        snapshot = new Snapshot(switches.toArray(new Switch[switches.size()]), functions, detectors);
+    }
+
+    private int indexOf(Switch swtch) {
+        Integer index = indexes.get(swtch);
+        if (index == null) {
+            index = switches.size();
+            indexes.put(swtch, index);
+            switches.add(swtch);
+            List<List<Runnable>> lists = new ArrayList<>(KINDS);
+            for (int i = 0; i != KINDS; ++i) {
+                lists.add(new ArrayList<>(1));
+            }
+            functions.add(lists);
         }
+        return index;
     }
 
     /**
-     * One node in a linked list of listener functions.
+     * The registration of one time-based detector.
      *
      * @author Randall Hauch
      */
     @Immutable
-    private static final class Listener {
-        private final Runnable function;
-        private final Listener next;
+    private static final class Detector {
+        protected final int switchIndex;
+        protected final int kind;
+        protected final long millis;
+        protected final int clicks;
+        protected final Runnable function;
 
-        public Listener(Runnable function, Listener next) {
+        protected Detector(int switchIndex, int kind, long millis, int clicks, Runnable function) {
+            this.switchIndex = switchIndex;
+            this.kind = kind;
+            this.millis = millis;
+            this.clicks = clicks;
             this.function = function;
-            this.next = next;
         }
+    }
+
+    /**
+     * An immutable compiled form of all registered switches and functions. Each switch has an index, and for each kind of
+     * state or transition the functions of switch {@code i} are {@code functions[kind][starts[kind][i]]} up to (but excluding)
+     * {@code functions[kind][starts[kind][i+1]]}.
+     *
+     * @author Randall Hauch
+     */
+    @Immutable
+    private static final class Snapshot {
+        protected final Switch[] switches;
+        protected final int words;
+        protected final long[][] hasFunctions = new long[KINDS][];
+        protected final int[][] starts = new int[KINDS][];
+        protected final Runnable[][] functions = new Runnable[KINDS][];
+        protected final int[] detectorSwitches;
+        protected final int[] detectorKinds;
+        protected final long[] detectorMillis;
+        protected final int[] detectorClicks;
+        protected final Runnable[] detectorFunctions;
 
-        public void fire() {
-            function.run();
-            if (next != null) next.fire();
+        protected Snapshot(Switch[] switches, List<List<List<Runnable>>> functionsBySwitch, List<Detector> detectors) {
+            this.switches = switches;
+            this.words = (switches.length + 63) >>> 6;
+            for (int kind = 0; kind != KINDS; ++kind) {
+                long[] has = new long[words];
+                int[] start = new int[switches.length + 1];
+                List<Runnable> flattened = new ArrayList<>();
+                for (int i = 0; i != switches.length; ++i) {
+                    start[i] = flattened.size();
+                    List<Runnable> fns = functionsBySwitch.get(i).get(kind);
+                    if (!fns.isEmpty()) {
+                        has[i >>> 6] |= 1L << (i & 63);
+                        flattened.addAll(fns);
+                    }
+                }
+                start[switches.length] = flattened.size();
+                hasFunctions[kind] = has;
+                starts[kind] = start;
+                functions[kind] = flattened.toArray(new Runnable[flattened.size()]);
+            }
+            int count = detectors.size();
+            detectorSwitches = new int[count];
+            detectorKinds = new int[count];
+            detectorMillis = new long[count];
+            detectorClicks = new int[count];
+            detectorFunctions = new Runnable[count];
+            for (int i = 0; i != count; ++i) {
+                Detector detector = detectors.get(i);
+                detectorSwitches[i] = detector.switchIndex;
+                detectorKinds[i] = detector.kind;
+                detectorMillis[i] = detector.millis;
+                detectorClicks[i] = detector.clicks;
+                detectorFunctions[i] = detector.function;
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -16,6 +16,10 @@
 
 package org.strongback;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.strongback.annotation.Immutable;
 import org.strongback.annotation.ThreadSafe;
 import org.strongback.command.Command;
 
@@ -34,6 +38,10 @@ import org.strongback.command.Command;
  * <p>
  * Implementations of this class are expected to be thread-safe so that any of the {@link #record(String, String) record(...)}
  * methods can be called from any threads without having to lock or synchronize access.
+ * <p>
+ * When Strongback is {@link Strongback.Configurator#recordEventsInMemory(int) configured} to retain recent events in memory,
+ * the recorder can also {@link #query(String, long, long) query} those events by type and time range without re-reading any
+ * files. Otherwise the query methods return no events.
  *
  * @author Randall Hauch
  */
@@ -66,6 +74,114 @@ public interface EventRecorder extends Executable {
         record(eventType, value ? 1 : 0);
     }
 
+    /**
+     * Find all of the recent events with the given type that occurred within the given time range, and pass each of them in
+     * time order to the supplied handler. Only events retained in memory can be found.
+     *
+     * @param eventType the type of event; may be null if events of all types are to be found
+     * @param fromMillis the earliest time (in milliseconds, inclusive) of the events to be found
+     * @param toMillis the latest time (in milliseconds, inclusive) of the events to be found
+     * @param handler the function that will be called with each matching event; may not be null
+     * @return the number of events passed to the handler
+     */
+    default public int query(String eventType, long fromMillis, long toMillis, EventHandler handler) {
+        return 0;
+    }
+
+    /**
+     * Find all of the recent events with the given type that occurred within the given time range. Only events retained in
+     * memory can be found.
+     *
+     * @param eventType the type of event; may be null if events of all types are to be found
+     * @param fromMillis the earliest time (in milliseconds, inclusive) of the events to be found
+     * @param toMillis the latest time (in milliseconds, inclusive) of the events to be found
+     * @return the matching events in time order; never null but possibly empty
+     */
+    default public List<Event> query(String eventType, long fromMillis, long toMillis) {
+        List<Event> results = new ArrayList<>();
+        query(eventType, fromMillis, toMillis, (time, type, stringValue, intValue) -> {
+            results.add(new Event(time, type, stringValue, intValue));
+        });
+        return results;
+    }
+
+    /**
+     * A function that is called with each event found by a {@link EventRecorder#query(String, long, long, EventHandler) query}.
+     */
+    @FunctionalInterface
+    public static interface EventHandler {
+        /**
+         * Handle one recorded event.
+         *
+         * @param timeInMillis the time (in milliseconds) of the event
+         * @param eventType the type of event; never null
+         * @param stringValue the event details for events recorded with a string value, or null for events recorded with an
+         *        integer value
+         * @param intValue the event detail for events recorded with an integer value, or 0 for events recorded with a string
+         *        value
+         */
+        public void handle(long timeInMillis, String eventType, String stringValue, int intValue);
+    }
+
+    /**
+     * An event found by a {@link EventRecorder#query(String, long, long) query}.
+     */
+    @Immutable
+    public static final class Event {
+        private final long timeInMillis;
+        private final String eventType;
+        private final String stringValue;
+        private final int intValue;
+
+        public Event(long timeInMillis, String eventType, String stringValue, int intValue) {
+            this.timeInMillis = timeInMillis;
+            this.eventType = eventType;
+            this.stringValue = stringValue;
+            this.intValue = intValue;
+        }
+
+        /**
+         * Get the time of the event.
+         *
+         * @return the time in milliseconds
+         */
+        public long timeInMillis() {
+            return timeInMillis;
+        }
+
+        /**
+         * Get the type of the event.
+         *
+         * @return the event type; never null
+         */
+        public String eventType() {
+            return eventType;
+        }
+
+        /**
+         * Get the string value of the event.
+         *
+         * @return the string value, or null if the event was recorded with an integer value
+         */
+        public String stringValue() {
+            return stringValue;
+        }
+
+        /**
+         * Get the integer value of the event.
+         *
+         * @return the integer value, or 0 if the event was recorded with a string value
+         */
+        public int intValue() {
+            return intValue;
+        }
+
+        @Override
+        public String toString() {
+            return timeInMillis + " " + eventType + "=" + (stringValue != null ? stringValue : Integer.toString(intValue));
+        }
+    }
+
     /**
      * Return an {@link EventRecorder} implementation that does nothing.
      *
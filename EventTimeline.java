@@ -0,0 +1,336 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.strongback.AsyncEventRecorder.EventType;
+import org.strongback.AsyncEventRecorder.EventWriter;
+import org.strongback.EventRecorder.EventHandler;
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * A bounded in-memory store of recent events that can be queried by event type and time range. The timeline is an
+ * {@link EventWriter}, so the {@link AsyncEventRecorder} writes events to it on the executor thread, while any other thread can
+ * {@link #query(String, long, long, EventHandler) query} it at the same time.
+ * <p>
+ * Events are kept in a series of fixed-size partitions that each cover a contiguous range of time. Within a partition the
+ * times, types and values of the events are stored in separate primitive arrays, and each event type has a posting list of the
+ * positions of its events. Because events are appended in time order, both the partitions and the posting lists can be binary
+ * searched by time. When the timeline is full, the oldest partition is discarded.
+ * <p>
+ * There is only one writer, so each partition publishes newly-written events by updating a single volatile size field. Readers
+ * only look at events below that size, and partitions are never reused once they are discarded.
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+final class EventTimeline implements EventWriter {
+
+    protected static final int DEFAULT_PARTITION_SIZE = 4096;
+
+    private final int partitionSize;
+    private final int maxPartitions;
+    private final ConcurrentMap<String, Integer> typeIndexByName = new ConcurrentHashMap<>();
+    private volatile String[] typeNames = new String[16];
+    private volatile Partition[] partitions = new Partition[0];
+
+    // These are only used by the writer thread ...
+    private int[] typeIndexByTypeNumber = new int[16];
+    private Partition current;
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * Create a timeline that retains approximately the given number of the most recent events.
+     *
+     * @param maxEvents the number of events to retain; must be positive
+     */
+    public EventTimeline(int maxEvents) {
+        this(maxEvents, DEFAULT_PARTITION_SIZE);
+    }
+
+    protected EventTimeline(int maxEvents, int partitionSize) {
+        if (maxEvents <= 0) throw new IllegalArgumentException("The maximum number of events must be positive");
+        if (partitionSize <= 0) throw new IllegalArgumentException("The partition size must be positive");
+        this.partitionSize = Math.min(partitionSize, maxEvents);
+        // Keep one extra partition so that at least 'maxEvents' are always available ...
+        this.maxPartitions = (maxEvents + this.partitionSize - 1) / this.partitionSize + 1;
+    }
+
+    @Override
+    public void recordEventType(long timeInMillis, EventType newType) {
+        String name = newType.typeName();
+        Integer index = typeIndexByName.get(name);
+        if (index == null) {
+            index = typeIndexByName.size();
+            String[] names = typeNames;
+            if (index >= names.length) names = Arrays.copyOf(names, names.length * 2);
+            names[index] = name;
+            typeNames = names;
+            typeIndexByName.put(name, index);
+        }
+        int typeNumber = newType.typeNumber();
+        if (typeNumber >= typeIndexByTypeNumber.length) {
+            int length = Math.max(typeNumber + 1, typeIndexByTypeNumber.length * 2);
+            typeIndexByTypeNumber = Arrays.copyOf(typeIndexByTypeNumber, length);
+        }
+        // Store the index plus one, so that zero means the type is unknown ...
+        typeIndexByTypeNumber[typeNumber] = index + 1;
+    }
+
+    @Override
+    public void recordEvent(long timeInMillis, int eventType, String value) {
+        append(timeInMillis, eventType, value, 0);
+    }
+
+    @Override
+    public void recordEvent(long timeInMillis, int eventType, int value) {
+        append(timeInMillis, eventType, null, value);
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, and the events remain available for queries ...
+    }
+
+    private void append(long timeInMillis, int typeNumber, String stringValue, int intValue) {
+        int typeIndex = typeNumber < typeIndexByTypeNumber.length ? typeIndexByTypeNumber[typeNumber] - 1 : -1;
+        if (typeIndex < 0) return; // never saw the type, which should not happen
+        // Events from different threads may be enqueued slightly out of order, but times must never decrease ...
+        if (timeInMillis < lastTime) timeInMillis = lastTime;
+        lastTime = timeInMillis;
+        if (current == null || current.isFull()) {
+            current = new Partition(partitionSize);
+            Partition[] existing = partitions;
+            int keep = Math.min(existing.length, maxPartitions - 1);
+            Partition[] updated = new Partition[keep + 1];
+            System.arraycopy(existing, existing.length - keep, updated, 0, keep);
+            updated[keep] = current;
+            partitions = updated;
+        }
+        current.append(timeInMillis, typeIndex, stringValue, intValue);
+    }
+
+    /**
+     * Find all of the retained events with the given type that occurred within the given time range, and pass each of them in
+     * time order to the supplied handler.
+     *
+     * @param eventType the type of event; may be null if events of all types are to be found
+     * @param fromMillis the earliest time (in milliseconds, inclusive) of the events to be found
+     * @param toMillis the latest time (in milliseconds, inclusive) of the events to be found
+     * @param handler the function that will be called with each matching event; may not be null
+     * @return the number of events passed to the handler
+     */
+    public int query(String eventType, long fromMillis, long toMillis, EventHandler handler) {
+        if (handler == null) throw new IllegalArgumentException("The handler may not be null");
+        int typeIndex = -1;
+        if (eventType != null) {
+            Integer index = typeIndexByName.get(eventType);
+            if (index == null) return 0;
+            typeIndex = index;
+        }
+        if (fromMillis > toMillis) return 0;
+        Partition[] parts = partitions;
+        int count = 0;
+        for (int p = firstPartition(parts, fromMillis); p < parts.length; ++p) {
+            Partition partition = parts[p];
+            int size = partition.size;
+            if (size == 0) continue;
+            if (partition.times[0] > toMillis) break;
+            // Read the names after the size, so that every type in the partition has a name ...
+            String[] names = typeNames;
+            count += typeIndex < 0 ? partition.scan(size, fromMillis, toMillis, names, handler)
+                    : partition.scan(size, typeIndex, fromMillis, toMillis, names, handler);
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of events currently retained by this timeline.
+     *
+     * @return the number of events
+     */
+    public int size() {
+        int total = 0;
+        for (Partition partition : partitions) {
+            total += partition.size;
+        }
+        return total;
+    }
+
+    /**
+     * Create an {@link EventRecorder} that ignores all recorded events but that can query the events in this timeline. This is
+     * useful to inspect the timeline after Strongback has stopped recording.
+     *
+     * @return the read-only event recorder; never null
+     */
+    public EventRecorder asReadOnlyRecorder() {
+        EventTimeline timeline = this;
+        return new EventRecorder() {
+            @Override
+            public void record(String eventType, String value) {
+            }
+
+            @Override
+            public void record(String eventType, int value) {
+            }
+
+            @Override
+            public void execute(long timeInMillis) {
+            }
+
+            @Override
+            public int query(String eventType, long fromMillis, long toMillis, EventHandler handler) {
+                return timeline.query(eventType, fromMillis, toMillis, handler);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "in-memory timeline of " + (maxPartitions - 1) * partitionSize + " events";
+    }
+
+    /**
+     * Find the index of the last partition that starts before the given time. Events before that partition cannot be in the
+     * time range, but since many events can have the same time, the partition before one that starts exactly at the given time
+     * may end with events at that time.
+     */
+    private static int firstPartition(Partition[] parts, long fromMillis) {
+        int low = 0;
+        int high = parts.length - 1;
+        int result = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Partition partition = parts[mid];
+            if (partition.size != 0 && partition.times[0] < fromMillis) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A fixed-size columnar block of events. Only the writer thread appends to a partition, and it makes each new event
+     * visible to readers by incrementing the volatile {@link #size}.
+     */
+    private static final class Partition {
+        protected final long[] times;
+        private final int[] types;
+        private final int[] intValues;
+        private final String[] stringValues;
+        private int[][] postings = new int[8][];
+        private int[] postingSizes = new int[8];
+        protected volatile int size;
+
+        protected Partition(int capacity) {
+            this.times = new long[capacity];
+            this.types = new int[capacity];
+            this.intValues = new int[capacity];
+            this.stringValues = new String[capacity];
+        }
+
+        protected boolean isFull() {
+            return size == times.length;
+        }
+
+        protected void append(long time, int typeIndex, String stringValue, int intValue) {
+            int row = size;
+            times[row] = time;
+            types[row] = typeIndex;
+            intValues[row] = intValue;
+            stringValues[row] = stringValue;
+            if (typeIndex >= postings.length) {
+                int length = Math.max(typeIndex + 1, postings.length * 2);
+                int[] sizes = Arrays.copyOf(postingSizes, length);
+                postings = Arrays.copyOf(postings, length);
+                postingSizes = sizes;
+            }
+            int[] rows = postings[typeIndex];
+            int count = postingSizes[typeIndex];
+            if (rows == null) {
+                rows = new int[Math.min(16, times.length)];
+                postings[typeIndex] = rows;
+            } else if (count == rows.length) {
+                rows = Arrays.copyOf(rows, Math.min(rows.length * 2, times.length));
+                postings[typeIndex] = rows;
+            }
+            // Store the row plus one, so that readers can tell which entries have not yet been written ...
+            rows[count] = row + 1;
+            postingSizes[typeIndex] = count + 1;
+            // Publish everything written above ...
+            size = row + 1;
+        }
+
+        protected int scan(int size, long fromMillis, long toMillis, String[] names, EventHandler handler) {
+            int count = 0;
+            for (int row = lowerBound(size, fromMillis); row < size && times[row] <= toMillis; ++row) {
+                handler.handle(times[row], names[types[row]], stringValues[row], intValues[row]);
+                ++count;
+            }
+            return count;
+        }
+
+        protected int scan(int size, int typeIndex, long fromMillis, long toMillis, String[] names, EventHandler handler) {
+            int[][] postings = this.postings;
+            if (typeIndex >= postings.length) return 0;
+            int[] rows = postings[typeIndex];
+            if (rows == null) return 0;
+            // Binary search the posting list for the first event at or after 'fromMillis', treating entries that have not
+            // yet been published as occurring after all others ...
+            int low = 0;
+            int high = rows.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int row = rows[mid] - 1;
+                if (row >= 0 && row < size && times[row] < fromMillis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int count = 0;
+            String name = names[typeIndex];
+            for (int i = low; i < rows.length; ++i) {
+                int row = rows[i] - 1;
+                if (row < 0 || row >= size || times[row] > toMillis) break;
+                handler.handle(times[row], name, stringValues[row], intValues[row]);
+                ++count;
+            }
+            return count;
+        }
+
+        private int lowerBound(int size, long fromMillis) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < fromMillis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -58,6 +58,19 @@ final class Executables implements Executor {
         return false;
     }
 
+    /**
+     * Register the given executable so that it runs before all other executables, including other high priority executables.
+     *
+     * @param r the executable; may not be null
+     * @return {@code true} if the executable was registered, or {@code false} if it was already the first executable
+     */
+    boolean registerFirst(Executable r) {
+        if (!highPriority.isEmpty() && highPriority.get(0) == r) return false;
+        unregister(r);
+        highPriority.add(0, r);
+        return true;
+    }
+
     @Override
     public boolean unregister(Executable r) {
         if (r != null) {
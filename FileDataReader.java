@@ -0,0 +1,201 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * Reads the {@code data-record} files written by {@link FileDataWriter}. The times and the values of each channel are kept in
+ * separate primitive arrays, and all of the files from one match can be read in the order they were written so that their
+ * records are appended to one another.
+ * <p>
+ * Reading a file stops at the terminator written when the file is closed, or at the unwritten (zero-filled) remainder of a file
+ * that was never closed.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+final class FileDataReader {
+
+    private static final String HEADER = "data-record";
+    private static final int TERMINATOR = 0xFFFFFFFF;
+
+    private String[] names;
+    private int[] times = new int[1024];
+    private short[][] values;
+    private int size;
+
+    /**
+     * Read all of the records in the given file, appending them to the records that were already read. All of the files read
+     * by this reader must have the same channels.
+     *
+     * @param file the data file; may not be null
+     * @return the number of records read from the file
+     * @throws IOException if there is a problem reading the file, if it is not a {@code data-record} file, or if it does not
+     *         have the same channels as the files that were already read
+     */
+    public int read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!HEADER.equals(readString(buffer))) throw new IOException("The file '" + file + "' is not a data-record file");
+            String[] names = readChannels(buffer, file);
+            if (this.names == null) {
+                this.names = names;
+                this.values = new short[names.length - 1][times.length];
+            } else if (!Arrays.equals(this.names, names)) {
+                throw new IOException("The file '" + file + "' has the channels " + Arrays.toString(names) + " rather than "
+                        + Arrays.toString(this.names));
+            }
+            return readRecords(buffer);
+        }
+    }
+
+    private static String[] readChannels(ByteBuffer buffer, Path file) throws IOException {
+        int count = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : 0;
+        if (count <= 0 || count * Integer.BYTES > buffer.remaining()) {
+            throw new IOException("The file '" + file + "' has an invalid number of channels: " + count);
+        }
+        // The first channel is always the time, and the others are always shorts ...
+        for (int i = 0; i != count; ++i) {
+            int channelSize = buffer.getInt();
+            if (channelSize != (i == 0 ? Integer.BYTES : Short.BYTES)) {
+                throw new IOException("The file '" + file + "' has an unexpected size for channel " + i + ": " + channelSize);
+            }
+        }
+        String[] names = new String[count];
+        for (int i = 0; i != count; ++i) {
+            names[i] = readString(buffer);
+            if (names[i] == null) throw new IOException("The file '" + file + "' is missing the name of channel " + i);
+        }
+        return names;
+    }
+
+    private int readRecords(ByteBuffer buffer) {
+        int channels = values.length;
+        int recordLength = Integer.BYTES + Short.BYTES * channels;
+        int start = size;
+        int lastTime = size != 0 ? times[size - 1] : Integer.MIN_VALUE;
+        while (buffer.remaining() >= recordLength) {
+            int time = buffer.getInt();
+            // Times never decrease, so anything else is the terminator or the unwritten remainder of the file ...
+            if (time == TERMINATOR || time < lastTime || (time == 0 && isZero(buffer, recordLength - Integer.BYTES))) break;
+            if (size == times.length) grow();
+            times[size] = time;
+            for (int channel = 0; channel != channels; ++channel) {
+                values[channel][size] = buffer.getShort();
+            }
+            lastTime = time;
+            ++size;
+        }
+        return size - start;
+    }
+
+    private static boolean isZero(ByteBuffer buffer, int length) {
+        int position = buffer.position();
+        for (int i = 0; i != length; ++i) {
+            if (buffer.get(position + i) != 0) return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        int length = times.length * 2;
+        times = Arrays.copyOf(times, length);
+        for (int channel = 0; channel != values.length; ++channel) {
+            values[channel] = Arrays.copyOf(values[channel], length);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES) return null;
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of channels, not including the time.
+     *
+     * @return the number of channels
+     */
+    public int channelCount() {
+        return values != null ? values.length : 0;
+    }
+
+    /**
+     * Get the name of the channel at the given index.
+     *
+     * @param channel the index of the channel, not including the time
+     * @return the name of the channel; never null
+     */
+    public String channelName(int channel) {
+        return names[channel + 1];
+    }
+
+    /**
+     * Find the index of the channel with the given name.
+     *
+     * @param name the name of the channel
+     * @return the index of the channel, or -1 if there is no such channel
+     */
+    public int indexOf(String name) {
+        for (int channel = 0; channel < channelCount(); ++channel) {
+            if (names[channel + 1].equals(name)) return channel;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the number of records that have been read.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the time (in milliseconds) of the given record.
+     *
+     * @param record the index of the record
+     * @return the time of the record
+     */
+    public long time(int record) {
+        return times[record];
+    }
+
+    /**
+     * Get the value of the given channel in the given record.
+     *
+     * @param record the index of the record
+     * @param channel the index of the channel, not including the time
+     * @return the recorded value
+     */
+    public int value(int record, int channel) {
+        return values[channel][record];
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.strongback.EventRecorder.EventHandler;
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * Reads the files written by {@link FileEventWriter} and passes each event in the order it was written to an
+ * {@link EventHandler}. The names of the event types are only written to the first file in which they are used, so a single
+ * reader should be used to read all of the files from one match in the order that they were written.
+ * <p>
+ * Reading stops at the terminator written when a file is closed, or at the unwritten (zero-filled) remainder of a file that was
+ * never closed.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+final class FileEventReader {
+
+    private static final int TERMINATOR = 0xFFFFFFFF;
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Short.BYTES;
+
+    private String[] typeNames = new String[16];
+
+    /**
+     * Read all of the events in the given file.
+     *
+     * @param file the event file; may not be null
+     * @param handler the function that is called with each event; may not be null
+     * @return the number of events passed to the handler
+     * @throws IOException if there is a problem reading the file
+     */
+    public int read(Path file, EventHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), handler);
+        }
+    }
+
+    protected int read(ByteBuffer buffer, EventHandler handler) {
+        int count = 0;
+        while (buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) != TERMINATOR) {
+            long time = buffer.getLong();
+            int typeNumber = buffer.getInt();
+            short kind = buffer.getShort();
+            if (kind == FileEventWriter.NEW_TYPE && typeNumber == FileEventWriter.NEW_TYPE_NUMBER) {
+                if (buffer.remaining() < Integer.BYTES) break;
+                int newTypeNumber = buffer.getInt();
+                String name = readString(buffer);
+                if (name == null || newTypeNumber <= 0) break;
+                if (newTypeNumber >= typeNames.length) {
+                    typeNames = Arrays.copyOf(typeNames, Math.max(newTypeNumber + 1, typeNames.length * 2));
+                }
+                typeNames[newTypeNumber] = name;
+            } else if (kind == FileEventWriter.STRING_TYPE) {
+                String value = readString(buffer);
+                if (value == null) break;
+                String name = typeName(typeNumber);
+                if (name == null) continue; // the type was defined in a file that was not read
+                handler.handle(time, name, value, 0);
+                ++count;
+            } else if (kind == FileEventWriter.INT_TYPE) {
+                if (buffer.remaining() < Integer.BYTES) break;
+                int value = buffer.getInt();
+                String name = typeName(typeNumber);
+                if (name == null) continue; // the type was defined in a file that was not read
+                handler.handle(time, name, null, value);
+                ++count;
+            } else {
+                // This is the unwritten remainder of a file that was not closed ...
+                break;
+            }
+        }
+        return count;
+    }
+
+    private String typeName(int typeNumber) {
+        return typeNumber > 0 && typeNumber < typeNames.length ? typeNames[typeNumber] : null;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES) return null;
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
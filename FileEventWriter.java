@@ -24,14 +24,21 @@ import org.strongback.AsyncEventRecorder.EventWriter;
 import org.strongback.annotation.ThreadSafe;
 
 /**
- * @author Randall Hauch
+ * An {@link EventWriter} that writes events to memory-mapped files. Every record starts with the time (as a {@code long}), the
+ * event type number (as an {@code int}) and the kind of record (as a {@code short}), followed by the event type name, the
+ * string value, or the integer value. New event types are written with a reserved event type number of 0, so that the files
+ * can be read back by {@link FileEventReader} without knowing the event types in advance. Each file ends with a terminator
+ * ({@code 0xFFFFFFFF}).
  *
+ * @author Randall Hauch
  */
 @ThreadSafe
 final class FileEventWriter implements EventWriter {
 
-    private static final byte STRING_TYPE = 0x1;
-    private static final byte INT_TYPE = 0x2;
+    protected static final int NEW_TYPE_NUMBER = 0;
+    protected static final short STRING_TYPE = 0x1;
+    protected static final short INT_TYPE = 0x2;
+    protected static final short NEW_TYPE = 0x3;
 
     private final Supplier<String> filenameGenerator;
     private MappedFileDataWriter writer;
@@ -60,8 +67,10 @@ final class FileEventWriter implements EventWriter {
     public void recordEventType(long time, EventType newType) {
         openIfNeeded();
         writer.write(time);
-        writer.write(newType.typeName());
+        writer.write(NEW_TYPE_NUMBER);
+        writer.write(NEW_TYPE);
         writer.write(newType.typeNumber());
+        writer.write(newType.typeName());
     }
 
     @Override
@@ -16,10 +16,21 @@
 
 package org.strongback;
 
+import java.util.function.Supplier;
+
 import org.strongback.annotation.ThreadSafe;
 
 /**
  * A simple logging framework.
+ * <p>
+ * Each level has a method that takes a complete message, and a method that takes a message format and the arguments that are to
+ * be substituted into the format. Each "{@code {}}" in the format is replaced by the next argument's string representation, and
+ * implementations may defer this formatting until (and unless) the message is actually written. Implementations that defer
+ * formatting capture the value of each mutable argument (such as an array that is reused every cycle) when the message is
+ * logged, but an array of arguments passed explicitly must not be changed afterward. Each level also has a method that takes a
+ * {@link Supplier} of the message, which is called only when the level is {@link #isEnabled(Level) enabled}. Use these forms
+ * rather than concatenating strings on frequently-executed code paths, so that disabled logging costs nothing more than a level
+ * check.
  *
  * @author Randall Hauch
  */
@@ -82,6 +93,166 @@ public interface Logger {
      */
     public void trace(String message);
 
+    /**
+     * Determine whether messages at the given level will be logged.
+     *
+     * @param level the level; may not be null
+     * @return {@code true} if messages at the given level are logged, or {@code false} otherwise
+     */
+    default public boolean isEnabled(Level level) {
+        return level != Level.OFF;
+    }
+
+    /**
+     * Log an exception and a lazily-created error message at the error level. The supplier is called only if error-level (or
+     * higher) logging is enabled.
+     *
+     * @param t the exception
+     * @param message the supplier of the error message
+     */
+    default public void error(Throwable t, Supplier<String> message) {
+        if (isEnabled(Level.ERROR)) error(t, message.get());
+    }
+
+    /**
+     * Log a lazily-created message at the error level. The supplier is called only if error-level (or higher) logging is
+     * enabled.
+     *
+     * @param message the supplier of the error message
+     */
+    default public void error(Supplier<String> message) {
+        if (isEnabled(Level.ERROR)) error(message.get());
+    }
+
+    /**
+     * Log a lazily-created message at the warning level. The supplier is called only if warning-level (or higher) logging is
+     * enabled.
+     *
+     * @param message the supplier of the warning message
+     */
+    default public void warn(Supplier<String> message) {
+        if (isEnabled(Level.WARN)) warn(message.get());
+    }
+
+    /**
+     * Log a lazily-created message at the information level. The supplier is called only if information-level (or higher)
+     * logging is enabled.
+     *
+     * @param message the supplier of the message
+     */
+    default public void info(Supplier<String> message) {
+        if (isEnabled(Level.INFO)) info(message.get());
+    }
+
+    /**
+     * Log a lazily-created message at the debug level. The supplier is called only if debug-level (or higher) logging is
+     * enabled.
+     *
+     * @param message the supplier of the message
+     */
+    default public void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) debug(message.get());
+    }
+
+    /**
+     * Log a lazily-created message at the trace level. The supplier is called only if trace-level (or higher) logging is
+     * enabled.
+     *
+     * @param message the supplier of the message
+     */
+    default public void trace(Supplier<String> message) {
+        if (isEnabled(Level.TRACE)) trace(message.get());
+    }
+
+    /**
+     * Log an exception and a parameterized error message at the error level. The exception and message are logged only if
+     * error-level (or higher) logging is enabled.
+     *
+     * @param t the exception
+     * @param format the message format containing zero or more "{@code {}}" placeholders
+     * @param args the arguments substituted into the format
+     */
+    default public void error(Throwable t, String format, Object... args) {
+        error(t, format(format, args));
+    }
+
+    /**
+     * Log a parameterized message at the error level. The message is logged only if error-level (or higher) logging is
+     * enabled.
+     *
+     * @param format the message format containing zero or more "{@code {}}" placeholders
+     * @param args the arguments substituted into the format
+     */
+    default public void error(String format, Object... args) {
+        error(format(format, args));
+    }
+
+    /**
+     * Log a parameterized message at the warning level. The message is logged only if warning-level (or higher) logging is
+     * enabled.
+     *
+     * @param format the message format containing zero or more "{@code {}}" placeholders
+     * @param args the arguments substituted into the format
+     */
+    default public void warn(String format, Object... args) {
+        warn(format(format, args));
+    }
+
+    /**
+     * Log a parameterized message at the information level. The message is logged only if information-level (or higher)
+     * logging is enabled.
+     *
+     * @param format the message format containing zero or more "{@code {}}" placeholders
+     * @param args the arguments substituted into the format
+     */
+    default public void info(String format, Object... args) {
+        info(format(format, args));
+    }
+
+    /**
+     * Log a parameterized message at the debug level. The message is logged only if debug-level (or higher) logging is
+     * enabled.
+     *
+     * @param format the message format containing zero or more "{@code {}}" placeholders
+     * @param args the arguments substituted into the format
+     */
+    default public void debug(String format, Object... args) {
+        debug(format(format, args));
+    }
+
+    /**
+     * Log a parameterized message at the trace level. The message is logged only if trace-level (or higher) logging is
+     * enabled.
+     *
+     * @param format the message format containing zero or more "{@code {}}" placeholders
+     * @param args the arguments substituted into the format
+     */
+    default public void trace(String format, Object... args) {
+        trace(format(format, args));
+    }
+
+    /**
+     * Create a message by replacing each "{@code {}}" placeholder in the format with the string representation of the next
+     * argument. Placeholders without a corresponding argument are left as is, and extra arguments are ignored.
+     *
+     * @param format the message format; may be null
+     * @param args the arguments; may be null
+     * @return the message; never null
+     */
+    public static String format(String format, Object... args) {
+        if (format == null) return "null";
+        if (args == null || args.length == 0) return format;
+        StringBuilder sb = new StringBuilder(format.length() + 16 * args.length);
+        int start = 0;
+        int argIndex = 0;
+        int placeholder = 0;
+        while (argIndex < args.length && (placeholder = format.indexOf("{}", start)) >= 0) {
+            sb.append(format, start, placeholder).append(args[argIndex++]);
+            start = placeholder + 2;
+        }
+        return sb.append(format, start, format.length()).toString();
+    }
+
     /**
      * Get a {@link Logger} implementation that does nothing with log messages.
      * @return the no-operation logger; never null
@@ -48,8 +48,9 @@ final class MappedFileDataWriter implements DataWriter {
     }
 
     public void write( String str ) {
-        buffer.putInt(str.length());
-        buffer.put(str.getBytes(UTF8));
+        byte[] bytes = str.getBytes(UTF8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
     }
 
     public void write( int number ) {
@@ -0,0 +1,219 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.function.Supplier;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * A {@link Logger} with a name in the {@link AsyncLogger} hierarchy, and that hands off all enabled messages to that
+ * {@link AsyncLogger}.
+ * <p>
+ * Each named logger stores its effective level as a bitmask that is recomputed by the {@link AsyncLogger} whenever any level in
+ * the hierarchy changes, so checking whether a level is enabled is a single volatile read and bitwise test. The field is
+ * volatile so that a level changed at runtime takes effect on every thread, including loops that log on every cycle.
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+final class NamedLogger implements Logger {
+
+    protected static final int OFF = 0;
+    protected static final int ERROR = 2 << 0;
+    protected static final int WARN = 2 << 1;
+    protected static final int INFO = 2 << 2;
+    protected static final int DEBUG = 2 << 3;
+    protected static final int TRACE = 2 << 4;
+
+    /**
+     * Get the bitmask of all the levels that are enabled when logging at the given level.
+     *
+     * @param level the level; may not be null
+     * @return the bitmask
+     */
+    protected static int mask(Level level) {
+        switch (level) {
+            case TRACE:
+                return TRACE | DEBUG | INFO | WARN | ERROR;
+            case DEBUG:
+                return DEBUG | INFO | WARN | ERROR;
+            case INFO:
+                return INFO | WARN | ERROR;
+            case WARN:
+                return WARN | ERROR;
+            case ERROR:
+                return ERROR;
+            case OFF:
+                break;
+        }
+        return OFF;
+    }
+
+    private static int bit(Level level) {
+        switch (level) {
+            case TRACE:
+                return TRACE;
+            case DEBUG:
+                return DEBUG;
+            case INFO:
+                return INFO;
+            case WARN:
+                return WARN;
+            case ERROR:
+                return ERROR;
+            case OFF:
+                break;
+        }
+        return OFF;
+    }
+
+    private final String name;
+    private final AsyncLogger sink;
+    private volatile int enabled;
+
+    NamedLogger(String name, AsyncLogger sink, int enabled) {
+        this.name = name;
+        this.sink = sink;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the name of this logger.
+     *
+     * @return the name, or null if this is the root logger
+     */
+    public String name() {
+        return name;
+    }
+
+    void setEnabled(int enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled(Level level) {
+        int bit = bit(level);
+        return bit != OFF && (enabled & bit) == bit;
+    }
+
+    @Override
+    public void error(Throwable t) {
+        if ((enabled & ERROR) == ERROR) sink.enqueue(name, "ERROR", t, null, null);
+    }
+
+    @Override
+    public void error(Throwable t, String message) {
+        if ((enabled & ERROR) == ERROR) sink.enqueue(name, "ERROR", t, message, null);
+    }
+
+    @Override
+    public void error(Throwable t, String format, Object... args) {
+        if ((enabled & ERROR) == ERROR) sink.enqueue(name, "ERROR", t, format, args);
+    }
+
+    @Override
+    public void error(Throwable t, Supplier<String> message) {
+        if ((enabled & ERROR) == ERROR) sink.enqueue(name, "ERROR", t, message.get(), null);
+    }
+
+    @Override
+    public void error(String message) {
+        if ((enabled & ERROR) == ERROR) sink.enqueue(name, "ERROR", null, message, null);
+    }
+
+    @Override
+    public void error(String format, Object... args) {
+        if ((enabled & ERROR) == ERROR) sink.enqueue(name, "ERROR", null, format, args);
+    }
+
+    @Override
+    public void error(Supplier<String> message) {
+        if ((enabled & ERROR) == ERROR) sink.enqueue(name, "ERROR", null, message.get(), null);
+    }
+
+    @Override
+    public void warn(String message) {
+        if ((enabled & WARN) == WARN) sink.enqueue(name, "WARN", null, message, null);
+    }
+
+    @Override
+    public void warn(String format, Object... args) {
+        if ((enabled & WARN) == WARN) sink.enqueue(name, "WARN", null, format, args);
+    }
+
+    @Override
+    public void warn(Supplier<String> message) {
+        if ((enabled & WARN) == WARN) sink.enqueue(name, "WARN", null, message.get(), null);
+    }
+
+    @Override
+    public void info(String message) {
+        if ((enabled & INFO) == INFO) sink.enqueue(name, "INFO", null, message, null);
+    }
+
+    @Override
+    public void info(String format, Object... args) {
+        if ((enabled & INFO) == INFO) sink.enqueue(name, "INFO", null, format, args);
+    }
+
+    @Override
+    public void info(Supplier<String> message) {
+        if ((enabled & INFO) == INFO) sink.enqueue(name, "INFO", null, message.get(), null);
+    }
+
+    @Override
+    public void debug(String message) {
+        if ((enabled & DEBUG) == DEBUG) sink.enqueue(name, "DEBUG", null, message, null);
+    }
+
+    @Override
+    public void debug(String format, Object... args) {
+        if ((enabled & DEBUG) == DEBUG) sink.enqueue(name, "DEBUG", null, format, args);
+    }
+
+    @Override
+    public void debug(Supplier<String> message) {
+        if ((enabled & DEBUG) == DEBUG) sink.enqueue(name, "DEBUG", null, message.get(), null);
+    }
+
+    @Override
+    public void trace(String message) {
+        if ((enabled & TRACE) == TRACE) sink.enqueue(name, "TRACE", null, message, null);
+    }
+
+    @Override
+    public void trace(String format, Object... args) {
+        if ((enabled & TRACE) == TRACE) sink.enqueue(name, "TRACE", null, format, args);
+    }
+
+    @Override
+    public void trace(Supplier<String> message) {
+        if ((enabled & TRACE) == TRACE) sink.enqueue(name, "TRACE", null, message.get(), null);
+    }
+
+    @Override
+    public String toString() {
+        int level = this.enabled;
+        if ((level & TRACE) == TRACE) return "TRACE";
+        if ((level & DEBUG) == DEBUG) return "DEBUG";
+        if ((level & INFO) == INFO) return "INFO";
+        if ((level & WARN) == WARN) return "WARN";
+        if ((level & ERROR) == ERROR) return "ERROR";
+        return "OFF";
+    }
+}
@@ -30,6 +30,11 @@ final class NoOpLogger implements Logger {
     private NoOpLogger() {
     }
 
+    @Override
+    public boolean isEnabled(Level level) {
+        return false;
+    }
+
     @Override
     public void error(Throwable t) {
     }
@@ -58,4 +63,28 @@ final class NoOpLogger implements Logger {
     public void trace(String message) {
     }
 
+    @Override
+    public void error(Throwable t, String format, Object... args) {
+    }
+
+    @Override
+    public void error(String format, Object... args) {
+    }
+
+    @Override
+    public void warn(String format, Object... args) {
+    }
+
+    @Override
+    public void info(String format, Object... args) {
+    }
+
+    @Override
+    public void debug(String format, Object... args) {
+    }
+
+    @Override
+    public void trace(String format, Object... args) {
+    }
+
 }
@@ -0,0 +1,663 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.strongback.annotation.Immutable;
+import org.strongback.annotation.NotThreadSafe;
+import org.strongback.command.Command;
+import org.strongback.command.CommandState;
+import org.strongback.command.Scheduler;
+import org.strongback.components.Switch;
+import org.strongback.mock.MockClock;
+import org.strongback.mock.MockSwitchImplementation;
+
+/**
+ * Replays a match from the event files written when Strongback is configured to
+ * {@link Strongback.Configurator#recordEventsToFile(String, long) record events to files} and
+ * {@link Strongback.Configurator#recordCommands() record commands}, and the {@code data-record} files written when it is
+ * configured to {@link Strongback.Configurator#recordDataToFile(String, int) record data to files}.
+ * <p>
+ * Each data record was written once per cycle of Strongback's executor, so the replay runs one cycle for each data record: it
+ * sets the {@link #clock() mock clock} to the recorded time, passes the recorded values of each bound channel to the mock
+ * components (e.g., switches set with {@link #bind(String, MockSwitchImplementation)}), and then executes the replay's own
+ * {@link #scheduler() scheduler}, {@link #switchReactor() switch reactor} and any {@link #register(Executable) other
+ * executables} in the same order as Strongback's executor. Nothing waits between cycles, so a replay runs much faster than the
+ * match did. When there are no data files, the cycles are instead spaced by the {@link #useExecutionPeriod(long) execution
+ * period} over the time covered by the events.
+ * <p>
+ * The robot code under test should be given the replay's scheduler, switch reactor and clock rather than Strongback's, and the
+ * components that are bound to recorded channels. Commands submitted directly with {@link Strongback#submit(Command)} are not
+ * part of the replay. The changes in command state seen by the replay's scheduler are then compared, in order and cycle by
+ * cycle, with those that were recorded during the match. The outputs of the robot code, such as the speeds sent to motors, are
+ * compared only for the recorded channels that are {@link #verify(String, IntSupplier) verified}: at the end of each cycle, the
+ * value of each verified channel is compared with the value that was recorded in that cycle, either exactly or within a
+ * tolerance. A replay therefore matches the match only as far as its command state changes and its verified channels go. The
+ * replay's scheduler does not limit the time given to incremental commands, since that depends upon how long each cycle
+ * actually takes.
+ * <p>
+ * For example:
+ *
+ * <pre>
+ * Replay replay = Replay.load(eventFiles, dataFiles);
+ * MockSwitchImplementation trigger = Mock.notTriggeredSwitch();
+ * replay.bind("Trigger", trigger);
+ * replay.switchReactor().onTriggeredSubmit(trigger, FireRepeatedlyCommand::new);
+ * replay.verify("Shooter speed", 1000, shooter::getSpeed, 0.0);
+ * Replay.Result result = replay.run();
+ * assert result.matches() : result.divergence();
+ * </pre>
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+public final class Replay {
+
+    /**
+     * Load the given event and data files. The files of each kind must be given in the order they were written.
+     *
+     * @param eventFiles the event files; may not be null but may be empty
+     * @param dataFiles the data files; may not be null but may be empty
+     * @return the replay; never null
+     * @throws IOException if there is a problem reading any of the files
+     */
+    public static Replay load(List<Path> eventFiles, List<Path> dataFiles) throws IOException {
+        return load(eventFiles, dataFiles, 0);
+    }
+
+    /**
+     * Load the given event and data files that were recorded with {@link Strongback.Configurator#recordCommandHeartbeats(int)
+     * command heartbeats}. The files of each kind must be given in the order they were written.
+     *
+     * @param eventFiles the event files; may not be null but may be empty
+     * @param dataFiles the data files; may not be null but may be empty
+     * @param heartbeatIntervalInCycles the number of cycles between the recorded heartbeats of running commands, or 0 if no
+     *        heartbeats were recorded
+     * @return the replay; never null
+     * @throws IOException if there is a problem reading any of the files
+     */
+    public static Replay load(List<Path> eventFiles, List<Path> dataFiles, int heartbeatIntervalInCycles) throws IOException {
+        Events recorded = new Events();
+        FileEventReader eventReader = new FileEventReader();
+        for (Path file : eventFiles) {
+            eventReader.read(file, (time, type, stringValue, intValue) -> {
+                if (stringValue == null) recorded.add(time, type, intValue);
+            });
+        }
+        FileDataReader data = new FileDataReader();
+        for (Path file : dataFiles) {
+            data.read(file);
+        }
+        return new Replay(recorded, data, heartbeatIntervalInCycles);
+    }
+
+    private final Events recorded;
+    private final Events replayed = new Events();
+    private final FileDataReader data;
+    private final MockClock clock = new MockClock();
+    private final Scheduler scheduler;
+    private final ReplaySwitchReactor switchReactor;
+    private final List<Executable> executables = new ArrayList<>();
+    private final List<IntConsumer> bindings = new ArrayList<>();
+    private final List<Integer> boundChannels = new ArrayList<>();
+    private final List<IntSupplier> verifiers = new ArrayList<>();
+    private final List<Integer> verifiedChannels = new ArrayList<>();
+    private final List<Integer> tolerances = new ArrayList<>();
+    private final Map<String, Boolean> commandTypes = new HashMap<>();
+    private long executionPeriodInMillis = 20;
+    private int cycle;
+
+    private Replay(Events recorded, FileDataReader data, int heartbeatIntervalInCycles) {
+        this.recorded = recorded;
+        this.data = data;
+        this.scheduler = new Scheduler(Logger.noOp(), this::record, heartbeatIntervalInCycles);
+        this.switchReactor = new ReplaySwitchReactor(scheduler);
+    }
+
+    private void record(Command command, CommandState state) {
+        // The replayed events are kept by cycle rather than by time, and commands run concurrently may change state on
+        // other threads ...
+        synchronized (replayed) {
+            replayed.add(cycle, command.getClass().getName(), state.ordinal());
+        }
+    }
+
+    /**
+     * Get the clock that is set to the recorded time at the start of each cycle.
+     *
+     * @return the mock clock; never null
+     */
+    public MockClock clock() {
+        return clock;
+    }
+
+    /**
+     * Get the scheduler that is executed in each cycle and whose commands are compared with those that were recorded.
+     *
+     * @return the scheduler; never null
+     */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Get the switch reactor that is executed in each cycle. Commands that it submits are submitted to the replay's
+     * {@link #scheduler() scheduler}.
+     *
+     * @return the switch reactor; never null
+     */
+    public SwitchReactor switchReactor() {
+        return switchReactor;
+    }
+
+    /**
+     * Get the names of the recorded data channels, not including the time.
+     *
+     * @return the channel names; never null but possibly empty
+     */
+    public List<String> channelNames() {
+        List<String> names = new ArrayList<>();
+        for (int channel = 0; channel != data.channelCount(); ++channel) {
+            names.add(data.channelName(channel));
+        }
+        return names;
+    }
+
+    /**
+     * Pass the recorded value of the named channel to the given function at the start of each cycle.
+     *
+     * @param channelName the name of the recorded channel; may not be null
+     * @param consumer the function that is called with the recorded value; may not be null
+     * @return this object so that methods can be chained together; never null
+     * @throws IllegalArgumentException if there is no recorded channel with the given name
+     */
+    public Replay bind(String channelName, IntConsumer consumer) {
+        if (consumer == null) throw new IllegalArgumentException("The consumer may not be null");
+        int channel = data.indexOf(channelName);
+        if (channel < 0) throw new IllegalArgumentException("There is no recorded channel named '" + channelName + "'");
+        boundChannels.add(channel);
+        bindings.add(consumer);
+        return this;
+    }
+
+    /**
+     * Set the mock switch to the recorded state of the named channel at the start of each cycle. The channel will have been
+     * registered with {@link DataRecorder#register(String, Switch)}.
+     *
+     * @param channelName the name of the recorded channel; may not be null
+     * @param swtch the switch; may not be null
+     * @return this object so that methods can be chained together; never null
+     * @throws IllegalArgumentException if there is no recorded channel with the given name
+     */
+    public Replay bind(String channelName, MockSwitchImplementation swtch) {
+        if (swtch == null) throw new IllegalArgumentException("The switch may not be null");
+        return bind(channelName, value -> swtch.setTriggered(value != 0));
+    }
+
+    /**
+     * Pass the recorded value of the named channel, divided by the scale used to record it, to the given function at the start
+     * of each cycle. The channel will have been registered with
+     * {@link DataRecorder#register(String, double, java.util.function.DoubleSupplier)}.
+     *
+     * @param channelName the name of the recorded channel; may not be null
+     * @param scale the scale factor with which the channel was recorded; may not be 0
+     * @param consumer the function that is called with the unscaled value; may not be null
+     * @return this object so that methods can be chained together; never null
+     * @throws IllegalArgumentException if there is no recorded channel with the given name
+     */
+    public Replay bind(String channelName, double scale, DoubleConsumer consumer) {
+        if (scale == 0.0) throw new IllegalArgumentException("The scale may not be 0");
+        if (consumer == null) throw new IllegalArgumentException("The consumer may not be null");
+        return bind(channelName, value -> consumer.accept(value / scale));
+    }
+
+    /**
+     * Compare the given value with the recorded value of the named channel at the end of each cycle, after the scheduler, the
+     * switch reactor and the other executables have run. The replay {@link Result#matches() matches} only if the values are
+     * the same in every cycle.
+     *
+     * @param channelName the name of the recorded channel; may not be null
+     * @param actual the function that returns the replayed value; may not be null
+     * @return this object so that methods can be chained together; never null
+     * @throws IllegalArgumentException if there is no recorded channel with the given name
+     */
+    public Replay verify(String channelName, IntSupplier actual) {
+        return verify(channelName, actual, 0);
+    }
+
+    /**
+     * Compare the state of the given switch with the recorded state of the named channel at the end of each cycle. The channel
+     * will have been registered with {@link DataRecorder#register(String, Switch)}.
+     *
+     * @param channelName the name of the recorded channel; may not be null
+     * @param swtch the switch; may not be null
+     * @return this object so that methods can be chained together; never null
+     * @throws IllegalArgumentException if there is no recorded channel with the given name
+     * @see #verify(String, IntSupplier)
+     */
+    public Replay verify(String channelName, Switch swtch) {
+        if (swtch == null) throw new IllegalArgumentException("The switch may not be null");
+        return verify(channelName, () -> swtch.isTriggered() ? 1 : 0, 0);
+    }
+
+    /**
+     * Compare the given value with the recorded value of the named channel at the end of each cycle. The channel will have been
+     * registered with {@link DataRecorder#register(String, double, DoubleSupplier)}, so the value is scaled and truncated in the
+     * same way before it is compared. A tolerance of 0 requires the recorded values to be identical.
+     *
+     * @param channelName the name of the recorded channel; may not be null
+     * @param scale the scale factor with which the channel was recorded; may not be 0
+     * @param actual the function that returns the unscaled replayed value; may not be null
+     * @param tolerance the largest allowed difference between the unscaled values; may not be negative
+     * @return this object so that methods can be chained together; never null
+     * @throws IllegalArgumentException if there is no recorded channel with the given name
+     * @see #verify(String, IntSupplier)
+     */
+    public Replay verify(String channelName, double scale, DoubleSupplier actual, double tolerance) {
+        if (scale == 0.0) throw new IllegalArgumentException("The scale may not be 0");
+        if (actual == null) throw new IllegalArgumentException("The supplier may not be null");
+        if (tolerance < 0.0) throw new IllegalArgumentException("The tolerance may not be negative");
+        return verify(channelName, () -> (int) (actual.getAsDouble() * scale), (int) (tolerance * Math.abs(scale)));
+    }
+
+    private Replay verify(String channelName, IntSupplier actual, int tolerance) {
+        if (actual == null) throw new IllegalArgumentException("The supplier may not be null");
+        int channel = data.indexOf(channelName);
+        if (channel < 0) throw new IllegalArgumentException("There is no recorded channel named '" + channelName + "'");
+        verifiedChannels.add(channel);
+        verifiers.add(actual);
+        tolerances.add(tolerance);
+        return this;
+    }
+
+    /**
+     * Execute the given executable in each cycle, after the scheduler and the switch reactor.
+     *
+     * @param executable the executable; may not be null
+     * @return this object so that methods can be chained together; never null
+     */
+    public Replay register(Executable executable) {
+        if (executable == null) throw new IllegalArgumentException("The executable may not be null");
+        executables.add(executable);
+        return this;
+    }
+
+    /**
+     * Set the period of the cycles that are run when there are no data files. The default is 20 milliseconds.
+     *
+     * @param executionPeriodInMillis the execution period in milliseconds; must be positive
+     * @return this object so that methods can be chained together; never null
+     */
+    public Replay useExecutionPeriod(long executionPeriodInMillis) {
+        if (executionPeriodInMillis <= 0) throw new IllegalArgumentException("The execution period must be positive");
+        this.executionPeriodInMillis = executionPeriodInMillis;
+        return this;
+    }
+
+    /**
+     * Run all of the recorded cycles, and compare the changes in command state and the values of the
+     * {@link #verify(String, IntSupplier) verified channels} with those that were recorded. A replay should only be run once.
+     *
+     * @return the result of the replay; never null
+     */
+    public Result run() {
+        long[] times = cycleTimes();
+        long[] durations = new long[times.length];
+        int[] channels = boundChannels.stream().mapToInt(Integer::intValue).toArray();
+        IntConsumer[] consumers = bindings.toArray(new IntConsumer[bindings.size()]);
+        Executable[] others = executables.toArray(new Executable[executables.size()]);
+        int[] verified = verifiedChannels.stream().mapToInt(Integer::intValue).toArray();
+        IntSupplier[] actuals = verifiers.toArray(new IntSupplier[verifiers.size()]);
+        int[] tolerance = tolerances.stream().mapToInt(Integer::intValue).toArray();
+        int mismatches = 0;
+        String valueDivergence = null;
+        for (cycle = 0; cycle != times.length; ++cycle) {
+            long time = times[cycle];
+            clock.setTimeInMillis(time);
+            for (int i = 0; i != channels.length; ++i) {
+                consumers[i].accept(data.value(cycle, channels[i]));
+            }
+            long start = System.nanoTime();
+            scheduler.execute(time);
+            switchReactor.execute(time);
+            for (Executable executable : others) {
+                executable.execute(time);
+            }
+            durations[cycle] = System.nanoTime() - start;
+            // The data recorder samples its channels after the scheduler and switch reactor in each cycle ...
+            if (cycle < data.size()) {
+                for (int i = 0; i != verified.length; ++i) {
+                    int expected = data.value(cycle, verified[i]);
+                    int actual = actuals[i].getAsInt();
+                    if (Math.abs((long) actual - expected) > tolerance[i]) {
+                        if (mismatches++ == 0) {
+                            valueDivergence = "The recorded value " + expected + " of '" + data.channelName(verified[i])
+                                    + "' at " + time + " ms was replayed as " + actual;
+                        }
+                    }
+                }
+            }
+        }
+        synchronized (replayed) {
+            return compare(times, durations, mismatches, valueDivergence);
+        }
+    }
+
+    private long[] cycleTimes() {
+        if (data.size() != 0) {
+            long[] times = new long[data.size()];
+            for (int i = 0; i != times.length; ++i) {
+                times[i] = data.time(i);
+            }
+            return times;
+        }
+        if (recorded.size == 0) return new long[0];
+        long first = recorded.times[0];
+        long last = recorded.times[recorded.size - 1];
+        long[] times = new long[(int) ((last - first) / executionPeriodInMillis) + 1];
+        for (int i = 0; i != times.length; ++i) {
+            times[i] = first + i * executionPeriodInMillis;
+        }
+        return times;
+    }
+
+    private Result compare(long[] times, long[] durations, int mismatches, String valueDivergence) {
+        int recordedCount = 0;
+        int next = 0;
+        String divergence = null;
+        for (int i = 0; i != recorded.size; ++i) {
+            String type = recorded.types[i];
+            if (!isCommandType(type)) continue;
+            ++recordedCount;
+            if (divergence != null) continue;
+            if (next == replayed.size) {
+                divergence = "The recorded " + describe(type, recorded.values[i]) + " at " + recorded.times[i]
+                        + " ms was not replayed";
+                continue;
+            }
+            int replayedCycle = (int) replayed.times[next];
+            if (!type.equals(replayed.types[next]) || recorded.values[i] != replayed.values[next]
+                    || !isInCycle(recorded.times[i], replayedCycle, times)) {
+                divergence = "The recorded " + describe(type, recorded.values[i]) + " at " + recorded.times[i]
+                        + " ms was replayed as " + describe(replayed.types[next], replayed.values[next]) + " at "
+                        + times[replayedCycle] + " ms";
+            }
+            ++next;
+        }
+        if (divergence == null && next != replayed.size) {
+            int replayedCycle = (int) replayed.times[next];
+            divergence = "The replayed " + describe(replayed.types[next], replayed.values[next]) + " at " + times[replayedCycle]
+                    + " ms was not recorded";
+        }
+        if (divergence == null) divergence = valueDivergence;
+        return new Result(times, durations, recordedCount, replayed.size, mismatches, divergence);
+    }
+
+    private static boolean isInCycle(long time, int cycle, long[] times) {
+        // Events are recorded after the cycle starts but no later than the next cycle starts; events recorded before the
+        // first cycle belong to the first cycle ...
+        if (cycle + 1 < times.length && time > times[cycle + 1]) return false;
+        return time >= times[cycle] || cycle == 0;
+    }
+
+    private static String describe(String type, int value) {
+        CommandState[] states = CommandState.values();
+        return type + (value >= 0 && value < states.length ? " " + states[value] : " state " + value);
+    }
+
+    private boolean isCommandType(String type) {
+        return commandTypes.computeIfAbsent(type, name -> {
+            try {
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                return Command.class.isAssignableFrom(Class.forName(name, false, loader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * A growable list of events with integer values, whose times, types and values are kept in separate arrays.
+     */
+    private static final class Events {
+        protected long[] times = new long[1024];
+        protected String[] types = new String[1024];
+        protected int[] values = new int[1024];
+        protected int size;
+
+        protected void add(long time, String type, int value) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                types = Arrays.copyOf(types, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = time;
+            types[size] = type;
+            values[size] = value;
+            ++size;
+        }
+    }
+
+    /**
+     * A {@link SwitchReactor} that submits commands to the replay's scheduler rather than to Strongback's.
+     */
+    private static final class ReplaySwitchReactor implements SwitchReactor {
+        private final AsyncSwitchReactor reactor = new AsyncSwitchReactor();
+        private final Scheduler scheduler;
+
+        protected ReplaySwitchReactor(Scheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        protected void execute(long timeInMillis) {
+            reactor.execute(timeInMillis);
+        }
+
+        @Override
+        public void onTriggeredSubmit(Switch swtch, Supplier<Command> commandSupplier) {
+            reactor.onTriggered(swtch, () -> scheduler.submit(commandSupplier.get()));
+        }
+
+        @Override
+        public void onUntriggeredSubmit(Switch swtch, Supplier<Command> commandSupplier) {
+            reactor.onUntriggered(swtch, () -> scheduler.submit(commandSupplier.get()));
+        }
+
+        @Override
+        public void onTriggeredSubmit(Switch swtch, long debounceInMillis, Supplier<Command> commandSupplier) {
+            reactor.onTriggeredDebounced(swtch, debounceInMillis, () -> scheduler.submit(commandSupplier.get()));
+        }
+
+        @Override
+        public void onTriggered(Switch swtch, Runnable function) {
+            reactor.onTriggered(swtch, function);
+        }
+
+        @Override
+        public void onUntriggered(Switch swtch, Runnable function) {
+            reactor.onUntriggered(swtch, function);
+        }
+
+        @Override
+        public void whileTriggered(Switch swtch, Runnable function) {
+            reactor.whileTriggered(swtch, function);
+        }
+
+        @Override
+        public void whileUntriggered(Switch swtch, Runnable function) {
+            reactor.whileUntriggered(swtch, function);
+        }
+
+        @Override
+        public void onTriggeredDebounced(Switch swtch, long debounceInMillis, Runnable function) {
+            reactor.onTriggeredDebounced(swtch, debounceInMillis, function);
+        }
+
+        @Override
+        public void onUntriggeredDebounced(Switch swtch, long debounceInMillis, Runnable function) {
+            reactor.onUntriggeredDebounced(swtch, debounceInMillis, function);
+        }
+
+        @Override
+        public void onLongPress(Switch swtch, long holdInMillis, Runnable function) {
+            reactor.onLongPress(swtch, holdInMillis, function);
+        }
+
+        @Override
+        public void onMultiClick(Switch swtch, int clicks, long windowInMillis, Runnable function) {
+            reactor.onMultiClick(swtch, clicks, windowInMillis, function);
+        }
+
+        @Override
+        public void whileTriggeredEvery(Switch swtch, long intervalInMillis, Runnable function) {
+            reactor.whileTriggeredEvery(swtch, intervalInMillis, function);
+        }
+    }
+
+    /**
+     * The result of {@link Replay#run() running a replay}.
+     */
+    @Immutable
+    public static final class Result {
+        private final long[] times;
+        private final long[] durations;
+        private final int recordedCount;
+        private final int replayedCount;
+        private final int mismatchedValueCount;
+        private final String divergence;
+
+        protected Result(long[] times, long[] durations, int recordedCount, int replayedCount, int mismatchedValueCount,
+                String divergence) {
+            this.times = times;
+            this.durations = durations;
+            this.recordedCount = recordedCount;
+            this.replayedCount = replayedCount;
+            this.mismatchedValueCount = mismatchedValueCount;
+            this.divergence = divergence;
+        }
+
+        /**
+         * Determine whether the replayed changes in command state exactly match those that were recorded, and whether the
+         * values of every {@link Replay#verify(String, IntSupplier) verified channel} match the recorded values in every cycle.
+         * Recorded channels that were not verified are not compared.
+         *
+         * @return {@code true} if they match, or {@code false} otherwise
+         */
+        public boolean matches() {
+            return divergence == null;
+        }
+
+        /**
+         * Describe the first difference between the replayed and the recorded changes in command state or, if those match, the
+         * first cycle in which a verified channel did not match its recorded value.
+         *
+         * @return the description, or null if the replay {@link #matches() matches} the recording
+         */
+        public String divergence() {
+            return divergence;
+        }
+
+        /**
+         * Get the number of changes in command state that were recorded.
+         *
+         * @return the number of recorded changes
+         */
+        public int recordedCount() {
+            return recordedCount;
+        }
+
+        /**
+         * Get the number of changes in command state that were replayed.
+         *
+         * @return the number of replayed changes
+         */
+        public int replayedCount() {
+            return replayedCount;
+        }
+
+        /**
+         * Get the number of times that the value of a {@link Replay#verify(String, IntSupplier) verified channel} did not
+         * match the recorded value, counting each channel in each cycle.
+         *
+         * @return the number of mismatched values
+         */
+        public int mismatchedValueCount() {
+            return mismatchedValueCount;
+        }
+
+        /**
+         * Get the number of cycles that were run.
+         *
+         * @return the number of cycles
+         */
+        public int cycles() {
+            return times.length;
+        }
+
+        /**
+         * Get the recorded time of the given cycle.
+         *
+         * @param cycle the index of the cycle
+         * @return the time in milliseconds
+         */
+        public long timeInMillis(int cycle) {
+            return times[cycle];
+        }
+
+        /**
+         * Get how long the given cycle took to run during the replay.
+         *
+         * @param cycle the index of the cycle
+         * @return the duration in nanoseconds
+         */
+        public long durationInNanos(int cycle) {
+            return durations[cycle];
+        }
+
+        /**
+         * Find the cycle that took the longest to run during the replay.
+         *
+         * @return the index of the slowest cycle, or -1 if no cycles were run
+         */
+        public int slowestCycle() {
+            int slowest = -1;
+            for (int cycle = 0; cycle != durations.length; ++cycle) {
+                if (slowest < 0 || durations[cycle] > durations[slowest]) slowest = cycle;
+            }
+            return slowest;
+        }
+
+        @Override
+        public String toString() {
+            return "replayed " + cycles() + " cycles with " + replayedCount + " of " + recordedCount
+                    + " recorded command changes and " + mismatchedValueCount + " mismatched values"
+                    + (divergence != null ? "; " + divergence : "");
+        }
+    }
+}
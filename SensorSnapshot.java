@@ -0,0 +1,137 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.Switch;
+
+/**
+ * An {@link Executable} that samples registered sensors once at the start of each cycle of the executor, so that everything
+ * that reads a sensor during that cycle sees the same value without reading the hardware again. Reading some sensors is
+ * expensive (for example, the speed of a Talon SRX is read over the CAN bus), and the same sensor is often read several times
+ * in each cycle by different controllers, commands and recorders.
+ * <p>
+ * Strongback's {@link Strongback#sensors() snapshot} always runs before all other executables:
+ *
+ * <pre>
+ * DoubleSupplier leftSpeed = Strongback.sensors().register(leftMotor::getSpeed);
+ * Switch atTop = Strongback.sensors().register(topLimitSwitch);
+ * </pre>
+ *
+ * The values are kept in two sets of primitive arrays. Each cycle samples every source into the set that is not being read, and
+ * then publishes that whole set to all threads with a single volatile write, keeping the other set for the next cycle. Readers
+ * on the executor's thread always see the values sampled at the start of the current cycle. Each value read on another thread
+ * comes from the most recently published cycle, so it is never half-written, but separate reads may come from different cycles.
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+public final class SensorSnapshot implements Executable {
+
+    private DoubleSupplier[] doubleSources = new DoubleSupplier[0];
+    private Switch[] switches = new Switch[0];
+    private volatile Samples current = new Samples(new double[0], new boolean[0]);
+    private Samples spare = new Samples(new double[0], new boolean[0]);
+
+    /**
+     * Register a source whose value is to be sampled once per cycle. The source is sampled immediately.
+     *
+     * @param source the source; may not be null
+     * @return the function that returns the value sampled at the start of the current cycle; never null
+     */
+    public synchronized DoubleSupplier register(DoubleSupplier source) {
+        if (source == null) throw new IllegalArgumentException("The source may not be null");
+        int index = doubleSources.length;
+        doubleSources = Arrays.copyOf(doubleSources, index + 1);
+        doubleSources[index] = source;
+        double[] values = Arrays.copyOf(current.doubles, index + 1);
+        values[index] = source.getAsDouble();
+        publish(values, current.states);
+        return () -> current.doubles[index];
+    }
+
+    /**
+     * Register a switch whose state is to be sampled once per cycle. The switch is sampled immediately.
+     *
+     * @param source the switch; may not be null
+     * @return the switch that returns the state sampled at the start of the current cycle; never null
+     */
+    public synchronized Switch register(Switch source) {
+        if (source == null) throw new IllegalArgumentException("The switch may not be null");
+        int index = switches.length;
+        switches = Arrays.copyOf(switches, index + 1);
+        switches[index] = source;
+        boolean[] values = Arrays.copyOf(current.states, index + 1);
+        values[index] = source.isTriggered();
+        publish(current.doubles, values);
+        return () -> current.states[index];
+    }
+
+    private void publish(double[] doubles, boolean[] states) {
+        spare = new Samples(doubles.clone(), states.clone());
+        current = new Samples(doubles, states);
+    }
+
+    /**
+     * Get the number of registered sources.
+     *
+     * @return the number of sources
+     */
+    public synchronized int size() {
+        return doubleSources.length + switches.length;
+    }
+
+    @Override
+    public synchronized void execute(long timeInMillis) {
+        // Sample into the spare set, which no reader is using ...
+        Samples next = spare;
+        double[] doubles = next.doubles;
+        DoubleSupplier[] doubleSources = this.doubleSources;
+        for (int i = 0; i != doubleSources.length; ++i) {
+            doubles[i] = doubleSources[i].getAsDouble();
+        }
+        boolean[] states = next.states;
+        Switch[] switches = this.switches;
+        for (int i = 0; i != switches.length; ++i) {
+            states[i] = switches[i].isTriggered();
+        }
+        // Publish all of the samples at once, and keep the previous set for the next cycle ...
+        spare = current;
+        current = next;
+    }
+
+    @Override
+    public String toString() {
+        return "Sensor snapshot of " + size() + " sources";
+    }
+
+    /**
+     * One set of the values sampled in a cycle.
+     */
+    private static final class Samples {
+        protected final double[] doubles;
+        protected final boolean[] states;
+
+        protected Samples(double[] doubles, boolean[] states) {
+            this.doubles = doubles;
+            this.states = states;
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.strongback;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -28,6 +30,11 @@ import org.strongback.AsyncEventRecorder.EventWriter;
 import org.strongback.Executor.Priority;
 import org.strongback.annotation.ThreadSafe;
 import org.strongback.command.Command;
+import org.strongback.command.CommandGroup;
+import org.strongback.command.CommandPlan;
+import org.strongback.command.CommandPool;
+import org.strongback.command.CommandStats;
+import org.strongback.command.IncrementalCommand;
 import org.strongback.command.Scheduler;
 import org.strongback.command.Scheduler.CommandListener;
 import org.strongback.components.Clock;
@@ -278,7 +285,9 @@ import edu.wpi.first.wpilibj.IterativeRobot;
  * <p>
  * It is often useful to know when various commands were submitted, when they began executing, and when the stopped executing or
  * were preempted by other commands. To enable recording of commands, simply call
- * {@link Strongback.Configurator#recordCommands()}.
+ * {@link Strongback.Configurator#recordCommands()}. Only the changes in each command's state are recorded, although
+ * {@link Strongback.Configurator#recordCommandHeartbeats(int)} will also periodically record the commands that are still
+ * running.
  * <p>
  * Strongback will only record events when you ask it to, so this is an "opt-in" feature. It's very useful during testing, and
  * you can have your robot code configure {@link Strongback.Configurator#recordEventsToFile(String, long) where} the events
@@ -313,7 +322,7 @@ public final class Strongback {
     public static final class Configurator {
 
         /**
-         * Log messages to {@link SystemLogger System.out} at the specified level.
+         * Log messages to {@link AsyncLogger System.out} at the specified level.
          * <p>
          * This is a convenience that simply delegates to {@link Strongback#setLogLevel(org.strongback.Logger.Level)}.
          *
@@ -326,6 +335,21 @@ public final class Strongback {
             return this;
         }
 
+        /**
+         * Log messages from the {@link Strongback#logger(String) named logger} and its descendants at the specified level.
+         * <p>
+         * This is a convenience that simply delegates to {@link Strongback#setLogLevel(String, org.strongback.Logger.Level)}.
+         *
+         * @param name the name of the logger; may not be null
+         * @param level the logging level for the named logger; may be null if the named logger should use its parent's level
+         * @return this configurator so that methods can be chained together; never null
+         * @see Strongback#setLogLevel(String, org.strongback.Logger.Level)
+         */
+        public Configurator setLogLevel(String name, Logger.Level level) {
+            Strongback.setLogLevel(name, level);
+            return this;
+        }
+
         /**
          * Turn off the data recorder so that it does not record anything.
          *
@@ -417,6 +441,21 @@ public final class Strongback {
             return this;
         }
 
+        /**
+         * Retain approximately the given number of the most recent events in memory, so that they can be
+         * {@link EventRecorder#query(String, long, long) queried} by type and time range without reading any event files. The
+         * events remain available even after Strongback is {@link Strongback#stop() stopped}, and this can be used with or
+         * without {@link #recordEventsToFile(String, long) recording events to files}.
+         *
+         * @param maxEvents the number of events to retain; must be positive, or 0 to not retain any events in memory
+         * @return this configurator so that methods can be chained together; never null
+         */
+        public Configurator recordEventsInMemory(int maxEvents) {
+            if (maxEvents < 0) throw new IllegalArgumentException("The number of events may not be negative");
+            ENGINE.recordEventsInMemory(maxEvents);
+            return this;
+        }
+
         /**
          * Turn off the event recorder so that it does not record anything.
          *
@@ -437,6 +476,20 @@ public final class Strongback {
             return this;
         }
 
+        /**
+         * When {@link #recordCommands() recording commands}, also record every {@code intervalInCycles} cycles that each
+         * command is still running. By default, only the command state transitions are recorded.
+         *
+         * @param intervalInCycles the number of cycles between records of running commands, or 0 to record only state
+         *        transitions
+         * @return this configurator so that methods can be chained together; never null
+         */
+        public Configurator recordCommandHeartbeats(int intervalInCycles) {
+            if (intervalInCycles < 0) throw new IllegalArgumentException("The heartbeat interval may not be negative");
+            ENGINE.recordCommandHeartbeats(intervalInCycles);
+            return this;
+        }
+
         /**
          * Do not record any command state transitions to the event recorder.
          *
@@ -447,6 +500,38 @@ public final class Strongback {
             return this;
         }
 
+        /**
+         * Record with the {@link Strongback#dataRecorder() data recorder} the time spent in each cycle by all commands of the
+         * given class and the number of those commands that ran in each cycle.
+         *
+         * @param commandClass the class of command; may not be null
+         * @return this configurator so that methods can be chained together; never null
+         * @see Strongback#commandStats()
+         * @see Scheduler#recordStats(DataRecorder, Class)
+         */
+        public Configurator recordCommandStats(Class<? extends Command> commandClass) {
+            if (commandClass == null) throw new IllegalArgumentException("The command class may not be null");
+            ENGINE.recordCommandStats(commandClass);
+            return this;
+        }
+
+        /**
+         * Set the fraction of each {@link #useExecutionPeriod(long, TimeUnit) execution period}, measured from the start of the
+         * scheduler's cycle, that can be used by all {@link IncrementalCommand}s. By default this is 0.5.
+         *
+         * @param fractionOfExecutionPeriod the fraction of the execution period; must be greater than 0 and less than or equal
+         *        to 1
+         * @return this configurator so that methods can be chained together; never null
+         * @see Scheduler#useCycleBudget(long, TimeUnit)
+         */
+        public Configurator useIncrementalCommandBudget(double fractionOfExecutionPeriod) {
+            if (fractionOfExecutionPeriod <= 0.0 || fractionOfExecutionPeriod > 1.0) {
+                throw new IllegalArgumentException("The fraction of the execution period must be greater than 0 and at most 1");
+            }
+            ENGINE.useIncrementalCommandBudget(fractionOfExecutionPeriod);
+            return this;
+        }
+
         /**
          * Disable the {@link Strongback#switchReactor() switch reactor} so that Strongback <em>will not</em> run it with its
          * executor.
@@ -658,13 +743,32 @@ public final class Strongback {
     }
 
     /**
-     * Get Strongback's global {@link Logger} implementation.
+     * Get Strongback's global {@link Logger} implementation. Messages are handed off to and written by a separate logging
+     * thread, so logging never blocks the calling thread (including Strongback's executor thread).
      *
      * @return Strongback's logger instance; never null
      * @see #setLogLevel(org.strongback.Logger.Level)
      */
     public static Logger logger() {
-        return LOGGER;
+        return LOGGER.root();
+    }
+
+    /**
+     * Get the {@link Logger} with the given name, which is useful to control the logging of one subsystem independently of
+     * other subsystems. Names are hierarchical with each level separated by a '.' character, so a logger named
+     * "{@code drive.left}" logs at the level of the "{@code drive}" logger unless it has been given its own
+     * {@link #setLogLevel(String, org.strongback.Logger.Level) level}. Loggers without their own level (or that of an
+     * ancestor) use the {@link #setLogLevel(org.strongback.Logger.Level) global level}.
+     * <p>
+     * Checking whether a level is enabled is a single field read, so when a level is disabled, calls that use the
+     * parameterized or {@link java.util.function.Supplier}-based forms cost almost nothing.
+     *
+     * @param name the name of the logger; may be null or empty for Strongback's {@link #logger() global logger}
+     * @return the named logger instance; never null
+     * @see #setLogLevel(String, org.strongback.Logger.Level)
+     */
+    public static Logger logger(String name) {
+        return LOGGER.logger(name);
     }
 
     /**
@@ -677,6 +781,18 @@ public final class Strongback {
         LOGGER.enable(level);
     }
 
+    /**
+     * Set the level at which log messages from the {@link #logger(String) named logger} and its descendants should be recorded.
+     * This can be called at any time, including while Strongback is running.
+     *
+     * @param name the name of the logger; may not be null
+     * @param level the logging level for the named logger; may be null if the named logger should use its parent's level
+     */
+    public static void setLogLevel(String name, Logger.Level level) {
+        if (name == null) throw new IllegalArgumentException("The logger name may not be null");
+        LOGGER.enable(name, level);
+    }
+
     /**
      * Get Strongback's {@link Clock time system} implementation.
      *
@@ -698,14 +814,29 @@ public final class Strongback {
         }
     }
 
+    /**
+     * Submit a compiled {@link CommandPlan} to be executed by Strongback's internal scheduler. This is more efficient than
+     * {@link #submit(Command) submitting} the same {@link CommandGroup} many times.
+     *
+     * @param plan the compiled plan to be submitted
+     * @see CommandGroup#compile()
+     */
+    public static void submit(CommandPlan plan) {
+        if (plan != null) {
+            ENGINE.submit(plan);
+        }
+    }
+
     /**
      * Submit to Strongback's internal scheduler a {@link Command} that runs the supplied function one time and completes
-     * immediately.
+     * immediately. The command is obtained from a pool, so that submitting functions does not create a new command each time.
      *
      * @param executeFunction the function to be called during execution; may not be null
      */
     public static void submit(Runnable executeFunction) {
-        submit(Command.create(executeFunction));
+        FunctionCommand command = FUNCTION_COMMANDS.acquire();
+        command.function = executeFunction;
+        submit(command);
     }
 
     /**
@@ -779,6 +910,18 @@ public final class Strongback {
         return ENGINE.getSwitchReactor();
     }
 
+    /**
+     * Get Strongback's {@link SensorSnapshot} that samples registered sensors once at the start of each cycle, before all other
+     * executables, so that everything that reads a registered sensor during a cycle sees the same value without reading the
+     * hardware again.
+     *
+     * @return the sensor snapshot; never null
+     * @see SensorSnapshot
+     */
+    public static SensorSnapshot sensors() {
+        return ENGINE.getSensors();
+    }
+
     /**
      * Get Strongback's {@link DataRecorder} that can be used to register switches, motors, and other functions that provide
      * recordable data. Once data providers have been registered, Strongback will only begin recording data after Strongback is
@@ -801,19 +944,32 @@ public final class Strongback {
      * Get Strongback's {@link EventRecorder} used to record non-regular events and activities. If Strongback is configured to
      * {@link Configurator#recordCommands() automatically record commands}, then all changes to command states are recorded in
      * this event log. However, custom code can also explicitly {@link EventRecorder#record(String, String) record events} to
-     * the same log.
+     * the same log. If Strongback is configured to {@link Configurator#recordEventsInMemory(int) retain events in memory}, then
+     * recent events can be {@link EventRecorder#query(String, long, long) queried} by type and time range.
      *
      * @return the event recorder
      * @see EventRecorder
      * @see Configurator#recordCommands()
      * @see Configurator#recordNoCommands()
      * @see Configurator#recordEventsToFile(String, long)
+     * @see Configurator#recordEventsInMemory(int)
      * @see Configurator#recordNoEvents()
      */
     public static EventRecorder eventRecorder() {
         return ENGINE.getEventRecorder();
     }
 
+    /**
+     * Get a snapshot of the statistics for each class of {@link Command} run by Strongback's internal scheduler, including the
+     * time spent in the commands' methods. This is useful to find the commands that use most of each cycle.
+     *
+     * @return the statistics, or null if Strongback has not been started
+     * @see Configurator#recordCommandStats(Class)
+     */
+    public static CommandStats commandStats() {
+        return ENGINE.getCommandStats();
+    }
+
     /**
      * Update the execution period of the executor.
      * Can only be called when strongback isn't running.
@@ -851,10 +1007,34 @@ public final class Strongback {
         ENGINE.logConfiguration();
     }
 
-    private static final SystemLogger LOGGER = new SystemLogger();
+    private static final AsyncLogger LOGGER = new AsyncLogger();
     private static final Clock CLOCK = Clock.system();
-    private static final Engine ENGINE = new Engine(CLOCK, LOGGER);
+    private static final Engine ENGINE = new Engine(CLOCK, LOGGER.root());
     private static final Configurator CONFIG = new Configurator();
+    private static final CommandPool<FunctionCommand> FUNCTION_COMMANDS = new CommandPool<>(FunctionCommand::new);
+
+    /**
+     * A pooled {@link Command} that runs a function one time.
+     */
+    private static final class FunctionCommand extends Command {
+        protected Runnable function;
+
+        @Override
+        public boolean execute() {
+            function.run();
+            return true;
+        }
+
+        @Override
+        protected void reset() {
+            function = null;
+        }
+
+        @Override
+        public String toString() {
+            return "Command (one-time) " + function;
+        }
+    }
 
     @ThreadSafe
     protected static final class Engine {
@@ -864,6 +1044,7 @@ public final class Strongback {
         private static final Priority EVENT_RECORDER_PRIORITY = Priority.LOW;
 
         private final AsyncSwitchReactor switchReactor = new AsyncSwitchReactor();
+        private final SensorSnapshot sensors = new SensorSnapshot();
         private final DataRecorderChannels dataRecorderChannels = new DataRecorderChannels();
         private final AtomicBoolean running = new AtomicBoolean();
         private final AtomicLong executorDelayCounter = new AtomicLong();
@@ -874,9 +1055,13 @@ public final class Strongback {
         private final Counter eventWriterFilenameCounter = Counter.unlimited(1);
         private volatile Scheduler scheduler;
         private volatile EventRecorder eventRecorder;
+        private volatile EventTimeline eventTimeline;
         private volatile ExcessiveExecutionHandler excessiveHandler;
         private volatile long executionPeriodInMillis = 20;
         private volatile boolean recordCommands = true;
+        private volatile int commandHeartbeatCycles = 0;
+        private volatile double incrementalCommandBudget = 0.5;
+        private final Set<Class<? extends Command>> commandStatsClasses = new LinkedHashSet<>();
         private volatile boolean useSwitchReactor = true;
         private volatile EventWriter eventWriter;
         private volatile Supplier<Function<Iterable<DataRecorderChannel>, DataWriter>> dataWriterFactorySupplier;
@@ -895,12 +1080,20 @@ public final class Strongback {
             logger.info("Strongback configuration:");
             logger.info("  log level = " + logger);
             logger.info("  execution period = " + executionPeriodInMillis + " milliseconds");
+            logger.info("  incremental command budget = " + incrementalCommandBudget + " of the execution period");
             logger.info("  excessive execution period handler = " + excessiveHandler);
             logger.info("  checking switch states = " + (useSwitchReactor ? "yes" : "no"));
             logger.info("  recording data = " + dataWriterDescription);
             logger.info("  recording events = " + eventWriterDescription);
-            if (eventWriter != null) {
+            logger.info("  retaining events = " + (eventTimeline != null ? eventTimeline : "no"));
+            if (eventWriter != null || eventTimeline != null) {
                 logger.info("  recording commands as events = " + (recordCommands ? "yes" : "no"));
+                if (recordCommands && commandHeartbeatCycles != 0) {
+                    logger.info("  recording running commands every " + commandHeartbeatCycles + " cycles");
+                }
+            }
+            if (!commandStatsClasses.isEmpty()) {
+                logger.info("  recording command statistics = " + commandStatsClasses);
             }
             logger.info("");
             logger.info("Strongback priorities during execution:");
@@ -911,7 +1104,7 @@ public final class Strongback {
             if (dataWriterFactorySupplier != null) {
                 logger.info("  Recording data @ " + DATA_RECORDER_PRIORITY);
             }
-            if (eventWriter != null) {
+            if (eventWriter != null || eventTimeline != null) {
                 logger.info("  Writing events @ " + EVENT_RECORDER_PRIORITY);
             }
             logger.info("");
@@ -922,13 +1115,25 @@ public final class Strongback {
         }
 
         public EventRecorder getEventRecorder() {
-            return eventRecorder != null ? eventRecorder : EventRecorder.noOp();
+            EventRecorder recorder = eventRecorder;
+            if (recorder != null) return recorder;
+            EventTimeline timeline = eventTimeline;
+            return timeline != null ? timeline.asReadOnlyRecorder() : EventRecorder.noOp();
+        }
+
+        public CommandStats getCommandStats() {
+            Scheduler scheduler = this.scheduler;
+            return scheduler != null ? scheduler.stats() : null;
         }
 
         public DataRecorder getDataRecorder() {
             return dataRecorderChannels;
         }
 
+        public SensorSnapshot getSensors() {
+            return sensors;
+        }
+
         public AsyncSwitchReactor getSwitchReactor() {
             return switchReactor;
         }
@@ -998,6 +1203,33 @@ public final class Strongback {
             return true;
         }
 
+        public synchronized boolean useIncrementalCommandBudget(double fractionOfExecutionPeriod) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to change the budget for incremental commands");
+                return false;
+            }
+            this.incrementalCommandBudget = fractionOfExecutionPeriod;
+            return true;
+        }
+
+        public synchronized boolean recordCommandHeartbeats(int intervalInCycles) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to change the interval for recording running commands");
+                return false;
+            }
+            this.commandHeartbeatCycles = intervalInCycles;
+            return true;
+        }
+
+        public synchronized boolean recordCommandStats(Class<? extends Command> commandClass) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to start recording statistics for " + commandClass.getName());
+                return false;
+            }
+            this.commandStatsClasses.add(commandClass);
+            return true;
+        }
+
         public synchronized boolean recordEvents(EventWriter eventWriter) {
             if (isRunning()) {
                 if (eventWriter == null) {
@@ -1031,6 +1263,15 @@ public final class Strongback {
             return true;
         }
 
+        public synchronized boolean recordEventsInMemory(int maxEvents) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to change the number of events retained in memory");
+                return false;
+            }
+            this.eventTimeline = maxEvents > 0 ? new EventTimeline(maxEvents) : null;
+            return true;
+        }
+
         public synchronized boolean recordData(Function<Iterable<DataRecorderChannel>, DataWriter> dataWriterFactory) {
             if (isRunning()) {
                 if (dataWriterFactory == null) {
@@ -1146,16 +1387,27 @@ public final class Strongback {
 
                     // Create the event recorder if needed ...
                     boolean listenToCommands = false;
-                    if (eventWriter != null) {
-                        eventRecorder = new AsyncEventRecorder(eventWriter, clock);
+                    if (eventWriter != null || eventTimeline != null) {
+                        eventRecorder = new AsyncEventRecorder(eventWriter, eventTimeline, clock);
                         eventRecorder.execute(CLOCK.currentTimeInMillis());
                         listenToCommands = recordCommands;
                     }
 
                     // Create the scheduler that runs commands ...
-                    scheduler = new Scheduler(logger, createCommandListener(eventRecorder, listenToCommands));
+                    scheduler = new Scheduler(logger, createCommandListener(eventRecorder, listenToCommands),
+                            listenToCommands ? commandHeartbeatCycles : 0);
+                    long periodInNanos = TimeUnit.MILLISECONDS.toNanos(executionPeriodInMillis);
+                    long budgetInNanos = (long) (periodInNanos * incrementalCommandBudget);
+                    scheduler.useCycleBudget(Math.max(1L, budgetInNanos), TimeUnit.NANOSECONDS);
                     scheduler.execute(CLOCK.currentTimeInMillis());
                     executables.register(scheduler, SCHEDULER_PRIORITY);
+                    for (Class<? extends Command> commandClass : commandStatsClasses) {
+                        scheduler.recordStats(dataRecorderChannels, commandClass);
+                    }
+
+                    // Sample the sensors before anything else runs in each cycle ...
+                    sensors.execute(CLOCK.currentTimeInMillis());
+                    executables.registerFirst(sensors);
 
                     if (useSwitchReactor) {
                         // Register the switch reactor ...
@@ -1222,6 +1474,19 @@ public final class Strongback {
             return false;
         }
 
+        public synchronized boolean submit(CommandPlan plan) {
+            if (plan != null) {
+                if (!isRunning()) {
+                    logger.warn("Strongback is not currently running, so the plan " + plan
+                            + " will begin running when Strongback is started.");
+                    return false;
+                }
+                scheduler.submit(plan);
+                return true;
+            }
+            return false;
+        }
+
         public synchronized void flushRecorders() {
             if (isRunning() && dataRecorderDriver != null) {
                 // Finally flush the data recorder ...
@@ -1254,17 +1519,19 @@ public final class Strongback {
                     }
                 } finally {
                     try {
-                        // Kill any remaining commands ...
+                        // Kill any remaining commands; the executor is stopped, so run the scheduler once more to do it ...
                         if (scheduler != null) {
                             scheduler.killAll();
+                            scheduler.execute(clock.currentTimeInMillis());
                         }
                     } finally {
                         // Unregister the scheduler ...
                         executables.unregister(scheduler);
                         scheduler = null;
 
-                        // Unregister the switch reactor (but don't null it out!) ...
+                        // Unregister the switch reactor and sensors (but don't null them out!) ...
                         executables.unregister(switchReactor);
+                        executables.unregister(sensors);
 
                         // Unregister the data recorder ...
                         if (dataRecorderDriver != null) {
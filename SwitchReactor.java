@@ -32,6 +32,22 @@ import org.strongback.components.Switch;
  *   reactor.onUnTriggered(gamepad.getRightTrigger(),()-&gt;Strongback.submit(new StopFireCommand()));
  * </pre>
  * <p>
+ * The reactor can also filter noisy switches and detect common gestures using the time of each execution, so a function can
+ * be called only after a switch has settled in a new state for some time ({@link #onTriggeredDebounced(Switch, long, Runnable)
+ * debouncing}), after a switch has been {@link #onLongPress(Switch, long, Runnable) held} for some time, when a switch is
+ * {@link #onMultiClick(Switch, int, long, Runnable) clicked several times} in quick succession, or
+ * {@link #whileTriggeredEvery(Switch, long, Runnable) at a limited rate} while a switch remains triggered:
+ *
+ * <pre>
+ *   reactor.onTriggeredSubmit(limitSwitch, 20, ()-&gt;new StopArmCommand());
+ *   reactor.onLongPress(gamepad.getA(), 1000, ()-&gt;Strongback.submit(new ClimbCommand()));
+ *   reactor.onDoubleClick(gamepad.getB(), 400, ()-&gt;Strongback.submit(new ToggleIntakeCommand()));
+ * </pre>
+ * <p>
+ * These time-based methods have default implementations that throw {@link UnsupportedOperationException}, so that existing
+ * implementations of this interface continue to compile; the reactor obtained from {@link Strongback#switchReactor()} supports
+ * all of them.
+ * <p>
  * The reactor is threadsafe, meaning functions can be registered even while the reactor is forwarding state and state
  * transitions to the already-registered functions.
  * <p>
@@ -41,7 +57,8 @@ import org.strongback.components.Switch;
 public interface SwitchReactor {
 
     /**
-     * Submit a {@link Command} the moment when the specified {@link Switch} is triggered.
+     * Submit a {@link Command} the moment when the specified {@link Switch} is triggered. To avoid creating a new command each
+     * time, the supplier can obtain the command from a {@link org.strongback.command.CommandPool CommandPool}.
      *
      * @param swtch the {@link Switch}
      * @param commandSupplier the supplier of the command to submit; may not be null but may return a null command
@@ -60,6 +77,19 @@ public interface SwitchReactor {
         onUntriggered(swtch,()->Strongback.submit(commandSupplier.get()));
     }
 
+    /**
+     * Submit a {@link Command} when the specified {@link Switch} becomes triggered and then remains triggered for the given
+     * debounce time. This prevents a noisy switch from submitting a new command every time it bounces.
+     *
+     * @param swtch the {@link Switch}
+     * @param debounceInMillis the time in milliseconds that the switch must remain triggered; may not be negative
+     * @param commandSupplier the supplier of the command to submit; may not be null but may return a null command
+     * @see #onTriggeredDebounced(Switch, long, Runnable)
+     */
+    default public void onTriggeredSubmit(Switch swtch, long debounceInMillis, Supplier<Command> commandSupplier) {
+        onTriggeredDebounced(swtch, debounceInMillis, ()->Strongback.submit(commandSupplier.get()));
+    }
+
     /**
      * Register a {@link Runnable} function that is to be called the moment when the specified {@link Switch} is triggered.
      *
@@ -93,4 +123,89 @@ public interface SwitchReactor {
      * @param function the function to execute while the switch remains untriggered
      */
     public void whileUntriggered(Switch swtch, Runnable function);
+
+    /**
+     * Register a {@link Runnable} function that is to be called once the specified {@link Switch} has been triggered and then
+     * remained triggered for the given debounce time. Any change in the switch's state before then restarts the debounce time,
+     * and the function is called again only after the switch has been untriggered for the same debounce time and then
+     * triggered again.
+     *
+     * @param swtch the {@link Switch}
+     * @param debounceInMillis the time in milliseconds that the switch must remain triggered; may not be negative
+     * @param function the function to execute when the switch is triggered
+     * @throws UnsupportedOperationException if this reactor does not support debouncing
+     */
+    default public void onTriggeredDebounced(Switch swtch, long debounceInMillis, Runnable function) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support debouncing");
+    }
+
+    /**
+     * Register a {@link Runnable} function that is to be called once the specified {@link Switch} has been untriggered and then
+     * remained untriggered for the given debounce time. Any change in the switch's state before then restarts the debounce
+     * time, and the function is called again only after the switch has been triggered for the same debounce time and then
+     * untriggered again.
+     *
+     * @param swtch the {@link Switch}
+     * @param debounceInMillis the time in milliseconds that the switch must remain untriggered; may not be negative
+     * @param function the function to execute when the switch is untriggered
+     * @throws UnsupportedOperationException if this reactor does not support debouncing
+     */
+    default public void onUntriggeredDebounced(Switch swtch, long debounceInMillis, Runnable function) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support debouncing");
+    }
+
+    /**
+     * Register a {@link Runnable} function that is to be called once when the specified {@link Switch} has been triggered
+     * continuously for the given time. The function is called again only after the switch is untriggered and then held again.
+     *
+     * @param swtch the {@link Switch}
+     * @param holdInMillis the time in milliseconds that the switch must remain triggered; may not be negative
+     * @param function the function to execute when the switch has been held long enough
+     * @throws UnsupportedOperationException if this reactor does not support long presses
+     */
+    default public void onLongPress(Switch swtch, long holdInMillis, Runnable function) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support long presses");
+    }
+
+    /**
+     * Register a {@link Runnable} function that is to be called when the specified {@link Switch} is triggered twice within the
+     * given time.
+     *
+     * @param swtch the {@link Switch}
+     * @param windowInMillis the maximum time in milliseconds between the first and second time the switch is triggered; may not
+     *        be negative
+     * @param function the function to execute when the switch is double-clicked
+     * @see #onMultiClick(Switch, int, long, Runnable)
+     */
+    default public void onDoubleClick(Switch swtch, long windowInMillis, Runnable function) {
+        onMultiClick(swtch, 2, windowInMillis, function);
+    }
+
+    /**
+     * Register a {@link Runnable} function that is to be called when the specified {@link Switch} is triggered the given number
+     * of times within the given time.
+     *
+     * @param swtch the {@link Switch}
+     * @param clicks the number of times the switch must be triggered; must be positive
+     * @param windowInMillis the maximum time in milliseconds between the first and last time the switch is triggered; may not
+     *        be negative
+     * @param function the function to execute when the switch is clicked the given number of times
+     * @throws UnsupportedOperationException if this reactor does not support multiple clicks
+     */
+    default public void onMultiClick(Switch swtch, int clicks, long windowInMillis, Runnable function) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support multiple clicks");
+    }
+
+    /**
+     * Register a {@link Runnable} function that is to be called the moment when the specified {@link Switch} is triggered, and
+     * then at most once every interval while the switch remains triggered.
+     *
+     * @param swtch the {@link Switch}
+     * @param intervalInMillis the minimum time in milliseconds between calls to the function; may not be negative
+     * @param function the function to execute while the switch remains triggered
+     * @throws UnsupportedOperationException if this reactor does not support rate-limited calls
+     */
+    default public void whileTriggeredEvery(Switch swtch, long intervalInMillis, Runnable function) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support rate-limited calls");
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+/**
+ * Defines what the {@link Scheduler} does with a submitted {@link Command} when one or more of its {@link Requirable}s are in
+ * use by a command that is not interruptible.
+ *
+ * @see Command#setAdmissionPolicy(AdmissionPolicy)
+ * @see Command#setAdmissionPolicy(AdmissionPolicy, double)
+ */
+public enum AdmissionPolicy {
+    /**
+     * The {@link Command} is not run at all. This is the default policy.
+     */
+    DROP,
+    /**
+     * The {@link Command} waits until all of its {@link Requirable}s are available, and is then run. The command waits only
+     * as long as its timeout (if it has one), after which it is not run at all.
+     */
+    QUEUE,
+    /**
+     * The {@link Command} interrupts non-interruptible commands that have a lower {@link Command#setPriority(int) priority}, but
+     * is not run at all when one of its {@link Requirable}s is used by a non-interruptible command with the same or a higher
+     * priority.
+     */
+    PREEMPT,
+}
@@ -37,6 +37,12 @@ public abstract class Command {
     private final double timeout;
     private final Set<Requirable> requirements;
     private boolean interruptible = true;
+    private AdmissionPolicy admissionPolicy = AdmissionPolicy.DROP;
+    private double admissionTimeout = 0.0;
+    private int priority = 0;
+    private CommandPool<?> pool;
+    private volatile boolean returned = false;
+    private boolean delay = false;
 
     /**
      * Create a new command with the given timeout and zero or more Requirable components
@@ -128,6 +134,43 @@ public abstract class Command {
     public void end() {
     }
 
+    /**
+     * Return this command to the state it was in when it was created, so that it can be reused. This is called only for
+     * commands obtained from a {@link CommandPool}, after the command has been finalized (or dropped without being run) and just
+     * before the command is returned to its pool. Implementations should also release any references to other objects that
+     * should not be held while the command is idle.
+     * <p>
+     * By default this method does nothing.
+     */
+    protected void reset() {
+    }
+
+    final void acquiredFrom(CommandPool<?> pool) {
+        this.pool = pool;
+        this.returned = false;
+    }
+
+    /**
+     * Determine whether this command came from a {@link CommandPool} and has since been returned to it, in which case it must not
+     * be used. If so, the leak is recorded by the pool.
+     *
+     * @return {@code true} if this command was returned to its pool, or {@code false} otherwise
+     */
+    final boolean checkReturned() {
+        if (!returned) return false;
+        pool.leaked();
+        return true;
+    }
+
+    /**
+     * Return this command to its {@link CommandPool}, if it came from one.
+     */
+    final void recycle() {
+        if (pool == null || checkReturned()) return;
+        returned = true;
+        pool.release(this);
+    }
+
     final Set<Requirable> getRequirements() {
         return requirements;
     }
@@ -136,6 +179,16 @@ public abstract class Command {
         return timeout;
     }
 
+    /**
+     * Determine whether this command does nothing but wait for its timeout, so that the scheduler need not execute it until
+     * the timeout passes.
+     *
+     * @return {@code true} if this command is a {@link #pause(double) pause}, or {@code false} otherwise
+     */
+    final boolean isDelay() {
+        return delay;
+    }
+
     /**
      * Sets this {@link Command} to not be interrupted if another command with the same requirements is added to the scheduler.
      * <p>
@@ -149,6 +202,61 @@ public abstract class Command {
         return interruptible;
     }
 
+    /**
+     * Sets what the scheduler does with this {@link Command} if, when it is submitted, another command that is not
+     * interruptible is using some of the same requirements.
+     * <p>
+     * By default the new command is {@link AdmissionPolicy#DROP dropped}. When this is set on a {@link CommandGroup}, it
+     * applies to all of the group's commands that do not set their own policy.
+     *
+     * @param policy the admission policy; may not be null
+     * @see #setAdmissionPolicy(AdmissionPolicy, double)
+     */
+    protected final void setAdmissionPolicy(AdmissionPolicy policy) {
+        setAdmissionPolicy(policy, 0.0);
+    }
+
+    /**
+     * Sets what the scheduler does with this {@link Command} if, when it is submitted, another command that is not
+     * interruptible is using some of the same requirements. When the policy is {@link AdmissionPolicy#QUEUE}, the command will
+     * wait at most the given time for its requirements to become available.
+     *
+     * @param policy the admission policy; may not be null
+     * @param timeoutInSeconds how long in seconds this command waits for its requirements, zero is forever
+     */
+    protected final void setAdmissionPolicy(AdmissionPolicy policy, double timeoutInSeconds) {
+        if (policy == null) throw new IllegalArgumentException("The admission policy may not be null");
+        if (timeoutInSeconds < 0.0) throw new IllegalArgumentException("The timeout may not be negative");
+        this.admissionPolicy = policy;
+        this.admissionTimeout = timeoutInSeconds;
+    }
+
+    /**
+     * Sets the priority of this {@link Command}, which is used only when a command with the {@link AdmissionPolicy#PREEMPT}
+     * policy is submitted. By default the priority is 0.
+     *
+     * @param priority the priority; larger values have higher priority
+     */
+    protected final void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    final AdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    final double getAdmissionTimeoutInSeconds() {
+        return admissionTimeout;
+    }
+
+    final int getPriority() {
+        return priority;
+    }
+
+    final boolean hasDefaultAdmission() {
+        return admissionPolicy == AdmissionPolicy.DROP && priority == 0;
+    }
+
     /**
      * Create a command that uses the unmanaged {@link Controller} to move toward the specified target using controller's
      * {@link Controller#getTolerance() tolerance}. The controller is <em>not</em> automatically and continuously measuring the
@@ -377,7 +485,7 @@ public abstract class Command {
      */
     public static Command pause(long pauseTime, TimeUnit unit) {
         double durationInSeconds = (double) unit.toNanos(pauseTime) / (double) TimeUnit.SECONDS.toNanos(1);
-        return create(durationInSeconds, () -> false, () -> "PauseCommand (" + unit.toMillis(pauseTime) + " milliseconds)");
+        return delay(durationInSeconds, () -> "PauseCommand (" + unit.toMillis(pauseTime) + " milliseconds)");
     }
 
     /**
@@ -388,7 +496,13 @@ public abstract class Command {
      * @return the new command; never null
      */
     public static Command pause(double pauseTimeInSeconds) {
-        return create(pauseTimeInSeconds, () -> false, () -> "PauseCommand (" + pauseTimeInSeconds + " sec)");
+        return delay(pauseTimeInSeconds, () -> "PauseCommand (" + pauseTimeInSeconds + " sec)");
+    }
+
+    private static Command delay(double durationInSeconds, Supplier<String> toString) {
+        Command command = create(durationInSeconds, () -> false, toString);
+        command.delay = true;
+        return command;
     }
 
     /**
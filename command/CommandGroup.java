@@ -127,6 +127,20 @@ public class CommandGroup extends Command {
         return new CommandGroup(commands,Type.PARRALLEL);
     }
 
+    /**
+     * Creates a single {@link CommandGroup} that executes several {@link Command}s simultaneously, where each command is executed
+     * on a separate thread during each cycle. The cycle then takes about as long as the slowest of the commands rather than the
+     * total of all the commands, which is useful when the commands do a lot of computation. The commands must have no
+     * {@link Requirable}s in common and must be safe to execute on other threads; commands with requirements in common are
+     * executed one after the other on the scheduler's thread, as with {@link #runSimultaneously(Command...)}.
+     *
+     * @param commands the {@link Command}s to be executed
+     * @return the {@link CommandGroup} wrapping the {@link Command}s
+     */
+    public static CommandGroup runConcurrently(Command... commands) {
+        return new CommandGroup(commands, Type.PARRALLEL, true);
+    }
+
     static enum Type {
         SEQUENTIAL, PARRALLEL, FORK;
     }
@@ -134,6 +148,7 @@ public class CommandGroup extends Command {
     private CommandGroup root;
     private final Command[] commands;
     private final Type type;
+    private final boolean concurrent;
 
     /**
      * Create a new command group. Typically, subclass constructors call this constructor (perhaps implicitly) and then add one
@@ -143,11 +158,17 @@ public class CommandGroup extends Command {
     protected CommandGroup() {
         commands = null;
         type = Type.SEQUENTIAL;
+        concurrent = false;
     }
 
     private CommandGroup(Command[] commands, Type type) {
+        this(commands, type, false);
+    }
+
+    private CommandGroup(Command[] commands, Type type, boolean concurrent) {
         this.commands = commands;
         this.type = type;
+        this.concurrent = concurrent;
     }
 
     Type getType() {
@@ -158,6 +179,10 @@ public class CommandGroup extends Command {
         return root != null ? root.getCommands() : commands;
     }
 
+    boolean isConcurrent() {
+        return root != null ? root.isConcurrent() : concurrent;
+    }
+
     /**
      * Wraps several {@link Commands}s in a single {@link CommandGroup} that executes them simultaneously.
      *
@@ -170,6 +195,20 @@ public class CommandGroup extends Command {
         return cg;
     }
 
+    /**
+     * Wraps several {@link Commands}s in a single {@link CommandGroup} that executes them simultaneously, each on a separate
+     * thread during each cycle.
+     *
+     * @param commands the {@link CommandRunner}s to wrap
+     * @return the {@link CommandGroup} wrapping the {@link Command}s
+     * @see #runConcurrently(Command...)
+     */
+    public CommandGroup concurrently(Command... commands) {
+        CommandGroup cg = new CommandGroup(commands, Type.PARRALLEL, true);
+        root = cg;
+        return cg;
+    }
+
     /**
      * Creates a single {@link CommandGroup} that executes several {@link Command}s in sequential order.
      *
@@ -194,6 +233,17 @@ public class CommandGroup extends Command {
         return cg;
     }
 
+    /**
+     * Compile this group into an immutable {@link CommandPlan} that can be {@link Scheduler#submit(CommandPlan) submitted}
+     * many times without walking this group's commands or allocating new runners each time. Compile a group only after it has
+     * been completely defined, since changes made afterward will not be reflected in the plan.
+     *
+     * @return the compiled plan; never null
+     */
+    public CommandPlan compile() {
+        return new CommandPlan(this);
+    }
+
     @Override
     public final boolean execute() {
         return false;
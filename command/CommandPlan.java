@@ -0,0 +1,294 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.util.Arrays;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * An immutable, flattened execution plan for a {@link CommandGroup}, created with {@link CommandGroup#compile()}. Submitting a
+ * plan to a {@link Scheduler} is equivalent to submitting the group, except that the group's tree of commands is walked only
+ * once, when the plan is compiled, and the requirements of each command are computed only once for each scheduler.
+ * <p>
+ * The plan is an array of nodes, each of which is a command, a branch that runs several child nodes in parallel, or a fork. Each
+ * node has the index of the node that follows it and the range of its children in a shared array of child indexes. The
+ * requirement bitmasks of the nodes depend on the {@link Requirements registry} of the scheduler, so they are computed the first
+ * time the plan is submitted to a scheduler and reused for as long as the plan is submitted to that same scheduler. Each time the
+ * plan is submitted, it obtains a pooled set of runners for all of its nodes (creating one only if all existing sets are still in
+ * use), resets them, and hands the first to the scheduler. When the last runner in the set completes or is dropped, the set is
+ * returned to the pool. Plans that are resubmitted many times therefore do not allocate any runners once they have been
+ * submitted for the first time.
+ * <p>
+ * Because each submission of a plan uses the same {@link Command} instances (just like resubmitting the same
+ * {@link CommandGroup}), a plan should not be submitted again while it is still running unless its commands have no state.
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+public final class CommandPlan {
+
+    private static final int NONE = -1;
+
+    private final CommandGroup group;
+    private final int root;
+    private final Command[] commands;
+    private final int[] next;
+    private final int[] childStart;
+    private final int[] childCount;
+    private final int[] children;
+    private final boolean[] interruptible;
+    private final Command[] admissions;
+    private final boolean[] concurrent;
+    private volatile Masks masks;
+    private Instance[] pool = new Instance[2];
+    private int pooled = 0;
+
+    CommandPlan(CommandGroup group) {
+        this.group = group;
+        Builder builder = new Builder();
+        this.root = builder.build(group, NONE, null);
+        this.commands = Arrays.copyOf(builder.commands, builder.count);
+        this.next = Arrays.copyOf(builder.next, builder.count);
+        this.childStart = Arrays.copyOf(builder.childStart, builder.count);
+        this.childCount = Arrays.copyOf(builder.childCount, builder.count);
+        this.children = Arrays.copyOf(builder.children, builder.childrenCount);
+        this.interruptible = Arrays.copyOf(builder.interruptible, builder.count);
+        this.admissions = Arrays.copyOf(builder.admissions, builder.count);
+        this.concurrent = Arrays.copyOf(builder.concurrent, builder.count);
+    }
+
+    /**
+     * Get the {@link CommandGroup} from which this plan was compiled.
+     *
+     * @return the command group; never null
+     */
+    public CommandGroup group() {
+        return group;
+    }
+
+    /**
+     * Get the number of nodes in this plan.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return commands.length;
+    }
+
+    /**
+     * Get the requirement bitmask of each node, computed with the given registry.
+     *
+     * @param requirements the registry of the scheduler to which the plan is submitted; may not be null
+     * @return the bitmasks indexed by node; never null
+     */
+    private long[][] requiredBy(Requirements requirements) {
+        Masks masks = this.masks;
+        if (masks == null || masks.requirements != requirements) {
+            long[][] required = new long[commands.length][];
+            // Children always have lower indexes than their parents, so compute the masks in order ...
+            for (int i = 0; i != required.length; ++i) {
+                if (commands[i] != null) {
+                    required[i] = requirements.maskOf(commands[i].getRequirements());
+                } else {
+                    // A branch requires everything its children require ...
+                    long[] mask = new long[0];
+                    for (int j = 0; j != childCount[i]; ++j) {
+                        mask = Requirements.union(mask, required[children[childStart[i] + j]]);
+                    }
+                    required[i] = mask;
+                }
+            }
+            masks = new Masks(requirements, required);
+            this.masks = masks;
+        }
+        return masks.required;
+    }
+
+    /**
+     * Obtain a set of runners for this plan and reset them to be executed in the given context.
+     *
+     * @param context the context; may not be null
+     * @return the first runner, or null if the plan has no commands
+     */
+    CommandRunner instantiate(CommandRunner.Context context) {
+        if (root == NONE) return null; // there are no commands
+        long[][] required = requiredBy(context.requirements());
+        Instance instance = null;
+        synchronized (this) {
+            if (pooled != 0) {
+                instance = pool[--pooled];
+                pool[pooled] = null;
+            }
+        }
+        if (instance == null) instance = new Instance(required);
+        instance.reset(context, required);
+        return instance.runners[root];
+    }
+
+    private synchronized void release(Instance instance) {
+        if (pooled == pool.length) pool = Arrays.copyOf(pool, pool.length * 2);
+        pool[pooled++] = instance;
+    }
+
+    @Override
+    public String toString() {
+        return "plan of " + commands.length + " nodes for " + group;
+    }
+
+    /**
+     * A set of runners for all of the nodes in the plan. The runners are linked together only once, when the set is created, and
+     * the set is reused after all of its runners have completed.
+     */
+    final class Instance {
+        protected final CommandRunner[] runners = new CommandRunner[commands.length];
+        private int live = 0;
+
+        protected Instance(long[][] required) {
+            // Children always have lower indexes than their parents, so create the runners in order ...
+            for (int i = 0; i != runners.length; ++i) {
+                CommandRunner[] kids = null;
+                if (childCount[i] != 0) {
+                    kids = new CommandRunner[childCount[i]];
+                    for (int j = 0; j != kids.length; ++j) {
+                        kids[j] = runners[children[childStart[i] + j]];
+                    }
+                }
+                runners[i] = new CommandRunner(this, commands[i], kids, required[i], interruptible[i]);
+                if (admissions[i] != null) runners[i].admit(admissions[i]);
+                if (concurrent[i]) runners[i].runChildrenConcurrently();
+            }
+        }
+
+        protected void reset(CommandRunner.Context context, long[][] required) {
+            live = 0;
+            for (int i = 0; i != runners.length; ++i) {
+                runners[i].reset(context, next[i] != NONE ? runners[next[i]] : null, required[i]);
+            }
+        }
+
+        /**
+         * Called on the scheduler's thread when one of the runners is added to the scheduler's commands.
+         */
+        protected void acquired() {
+            ++live;
+        }
+
+        /**
+         * Called on the scheduler's thread when one of the runners is completed or dropped. When none of the runners remain, this
+         * instance is returned to the pool.
+         */
+        protected void released() {
+            if (--live == 0) release(this);
+        }
+    }
+
+    /**
+     * The requirement bitmasks of the nodes, and the registry with which they were computed.
+     */
+    private static final class Masks {
+        protected final Requirements requirements;
+        protected final long[][] required;
+
+        protected Masks(Requirements requirements, long[][] required) {
+            this.requirements = requirements;
+            this.required = required;
+        }
+    }
+
+    /**
+     * Flattens a tree of commands into the arrays of nodes, in the same way that the {@link Scheduler} builds runners for a
+     * {@link CommandGroup}.
+     */
+    private static final class Builder {
+        protected Command[] commands = new Command[16];
+        protected int[] next = new int[16];
+        protected int[] childStart = new int[16];
+        protected int[] childCount = new int[16];
+        protected boolean[] interruptible = new boolean[16];
+        protected Command[] admissions = new Command[16];
+        protected boolean[] concurrent = new boolean[16];
+        protected int count = 0;
+        protected int[] children = new int[16];
+        protected int childrenCount = 0;
+
+        protected int build(Command command, int last, Command admission) {
+            if (command instanceof CommandGroup) {
+                CommandGroup cg = (CommandGroup) command;
+                Command[] commands = cg.getCommands();
+                if (!cg.hasDefaultAdmission()) admission = cg;
+                switch (cg.getType()) {
+                    case SEQUENTIAL:
+                        for (int i = commands.length - 1; i >= 0; i--) {
+                            last = build(commands[i], last, admission);
+                        }
+                        return last;
+                    case PARRALLEL:
+                        int[] kids = new int[commands.length];
+                        for (int i = 0; i < kids.length; i++) {
+                            kids[i] = build(commands[i], NONE, admission);
+                        }
+                        int branch = branch(last, kids, admission);
+                        concurrent[branch] = cg.isConcurrent();
+                        return branch;
+                    case FORK:
+                        assert commands.length == 1;
+                        int fork = node(null, build(commands[0], NONE, admission), true, null);
+                        return branch(last, new int[] { fork }, admission);
+                }
+                // This line should never happen, the switch will throw an exception first
+                throw new IllegalStateException("Unexpected command type: " + cg.getType());
+            }
+            return node(command, last, command.isInterruptible(), command.hasDefaultAdmission() ? admission : null);
+        }
+
+        private int branch(int last, int[] kids, Command admission) {
+            // A branch is interruptible only if all of its children are ...
+            boolean canInterrupt = true;
+            for (int kid : kids) {
+                canInterrupt &= interruptible[kid];
+            }
+            int index = node(null, last, canInterrupt, admission);
+            childStart[index] = childrenCount;
+            childCount[index] = kids.length;
+            for (int kid : kids) {
+                if (childrenCount == children.length) children = Arrays.copyOf(children, children.length * 2);
+                children[childrenCount++] = kid;
+            }
+            return index;
+        }
+
+        private int node(Command command, int last, boolean canInterrupt, Command admission) {
+            if (count == commands.length) {
+                int length = commands.length * 2;
+                commands = Arrays.copyOf(commands, length);
+                next = Arrays.copyOf(next, length);
+                childStart = Arrays.copyOf(childStart, length);
+                childCount = Arrays.copyOf(childCount, length);
+                interruptible = Arrays.copyOf(interruptible, length);
+                admissions = Arrays.copyOf(admissions, length);
+                concurrent = Arrays.copyOf(concurrent, length);
+            }
+            int index = count++;
+            commands[index] = command;
+            next[index] = last;
+            interruptible[index] = canInterrupt;
+            admissions[index] = admission;
+            return index;
+        }
+    }
+}
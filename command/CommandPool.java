@@ -0,0 +1,153 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * A pool of reusable {@link Command} instances of one type. Rather than creating a new command every time one is submitted
+ * (e.g., every time a button is pressed), {@link #acquire() acquire} a command from the pool, set it up, and submit it. When the
+ * {@link Scheduler} has finished with the command (after it is finalized, or when it is dropped without being run), it
+ * {@link Command#reset() resets} the command and returns it to the pool so that it can be acquired again:
+ *
+ * <pre>
+ * CommandPool&lt;FireCommand&gt; firing = new CommandPool&lt;&gt;(() -&gt; new FireCommand(shooter));
+ * reactor.onTriggeredSubmit(fireButton, firing::acquire);
+ * </pre>
+ * <p>
+ * A pooled command must not be used after it has been returned to the pool, so pooled commands should be submitted directly and
+ * not held in fields or used within {@link CommandGroup}s. The pool detects some of these leaks: submitting a command that has
+ * already been returned, or returning a command twice, is reported as an error and is {@link #leakCount() counted}, and the
+ * command is not run.
+ *
+ * @param <T> the type of command
+ * @author Randall Hauch
+ */
+@ThreadSafe
+public final class CommandPool<T extends Command> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final Supplier<T> factory;
+    private final int capacity;
+    private Command[] available = new Command[4];
+    private int availableCount = 0;
+    private int created = 0;
+    private int leaks = 0;
+
+    /**
+     * Create a pool that retains up to 16 idle commands.
+     *
+     * @param factory the function that creates new commands; may not be null
+     */
+    public CommandPool(Supplier<T> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a pool.
+     *
+     * @param factory the function that creates new commands; may not be null
+     * @param capacity the maximum number of idle commands retained by the pool; must be positive
+     */
+    public CommandPool(Supplier<T> factory, int capacity) {
+        if (factory == null) throw new IllegalArgumentException("The factory may not be null");
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be positive");
+        this.factory = factory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Obtain a command from this pool, creating a new one only if there are no idle commands.
+     *
+     * @return the command; never null
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        Command command = null;
+        synchronized (this) {
+            if (availableCount != 0) {
+                command = available[--availableCount];
+                available[availableCount] = null;
+            } else {
+                ++created;
+            }
+        }
+        if (command == null) {
+            command = factory.get();
+            if (command == null) throw new IllegalStateException("The command pool's factory returned null");
+        }
+        command.acquiredFrom(this);
+        return (T) command;
+    }
+
+    /**
+     * Return the given command to this pool. This is called by the {@link Scheduler}.
+     *
+     * @param command the command; may not be null
+     */
+    void release(Command command) {
+        command.reset();
+        synchronized (this) {
+            if (availableCount == capacity) return; // just discard it
+            if (availableCount == available.length) {
+                available = Arrays.copyOf(available, Math.min(available.length * 2, capacity));
+            }
+            available[availableCount++] = command;
+        }
+    }
+
+    synchronized void leaked() {
+        ++leaks;
+    }
+
+    /**
+     * Get the number of idle commands in this pool.
+     *
+     * @return the number of idle commands
+     */
+    public synchronized int size() {
+        return availableCount;
+    }
+
+    /**
+     * Get the number of commands this pool has created.
+     *
+     * @return the number of commands created
+     */
+    public synchronized int createdCount() {
+        return created;
+    }
+
+    /**
+     * Get the number of times a command from this pool was submitted after it was returned to this pool, or was returned more
+     * than once.
+     *
+     * @return the number of detected leaks
+     */
+    public synchronized int leakCount() {
+        return leaks;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CommandPool (idle=" + availableCount + ", created=" + created + ", leaks=" + leaks + ")";
+    }
+}
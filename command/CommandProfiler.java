@@ -0,0 +1,272 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * Accumulates the {@link CommandStats statistics} of each class of {@link Command} run by a {@link Scheduler}.
+ * <p>
+ * Each command class is assigned a dense index when a runner for one of its instances is built, and the statistics are kept in
+ * primitive arrays indexed by that class index. Only the scheduler's thread updates these arrays, without any locking. At the
+ * end of each cycle it copies them into a second set of arrays while holding a write lock for just that copy, and the
+ * {@link #snapshot() snapshot} is always taken from that second set with an optimistic read. The lock is never held while
+ * commands run, so commands can obtain a snapshot without blocking, and other threads wait at most for the copy.
+ * <p>
+ * Commands in {@link ConcurrentBranch concurrent branches} are stepped by worker threads during the scheduler's cycle, so they
+ * record their statistics through a {@link #synchronizedView() synchronized view}.
+ */
+@ThreadSafe
+final class CommandProfiler {
+
+    private final StampedLock lock = new StampedLock();
+    private final CommandProfiler delegate;
+    private final CommandProfiler synchronizedView;
+    private final Map<Class<?>, Integer> indexes = new HashMap<>();
+    private volatile Class<?>[] classes = new Class<?>[0];
+
+    // These are used only by the scheduler's thread ...
+    private final Totals totals = new Totals();
+    private long[] cycleNanos = new long[0];
+    private int[] cycleRunning = new int[0];
+
+    // These are written only by the scheduler's thread at the end of each cycle while holding the write lock ...
+    private final Totals published = new Totals();
+    private int publishedSize = 0;
+
+    CommandProfiler() {
+        this.delegate = null;
+        this.synchronizedView = new CommandProfiler(this);
+    }
+
+    private CommandProfiler(CommandProfiler delegate) {
+        this.delegate = delegate;
+        this.synchronizedView = this;
+    }
+
+    /**
+     * Get a view of this profiler that can record statistics from multiple threads during a cycle.
+     *
+     * @return the view; never null
+     */
+    CommandProfiler synchronizedView() {
+        return synchronizedView;
+    }
+
+    /**
+     * Get the index of the given command class, assigning the next index if it has not been seen before.
+     *
+     * @param commandClass the class of command; may not be null
+     * @return the index
+     */
+    int indexOf(Class<?> commandClass) {
+        return delegate != null ? delegate.indexOf(commandClass) : register(commandClass);
+    }
+
+    private synchronized int register(Class<?> commandClass) {
+        Integer index = indexes.get(commandClass);
+        if (index == null) {
+            index = indexes.size();
+            indexes.put(commandClass, index);
+            Class<?>[] updated = Arrays.copyOf(classes, index + 1);
+            updated[index] = commandClass;
+            classes = updated;
+        }
+        return index;
+    }
+
+    /**
+     * Begin a cycle of the scheduler. This must be called on the scheduler's thread, and followed by {@link #endCycle()}.
+     */
+    void beginCycle() {
+        Arrays.fill(cycleNanos, 0L);
+        Arrays.fill(cycleRunning, 0);
+    }
+
+    /**
+     * End a cycle of the scheduler, making the updated statistics visible to other threads.
+     */
+    void endCycle() {
+        int size = Math.min(classes.length, totals.starts.length);
+        long stamp = lock.writeLock();
+        try {
+            published.copy(totals, size);
+            publishedSize = size;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void initialized(int index, long nanos) {
+        if (delegate != null) {
+            synchronized (delegate) {
+                delegate.initialized(index, nanos);
+            }
+            return;
+        }
+        if (index >= totals.starts.length) ensureCapacity(index + 1);
+        ++totals.starts[index];
+        totals.initializeNanos[index] += nanos;
+        cycleNanos[index] += nanos;
+    }
+
+    void executed(int index, long nanos) {
+        if (delegate != null) {
+            synchronized (delegate) {
+                delegate.executed(index, nanos);
+            }
+            return;
+        }
+        if (index >= totals.starts.length) ensureCapacity(index + 1);
+        ++totals.executions[index];
+        totals.executeNanos[index] += nanos;
+        if (nanos > totals.maxExecuteNanos[index]) totals.maxExecuteNanos[index] = nanos;
+        cycleNanos[index] += nanos;
+        ++cycleRunning[index];
+    }
+
+    void ended(int index, long nanos, boolean interrupted, int cycles) {
+        if (delegate != null) {
+            synchronized (delegate) {
+                delegate.ended(index, nanos, interrupted, cycles);
+            }
+            return;
+        }
+        if (index >= totals.starts.length) ensureCapacity(index + 1);
+        if (interrupted) {
+            ++totals.interruptions[index];
+        } else {
+            ++totals.completions[index];
+        }
+        totals.endNanos[index] += nanos;
+        totals.cyclesAlive[index] += cycles;
+        if (cycles > totals.maxCyclesAlive[index]) totals.maxCyclesAlive[index] = cycles;
+        cycleNanos[index] += nanos;
+    }
+
+    /**
+     * Get the total time spent in the {@link Command#initialize()}, {@link Command#execute()}, {@link Command#end()} and
+     * {@link Command#interrupted()} methods of the given command class during the most recent cycle. This must be called on the
+     * scheduler's thread.
+     *
+     * @param index the index of the command class
+     * @return the time in microseconds
+     */
+    int cycleMicros(int index) {
+        return index < cycleNanos.length ? (int) (cycleNanos[index] / 1000L) : 0;
+    }
+
+    /**
+     * Get the number of commands of the given command class that were executed during the most recent cycle. This must be
+     * called on the scheduler's thread.
+     *
+     * @param index the index of the command class
+     * @return the number of commands executed
+     */
+    int cycleRunning(int index) {
+        return index < cycleRunning.length ? cycleRunning[index] : 0;
+    }
+
+    private void ensureCapacity(int size) {
+        int length = Math.max(size, totals.starts.length * 2);
+        totals.resize(length);
+        cycleNanos = Arrays.copyOf(cycleNanos, length);
+        cycleRunning = Arrays.copyOf(cycleRunning, length);
+    }
+
+    /**
+     * Get a consistent copy of the statistics as of the end of the most recent cycle. This can be called from any thread,
+     * including from within a command while the scheduler's cycle is in progress.
+     *
+     * @return the statistics; never null
+     */
+    CommandStats snapshot() {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            CommandStats stats = copy();
+            if (lock.validate(stamp)) return stats;
+        }
+        // The statistics were being published, so wait for that copy to complete ...
+        stamp = lock.readLock();
+        try {
+            return copy();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private CommandStats copy() {
+        // An optimistic read may see arrays of different lengths while they grow, but copyOf pads rather than fails ...
+        int size = publishedSize;
+        Totals totals = this.published;
+        Class<?>[] classes = this.classes;
+        return new CommandStats(Arrays.copyOf(classes, size), Arrays.copyOf(totals.starts, size),
+                Arrays.copyOf(totals.completions, size), Arrays.copyOf(totals.interruptions, size),
+                Arrays.copyOf(totals.executions, size), Arrays.copyOf(totals.initializeNanos, size),
+                Arrays.copyOf(totals.executeNanos, size), Arrays.copyOf(totals.maxExecuteNanos, size),
+                Arrays.copyOf(totals.endNanos, size), Arrays.copyOf(totals.cyclesAlive, size),
+                Arrays.copyOf(totals.maxCyclesAlive, size));
+    }
+
+    /**
+     * The accumulated statistics of each command class, kept in primitive arrays indexed by the command class index.
+     */
+    private static final class Totals {
+        protected int[] starts = new int[0];
+        protected int[] completions = new int[0];
+        protected int[] interruptions = new int[0];
+        protected long[] executions = new long[0];
+        protected long[] initializeNanos = new long[0];
+        protected long[] executeNanos = new long[0];
+        protected long[] maxExecuteNanos = new long[0];
+        protected long[] endNanos = new long[0];
+        protected long[] cyclesAlive = new long[0];
+        protected int[] maxCyclesAlive = new int[0];
+
+        protected void resize(int length) {
+            starts = Arrays.copyOf(starts, length);
+            completions = Arrays.copyOf(completions, length);
+            interruptions = Arrays.copyOf(interruptions, length);
+            executions = Arrays.copyOf(executions, length);
+            initializeNanos = Arrays.copyOf(initializeNanos, length);
+            executeNanos = Arrays.copyOf(executeNanos, length);
+            maxExecuteNanos = Arrays.copyOf(maxExecuteNanos, length);
+            endNanos = Arrays.copyOf(endNanos, length);
+            cyclesAlive = Arrays.copyOf(cyclesAlive, length);
+            maxCyclesAlive = Arrays.copyOf(maxCyclesAlive, length);
+        }
+
+        protected void copy(Totals other, int size) {
+            if (starts.length < size) resize(other.starts.length);
+            System.arraycopy(other.starts, 0, starts, 0, size);
+            System.arraycopy(other.completions, 0, completions, 0, size);
+            System.arraycopy(other.interruptions, 0, interruptions, 0, size);
+            System.arraycopy(other.executions, 0, executions, 0, size);
+            System.arraycopy(other.initializeNanos, 0, initializeNanos, 0, size);
+            System.arraycopy(other.executeNanos, 0, executeNanos, 0, size);
+            System.arraycopy(other.maxExecuteNanos, 0, maxExecuteNanos, 0, size);
+            System.arraycopy(other.endNanos, 0, endNanos, 0, size);
+            System.arraycopy(other.cyclesAlive, 0, cyclesAlive, 0, size);
+            System.arraycopy(other.maxCyclesAlive, 0, maxCyclesAlive, 0, size);
+        }
+    }
+}
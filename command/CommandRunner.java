@@ -17,8 +17,6 @@
 package org.strongback.command;
 
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.strongback.Logger;
 import org.strongback.Strongback;
@@ -34,7 +32,37 @@ final class CommandRunner {
 
         CommandListener listener();
 
+        Requirements requirements();
+
+        CommandProfiler profiler();
+
+        /**
+         * Get the number of cycles between notifying the listener that a command is still running.
+         *
+         * @return the number of cycles, or 0 if the listener is notified only of state transitions
+         */
+        int heartbeatCycles();
+
+        CycleBudget budget();
+
+        /**
+         * Get the timer wheel that expires the timeouts of the runners. The timeouts of runners stepped on other threads are
+         * not scheduled in the wheel.
+         *
+         * @return the timer wheel; never null
+         */
+        TimerWheel timers();
+
         static Context with(CommandListener listener, Logger logger) {
+            return with(listener, logger, new Requirements());
+        }
+
+        static Context with(CommandListener listener, Logger logger, Requirements requirements) {
+            return with(listener, logger, requirements, new CommandProfiler(), 0, new CycleBudget(), new TimerWheel());
+        }
+
+        static Context with(CommandListener listener, Logger logger, Requirements requirements, CommandProfiler profiler,
+                int heartbeatCycles, CycleBudget budget, TimerWheel timers) {
             return new Context() {
                 @Override
                 public CommandListener listener() {
@@ -45,6 +73,31 @@ final class CommandRunner {
                 public Logger logger() {
                     return logger;
                 }
+
+                @Override
+                public Requirements requirements() {
+                    return requirements;
+                }
+
+                @Override
+                public CommandProfiler profiler() {
+                    return profiler;
+                }
+
+                @Override
+                public int heartbeatCycles() {
+                    return heartbeatCycles;
+                }
+
+                @Override
+                public CycleBudget budget() {
+                    return budget;
+                }
+
+                @Override
+                public TimerWheel timers() {
+                    return timers;
+                }
             };
         }
     }
@@ -60,7 +113,37 @@ final class CommandRunner {
     private CommandRunner[] children = null;
     private CommandRunner next;
     private CommandState state = CommandState.UNINITIALIZED;
-    private final Context context;
+    private Context context;
+    private long[] required;
+    private final boolean interruptible;
+    private AdmissionPolicy admissionPolicy = AdmissionPolicy.DROP;
+    private long admissionTimeoutInMillis = 0L;
+    private int priority = 0;
+    // These are used only by Commands while this runner waits for its requirements ...
+    long admissionDeadline = NOT_WAITING;
+    CommandRunner nextWaiting;
+    // The pooled instance of a compiled plan that this runner belongs to, or null if not part of a plan ...
+    private final CommandPlan.Instance instance;
+    private int profileIndex = -1;
+    private ConcurrentBranch concurrent;
+    private boolean concurrentChild = false;
+    private int cycles = 0;
+    private boolean running = false;
+    // The incremental command and its budget, or null if the command is not incremental ...
+    private final IncrementalCommand incremental;
+    private final TimeBudget timeBudget;
+    private boolean budgeted = false;
+    private boolean expired = false;
+    // These are used only by the TimerWheel while this runner's timeout is scheduled ...
+    long timerDeadline;
+    CommandRunner timerNext;
+    CommandRunner timerPrev;
+    int timerSlot = NOT_SCHEDULED;
+    // This is used only by Commands while this runner is waiting for its timeout and is not being stepped ...
+    boolean parked = false;
+
+    static final long NOT_WAITING = Long.MIN_VALUE;
+    static final int NOT_SCHEDULED = -1;
 
     CommandRunner(Command command) {
         // Just a command and no next is a leaf
@@ -78,6 +161,13 @@ final class CommandRunner {
         this.next = next;
         this.timeoutInMillis = (long) (command.getTimeoutInSeconds() * 1000);
         this.context = context != null ? context : DEFAULT_CONTEXT;
+        this.required = this.context.requirements().maskOf(command.getRequirements());
+        this.interruptible = command.isInterruptible();
+        this.instance = null;
+        this.incremental = command instanceof IncrementalCommand ? (IncrementalCommand) command : null;
+        this.timeBudget = incremental != null ? new TimeBudget() : null;
+        this.profileIndex = this.context.profiler().indexOf(command.getClass());
+        admit(command);
     }
 
     CommandRunner(Context context, CommandRunner next, CommandRunner... commands) {
@@ -86,6 +176,108 @@ final class CommandRunner {
         this.next = next;
         this.command = null;
         this.context = context != null ? context : DEFAULT_CONTEXT;
+        // A branch requires everything its children require, and is interruptible only if all of its children are ...
+        long[] required = new long[0];
+        boolean interruptible = true;
+        if (children != null) {
+            for (CommandRunner child : children) {
+                required = Requirements.union(required, child.required);
+                interruptible &= child.interruptible;
+            }
+        }
+        this.required = required;
+        this.interruptible = interruptible;
+        this.instance = null;
+        this.incremental = null;
+        this.timeBudget = null;
+    }
+
+    CommandRunner(CommandPlan.Instance instance, Command command, CommandRunner[] children, long[] required,
+            boolean interruptible) {
+        // A node of a compiled plan, whose requirements were computed when the plan was compiled
+        this.instance = instance;
+        this.command = command;
+        this.children = children != null && children.length != 0 ? children : null;
+        this.required = required;
+        this.interruptible = interruptible;
+        this.context = DEFAULT_CONTEXT;
+        this.incremental = command instanceof IncrementalCommand ? (IncrementalCommand) command : null;
+        this.timeBudget = incremental != null ? new TimeBudget() : null;
+    }
+
+    /**
+     * Have this branch step its children concurrently, but only if no two children have any requirements in common.
+     *
+     * @return {@code true} if the children will be stepped concurrently, or {@code false} if this is not a branch with two
+     *         or more children or if some children have requirements in common
+     */
+    boolean runChildrenConcurrently() {
+        if (command != null || children == null || children.length < 2) return false;
+        long[] seen = new long[0];
+        for (CommandRunner child : children) {
+            if (Requirements.intersects(seen, child.required)) return false;
+            seen = Requirements.union(seen, child.required);
+        }
+        for (CommandRunner child : children) {
+            child.markConcurrent();
+        }
+        concurrent = new ConcurrentBranch(children);
+        return true;
+    }
+
+    private void markConcurrent() {
+        concurrentChild = true;
+        if (children != null) {
+            for (CommandRunner child : children) {
+                child.markConcurrent();
+            }
+        }
+    }
+
+    /**
+     * Return this runner to its initial state so that it can be executed again. This is used only for the runners of a
+     * {@link CommandPlan compiled plan}.
+     *
+     * @param context the context in which the runner is to be executed; may not be null
+     * @param next the runner that follows this runner; may be null
+     * @param required the bitmask of the requirements of this runner, computed with the context's registry; may not be null
+     */
+    void reset(Context context, CommandRunner next, long[] required) {
+        this.context = context;
+        this.next = next;
+        this.required = required;
+        this.timed = false;
+        this.timeoutInMillis = command != null ? (long) (command.getTimeoutInSeconds() * 1000) : 0L;
+        this.endTime = 0L;
+        this.cancelled = false;
+        this.state = CommandState.UNINITIALIZED;
+        this.cycles = 0;
+        this.running = false;
+        this.budgeted = false;
+        this.expired = false;
+        this.parked = false;
+        if (command != null) this.profileIndex = context.profiler().indexOf(command.getClass());
+        this.admissionDeadline = NOT_WAITING;
+        this.nextWaiting = null;
+    }
+
+    /**
+     * Called by {@link Commands} when this runner has been added to the commands.
+     */
+    void added() {
+        if (instance != null) instance.acquired();
+    }
+
+    /**
+     * Called by {@link Commands} when this runner has been completed or dropped, and will no longer be used.
+     */
+    void discarded() {
+        if (instance != null) {
+            instance.released();
+        } else if (command != null && state == CommandState.UNINITIALIZED) {
+            // The command was dropped without ever being run ...
+            command.recycle();
+        }
     }
 
     /**
@@ -95,16 +287,18 @@ final class CommandRunner {
      * @return {@code true} if this {@link CommandRunner} is ready to be terminated; {@code false} otherwise
      */
     boolean step(long timeInMillis) {
+        // A command that has already been finalized is done, even if it is stepped again by its branch
+        if (command != null && state == CommandState.FINALIZED) return true;
         if (cancelled) {
             state = CommandState.INTERUPTED;
         }
-        // if we have a timeout
+        // if we have a timeout, the scheduler's timer wheel tells us when it passes unless we are stepped on another thread
         if (timeoutInMillis != 0) {
             endTime = timeInMillis + timeoutInMillis;
-            timed = true;
+            timed = concurrentChild || !context.timers().schedule(this, endTime);
             timeoutInMillis = 0;
         }
-        if (timed && timeInMillis >= endTime) {
+        if (expired || timed && timeInMillis >= endTime) {
             state = CommandState.FINISHED;
         }
 
@@ -114,6 +308,7 @@ final class CommandRunner {
         // If we have children, but no command, we are a branch
         if (children != null && command == null) {
             assert command == null;
+            if (concurrent != null) return concurrent.step(timeInMillis);
             // We are done as long as none of our children are not
             boolean childrenDone = true;
             for (CommandRunner command : children) {
@@ -123,54 +318,111 @@ final class CommandRunner {
         }
 
         // If we have a command, but no children, manage our command
+        CommandProfiler profiler = concurrentChild ? context.profiler().synchronizedView() : context.profiler();
+        ++cycles;
 
         // If we are uninitialized initialize us
         if (state == CommandState.UNINITIALIZED) {
+            long start = System.nanoTime();
             try {
                 listener().record(command, state);
+                start = System.nanoTime();
                 command.initialize();
                 state = CommandState.RUNNING;
+                if (incremental != null) {
+                    context.budget().started();
+                    budgeted = true;
+                }
             } catch (Throwable t) {
-                logger().error(t, "Error while initializing " + command.getClass().getName() + " command: " + command);
+                logger().error(t, "Error while initializing {} command: {}", command.getClass().getName(), command);
                 state = CommandState.INTERUPTED;
             }
+            profiler.initialized(profileIndex, System.nanoTime() - start);
         }
 
+        // If we should be running, but are incremental and there is no time left in this cycle, then wait for the next cycle
+        if (state == CommandState.RUNNING && incremental != null && !context.budget().allocate(timeBudget)) return false;
+
         // If we should be running
         if (state == CommandState.RUNNING) {
+            long start = System.nanoTime();
             try {
-                listener().record(command, state);
-                if (command.execute()) state = CommandState.FINISHED;
+                // Notify the listener only the first time, or periodically if there is a heartbeat ...
+                if (!running) {
+                    running = true;
+                    listener().record(command, state);
+                } else {
+                    int heartbeat = context.heartbeatCycles();
+                    if (heartbeat != 0 && cycles % heartbeat == 0) listener().record(command, state);
+                }
+                start = System.nanoTime();
+                boolean done = incremental != null ? incremental.execute(timeBudget) : command.execute();
+                if (done) state = CommandState.FINISHED;
             } catch (Throwable t) {
-                logger().error(t, "Error while executing " + command.getClass().getName() + " command: " + command);
+                logger().error(t, "Error while executing {} command: {}", command.getClass().getName(), command);
                 state = CommandState.INTERUPTED;
             }
+            profiler.executed(profileIndex, System.nanoTime() - start);
         }
 
         // If we were interrupted
         if (state == CommandState.INTERUPTED) {
+            long start = System.nanoTime();
             try {
                 listener().record(command, state);
+                start = System.nanoTime();
                 command.interrupted();
             } catch (Throwable t) {
-                logger().error(t, "Error while interrupting " + command.getClass().getName() + " command: " + command);
+                logger().error(t, "Error while interrupting {} command: {}", command.getClass().getName(), command);
             }
+            profiler.ended(profileIndex, System.nanoTime() - start, true, cycles);
             state = CommandState.FINALIZED;
         }
 
         // If we are pending finalization
         if (state == CommandState.FINISHED) {
             listener().record(command, state);
+            long start = System.nanoTime();
             try {
                 command.end();
             } catch (Throwable t) {
-                logger().error(t, "Error while ending " + command.getClass().getName() + " command: " + command);
+                logger().error(t, "Error while ending {} command: {}", command.getClass().getName(), command);
             }
+            profiler.ended(profileIndex, System.nanoTime() - start, false, cycles);
             state = CommandState.FINALIZED;
             listener().record(command, state);
         }
 
-        return state == CommandState.FINALIZED;
+        if (state == CommandState.FINALIZED) {
+            if (timerSlot != NOT_SCHEDULED) context.timers().cancel(this);
+            if (budgeted) {
+                context.budget().finished();
+                budgeted = false;
+            }
+            // Pooled commands are returned to their pool, except those in a plan (which reuses them)
+            if (instance == null) command.recycle();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by {@link Commands} when the timeout of this runner has passed, so that the command is finished the next time
+     * this runner is stepped.
+     */
+    void expire() {
+        expired = true;
+    }
+
+    /**
+     * Determine whether this runner is a {@link Command#pause(double) pause} that is now only waiting for its timeout, so
+     * that it does not need to be stepped again until its timeout passes or it is cancelled.
+     *
+     * @return {@code true} if the runner need not be stepped until its timeout passes, or {@code false} otherwise
+     */
+    boolean isWaitingForTimeout() {
+        return command != null && children == null && command.isDelay() && state == CommandState.RUNNING
+                && timerSlot != NOT_SCHEDULED && !cancelled;
     }
 
     private Logger logger() {
@@ -229,26 +481,51 @@ final class CommandRunner {
         return cancelled;
     }
 
+    /**
+     * Determine whether this runner can be interrupted by another command that has some of the same requirements. This is
+     * computed when the runner is built.
+     *
+     * @return {@code true} if the command (or all of the child commands) can be interrupted, or {@code false} otherwise
+     */
     public boolean isInterruptible() {
-        if (command != null) {
-            return command.isInterruptible();
-        } else if (children != null) {
-            for (CommandRunner runner : children) {
-                if (!runner.isInterruptible()) return false;
-            }
-        }
-        return true;
+        return interruptible;
     }
 
-    public Set<Requirable> getRequired() {
-        Set<Requirable> required = new HashSet<>();
-        if (command != null) {
-            required.addAll(command.getRequirements());
-        } else if (children != null) {
-            for (CommandRunner runner : children) {
-                required.addAll(runner.getRequired());
-            }
-        }
+    /**
+     * Use the {@link AdmissionPolicy admission policy}, timeout and priority of the given command.
+     *
+     * @param command the command; may not be null
+     */
+    void admit(Command command) {
+        this.admissionPolicy = command.getAdmissionPolicy();
+        this.admissionTimeoutInMillis = (long) (command.getAdmissionTimeoutInSeconds() * 1000);
+        this.priority = command.getPriority();
+    }
+
+    AdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    /**
+     * Get the maximum time that this runner waits for its requirements when the policy is {@link AdmissionPolicy#QUEUE}.
+     *
+     * @return the timeout in milliseconds, or 0 if there is no timeout
+     */
+    long getAdmissionTimeoutInMillis() {
+        return admissionTimeoutInMillis;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Get the bitmask of the {@link Requirements#indexOf(Requirable) indexes} of all {@link Requirable}s required by the
+     * command or by any of the child commands. This is computed when the runner is built.
+     *
+     * @return the bitmask; never null but possibly empty
+     */
+    long[] getRequired() {
         return required;
     }
 }
\ No newline at end of file
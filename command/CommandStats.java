@@ -0,0 +1,226 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import org.strongback.annotation.Immutable;
+
+/**
+ * An immutable snapshot of the statistics of each class of {@link Command} run by a {@link Scheduler}, obtained with
+ * {@link Scheduler#stats()}. The statistics for each command class are accessed by the index of that class in this snapshot,
+ * which can be found with {@link #indexOf(Class)}. All times are in nanoseconds.
+ * <p>
+ * For example, the following prints the average time spent in each command class' {@link Command#execute()} method:
+ *
+ * <pre>
+ * CommandStats stats = scheduler.stats();
+ * for (int i = 0; i != stats.size(); ++i) {
+ *     System.out.println(stats.commandClass(i).getName() + ": " + stats.averageExecuteNanos(i) + " ns");
+ * }
+ * </pre>
+ *
+ * @author Randall Hauch
+ */
+@Immutable
+public final class CommandStats {
+
+    private final Class<?>[] classes;
+    private final int[] starts;
+    private final int[] completions;
+    private final int[] interruptions;
+    private final long[] executions;
+    private final long[] initializeNanos;
+    private final long[] executeNanos;
+    private final long[] maxExecuteNanos;
+    private final long[] endNanos;
+    private final long[] cyclesAlive;
+    private final int[] maxCyclesAlive;
+
+    CommandStats(Class<?>[] classes, int[] starts, int[] completions, int[] interruptions, long[] executions,
+            long[] initializeNanos, long[] executeNanos, long[] maxExecuteNanos, long[] endNanos, long[] cyclesAlive,
+            int[] maxCyclesAlive) {
+        this.classes = classes;
+        this.starts = starts;
+        this.completions = completions;
+        this.interruptions = interruptions;
+        this.executions = executions;
+        this.initializeNanos = initializeNanos;
+        this.executeNanos = executeNanos;
+        this.maxExecuteNanos = maxExecuteNanos;
+        this.endNanos = endNanos;
+        this.cyclesAlive = cyclesAlive;
+        this.maxCyclesAlive = maxCyclesAlive;
+    }
+
+    /**
+     * Get the number of command classes.
+     *
+     * @return the number of command classes
+     */
+    public int size() {
+        return classes.length;
+    }
+
+    /**
+     * Get the index of the given command class.
+     *
+     * @param commandClass the class of command
+     * @return the index, or -1 if there are no statistics for the class
+     */
+    public int indexOf(Class<?> commandClass) {
+        for (int i = 0; i != classes.length; ++i) {
+            if (classes[i] == commandClass) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the command class at the given index.
+     *
+     * @param index the index of the command class
+     * @return the command class; never null
+     */
+    public Class<?> commandClass(int index) {
+        return classes[index];
+    }
+
+    /**
+     * Get the number of commands of this class that were initialized.
+     *
+     * @param index the index of the command class
+     * @return the number of commands
+     */
+    public int starts(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Get the number of commands of this class that completed normally.
+     *
+     * @param index the index of the command class
+     * @return the number of commands
+     */
+    public int completions(int index) {
+        return completions[index];
+    }
+
+    /**
+     * Get the number of commands of this class that were interrupted, including those that timed out and those that failed.
+     *
+     * @param index the index of the command class
+     * @return the number of commands
+     */
+    public int interruptions(int index) {
+        return interruptions[index];
+    }
+
+    /**
+     * Get the number of times the {@link Command#execute()} method was called on commands of this class.
+     *
+     * @param index the index of the command class
+     * @return the number of calls
+     */
+    public long executions(int index) {
+        return executions[index];
+    }
+
+    /**
+     * Get the total time spent in the {@link Command#initialize()} method of commands of this class.
+     *
+     * @param index the index of the command class
+     * @return the time in nanoseconds
+     */
+    public long initializeNanos(int index) {
+        return initializeNanos[index];
+    }
+
+    /**
+     * Get the total time spent in the {@link Command#execute()} method of commands of this class.
+     *
+     * @param index the index of the command class
+     * @return the time in nanoseconds
+     */
+    public long executeNanos(int index) {
+        return executeNanos[index];
+    }
+
+    /**
+     * Get the longest time spent in one call to the {@link Command#execute()} method of commands of this class.
+     *
+     * @param index the index of the command class
+     * @return the time in nanoseconds
+     */
+    public long maxExecuteNanos(int index) {
+        return maxExecuteNanos[index];
+    }
+
+    /**
+     * Get the average time spent in one call to the {@link Command#execute()} method of commands of this class.
+     *
+     * @param index the index of the command class
+     * @return the time in nanoseconds, or 0 if the method was never called
+     */
+    public long averageExecuteNanos(int index) {
+        return executions[index] != 0L ? executeNanos[index] / executions[index] : 0L;
+    }
+
+    /**
+     * Get the total time spent in the {@link Command#end()} and {@link Command#interrupted()} methods of commands of this class.
+     *
+     * @param index the index of the command class
+     * @return the time in nanoseconds
+     */
+    public long endNanos(int index) {
+        return endNanos[index];
+    }
+
+    /**
+     * Get the total number of cycles that the finished commands of this class were alive.
+     *
+     * @param index the index of the command class
+     * @return the number of cycles
+     */
+    public long cyclesAlive(int index) {
+        return cyclesAlive[index];
+    }
+
+    /**
+     * Get the largest number of cycles that one command of this class was alive.
+     *
+     * @param index the index of the command class
+     * @return the number of cycles
+     */
+    public int maxCyclesAlive(int index) {
+        return maxCyclesAlive[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i != classes.length; ++i) {
+            if (i != 0) sb.append(System.lineSeparator());
+            sb.append(classes[i].getName())
+              .append(": starts=").append(starts[i])
+              .append(", completions=").append(completions[i])
+              .append(", interruptions=").append(interruptions[i])
+              .append(", executions=").append(executions[i])
+              .append(", avgExecute=").append(averageExecuteNanos(i)).append("ns")
+              .append(", maxExecute=").append(maxExecuteNanos[i]).append("ns")
+              .append(", maxCycles=").append(maxCyclesAlive[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -16,83 +16,406 @@
 
 package org.strongback.command;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
+/**
+ * The set of commands that are being executed or waiting to be executed by a {@link Scheduler}.
+ * <p>
+ * The runners being executed and the runners waiting to be added are kept in flat arrays that are only used by the thread
+ * that {@link #step(long) steps} the commands. Runners {@link #submit(CommandRunner) submitted} from other threads are handed off
+ * through a lock-free queue and moved into the pending array at the start of the next step. {@link #killAll() Killing} all
+ * runners is handed off through the same queue, so that it is always done by the thread that steps the commands.
+ * <p>
+ * Each {@link Requirable} has a dense index (see {@link Requirements}), and each runner has a precomputed bitmask of its
+ * requirements. The requirements in use are tracked with a bitmask of all requirements in use, a bitmask of the requirements
+ * in use by non-interruptible runners, and an array of the runner that owns each requirement. Checking for conflicts and
+ * reserving requirements are then just a few bitwise operations per 64 requirements.
+ * <p>
+ * A runner that cannot obtain its requirements because they are used by non-interruptible runners is handled according to its
+ * {@link AdmissionPolicy}. A runner with the {@link AdmissionPolicy#QUEUE} policy is placed at the end of the wait queue of one
+ * requirement that blocks it, and it is moved back to the pending array as soon as that requirement is released or is taken by
+ * an interruptible runner. No waiting runner is ever checked again until then, except to discard those that have waited longer
+ * than their timeout, which is done only when the earliest of those timeouts has passed.
+ * <p>
+ * The timeouts of the runners are kept in a {@link TimerWheel} that is advanced at the start of each step, and which marks each
+ * runner whose timeout has passed. A {@link Command#pause(double) pause} that has started is parked in the wheel rather than
+ * stepped in every cycle, and it is moved back to the runners being executed only when its timeout passes or when it is
+ * cancelled. Listeners are not notified of heartbeats while a pause is parked.
+ */
 final class Commands {
 
-    private final Queue<CommandRunner> beingExecuted = new LinkedList<>();
-    private final Queue<CommandRunner> pendingAddition = new LinkedList<>();
-    private final Map<Requirable, CommandRunner> inUse = new HashMap<>();
+    // The marker submitted by killAll(), which kills the runners submitted before it but not those submitted after it ...
+    private static final CommandRunner KILL_ALL = new CommandRunner(null, null, new CommandRunner[0]);
+
+    private final Queue<CommandRunner> submitted = new ConcurrentLinkedQueue<>();
+    private volatile boolean killRequested = false;
+    private CommandRunner[] beingExecuted = new CommandRunner[16];
+    private int beingExecutedCount = 0;
+    private CommandRunner[] pendingAddition = new CommandRunner[16];
+    private int pendingAdditionCount = 0;
+    private CommandRunner[] owners = new CommandRunner[64];
+    private long[] inUse = new long[1];
+    private long[] notInterruptible = new long[1];
+    private CommandRunner[] waitingHeads = new CommandRunner[64];
+    private CommandRunner[] waitingTails = new CommandRunner[64];
+    private int waitingCount = 0;
+    private long earliestDeadline = Long.MAX_VALUE;
+    private final TimerWheel timers;
+    private final Consumer<CommandRunner> onExpired = this::expired;
+    private int parkedCount = 0;
 
-    public Commands() {
+    public Commands(TimerWheel timers) {
+        this.timers = timers;
     }
 
     public void step(long timeInMillis) {
-        int pendingLength = pendingAddition.size();
-        for (int i = 0; i < pendingLength; i++)
-            if (reserve(pendingAddition.peek())) {
-                pendingAddition.poll();
-            } else {
-                // What to do if can't reserve requirement
-                // As of now, don't even try again
-                pendingAddition.poll();
+        // Move any newly-submitted runners into the pending array ...
+        addSubmitted();
+        CommandRunner runner = null;
+
+        // Mark the runners whose timeouts have passed, and resume any of them that are parked ...
+        timers.advance(timeInMillis, onExpired);
+
+        // Discard any waiting runners that have waited too long ...
+        if (timeInMillis >= earliestDeadline) expireWaiting(timeInMillis);
+
+        int pendingLength = pendingAdditionCount;
+        for (int i = 0; i != pendingLength; ++i) {
+            // If the requirements can't be reserved, the runner is either dropped or queued depending upon its policy
+            runner = pendingAddition[i];
+            pendingAddition[i] = null;
+            if (!reserve(runner, timeInMillis) && runner.admissionDeadline == CommandRunner.NOT_WAITING) {
+                // The runner was dropped rather than queued ...
+                runner.discarded();
             }
+        }
+        // Runners may have been woken while reserving; these stay pending until the next step ...
+        if (pendingAdditionCount > pendingLength) {
+            int woken = pendingAdditionCount - pendingLength;
+            System.arraycopy(pendingAddition, pendingLength, pendingAddition, 0, woken);
+            Arrays.fill(pendingAddition, woken, pendingAdditionCount, null);
+            pendingAdditionCount = woken;
+        } else {
+            pendingAdditionCount = 0;
+        }
 
-        // Run all of the commands, if one is done, don't put it back in the queue
-        int initialSize = beingExecuted.size();
-        for (int i = 0; i < initialSize; i++) {
-            CommandRunner runner = beingExecuted.poll();
+        // Run all of the commands, if one is done, don't keep it
+        int initialSize = beingExecutedCount;
+        int kept = 0;
+        for (int i = 0; i != initialSize; ++i) {
+            runner = beingExecuted[i];
             if (runner.step(timeInMillis)) {
                 remove(runner);
+            } else if (runner.isWaitingForTimeout()) {
+                // Don't step the runner again until its timeout passes ...
+                runner.parked = true;
+                ++parkedCount;
             } else {
-                beingExecuted.offer(runner);
+                beingExecuted[kept++] = runner;
             }
         }
+        Arrays.fill(beingExecuted, kept, initialSize, null);
+        beingExecutedCount = kept;
+
+        // A command may have killed all commands while it was executing ...
+        if (killRequested) addSubmitted();
+    }
+
+    private void addSubmitted() {
+        CommandRunner runner = null;
+        while ((runner = submitted.poll()) != null) {
+            if (runner == KILL_ALL) {
+                killRequested = false;
+                kill();
+            } else {
+                add(runner);
+            }
+        }
+    }
+
+    /**
+     * Submit a runner from any thread. The runner will be added at the start of the next {@link #step(long) step}.
+     *
+     * @param command the runner; may not be null
+     */
+    void submit(CommandRunner command) {
+        submitted.offer(command);
     }
 
+    /**
+     * Add a runner while {@link #step(long) stepping}, such as when a runner completes and is followed by another.
+     *
+     * @param command the runner; may not be null
+     */
     void add(CommandRunner command) {
-        // Add the command runner
-        pendingAddition.offer(command);
+        command.added();
+        addPending(command);
     }
 
-    private boolean reserve(CommandRunner command) {
-        Set<Requirable> requirements = command.getRequired();
+    private void addPending(CommandRunner command) {
+        if (pendingAdditionCount == pendingAddition.length) {
+            pendingAddition = Arrays.copyOf(pendingAddition, pendingAddition.length * 2);
+        }
+        pendingAddition[pendingAdditionCount++] = command;
+    }
+
+    private boolean reserve(CommandRunner command, long timeInMillis) {
+        long[] required = command.getRequired();
+        ensureCapacity(required.length);
+
+        // A runner that was queued and woken is discarded if it has waited too long
+        if (command.admissionDeadline != CommandRunner.NOT_WAITING && timeInMillis >= command.admissionDeadline) {
+            command.admissionDeadline = CommandRunner.NOT_WAITING;
+            return false;
+        }
 
         // Verify that every requirement can be obtained
-        for (Requirable required : requirements) {
-            CommandRunner user = inUse.get(required);
-            if (user != null && !user.isInterruptible()) return false;
+        int blocking = blockingRequirement(command);
+        if (blocking >= 0) {
+            if (command.getAdmissionPolicy() == AdmissionPolicy.QUEUE) enqueueWaiting(command, blocking, timeInMillis);
+            return false;
         }
+        command.admissionDeadline = CommandRunner.NOT_WAITING;
 
-        // Reserve the requirements
-        for (Requirable required : requirements) {
-            if (inUse.containsKey(required)) inUse.get(required).cancel();
-            inUse.put(required, command);
+        // Reserve the requirements, cancelling any runners that currently use them
+        boolean interruptible = command.isInterruptible();
+        for (int word = 0; word != required.length; ++word) {
+            long mask = required[word];
+            if (mask == 0L) continue;
+            long preempted = mask & inUse[word];
+            long bits = mask;
+            while (bits != 0L) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if ((preempted & (1L << (index & 63))) != 0L) interrupt(owners[index]);
+                owners[index] = command;
+                // Waiting runners can take a requirement from an interruptible runner ...
+                if (interruptible && waitingHeads[index] != null) wakeWaiting(index);
+            }
+            inUse[word] |= mask;
+            if (interruptible) {
+                notInterruptible[word] &= ~mask;
+            } else {
+                notInterruptible[word] |= mask;
+            }
         }
-        beingExecuted.offer(command);
+        if (beingExecutedCount == beingExecuted.length) {
+            beingExecuted = Arrays.copyOf(beingExecuted, beingExecuted.length * 2);
+        }
+        beingExecuted[beingExecutedCount++] = command;
         return true;
     }
 
+    private void interrupt(CommandRunner runner) {
+        runner.cancel();
+        if (runner.parked) {
+            // The runner must be stepped to be interrupted ...
+            timers.cancel(runner);
+            resume(runner);
+        }
+    }
+
+    private void expired(CommandRunner runner) {
+        runner.expire();
+        if (runner.parked) resume(runner);
+    }
+
+    private void resume(CommandRunner runner) {
+        runner.parked = false;
+        --parkedCount;
+        if (beingExecutedCount == beingExecuted.length) {
+            beingExecuted = Arrays.copyOf(beingExecuted, beingExecuted.length * 2);
+        }
+        beingExecuted[beingExecutedCount++] = runner;
+    }
+
     private void remove(CommandRunner runner) {
-        runner.getRequired().forEach(required->inUse.remove(required));
+        // Release only those requirements still owned by this runner, since others may have been taken by other runners
+        long[] required = runner.getRequired();
+        for (int word = 0; word != required.length; ++word) {
+            long bits = required[word] & inUse[word];
+            while (bits != 0L) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                long bit = bits & -bits;
+                bits &= bits - 1;
+                if (owners[index] == runner) {
+                    owners[index] = null;
+                    inUse[word] &= ~bit;
+                    notInterruptible[word] &= ~bit;
+                    if (waitingHeads[index] != null) wakeWaiting(index);
+                }
+            }
+        }
         runner.after(this);
+        runner.discarded();
+    }
+
+    /**
+     * Find a requirement of the given runner that is used by a non-interruptible runner and that cannot be preempted.
+     *
+     * @param command the runner; may not be null
+     * @return the index of the blocking requirement, or -1 if the runner can reserve all of its requirements
+     */
+    private int blockingRequirement(CommandRunner command) {
+        long[] required = command.getRequired();
+        boolean preempt = command.getAdmissionPolicy() == AdmissionPolicy.PREEMPT;
+        int priority = command.getPriority();
+        for (int word = 0; word != required.length; ++word) {
+            long bits = required[word] & notInterruptible[word];
+            while (bits != 0L) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (!preempt || owners[index].getPriority() >= priority) return index;
+            }
+        }
+        return -1;
+    }
+
+    private void enqueueWaiting(CommandRunner command, int index, long timeInMillis) {
+        if (command.admissionDeadline == CommandRunner.NOT_WAITING) {
+            // This is the first time the runner is blocked ...
+            long timeout = command.getAdmissionTimeoutInMillis();
+            command.admissionDeadline = timeout > 0L ? timeInMillis + timeout : Long.MAX_VALUE;
+            if (command.admissionDeadline < earliestDeadline) earliestDeadline = command.admissionDeadline;
+        }
+        command.nextWaiting = null;
+        if (waitingHeads[index] == null) {
+            waitingHeads[index] = command;
+        } else {
+            waitingTails[index].nextWaiting = command;
+        }
+        waitingTails[index] = command;
+        ++waitingCount;
+    }
+
+    /**
+     * Move all of the runners waiting for the given requirement, in the order they were queued, to the pending array so they
+     * try again to reserve all of their requirements.
+     *
+     * @param index the index of the requirement
+     */
+    private void wakeWaiting(int index) {
+        CommandRunner waiting = waitingHeads[index];
+        waitingHeads[index] = null;
+        waitingTails[index] = null;
+        while (waiting != null) {
+            CommandRunner next = waiting.nextWaiting;
+            waiting.nextWaiting = null;
+            --waitingCount;
+            addPending(waiting);
+            waiting = next;
+        }
+    }
+
+    /**
+     * Remove from the wait queues all runners whose timeouts have passed, and compute the next earliest timeout.
+     *
+     * @param timeInMillis the current time in milliseconds
+     */
+    private void expireWaiting(long timeInMillis) {
+        long earliest = Long.MAX_VALUE;
+        for (int index = 0; index != waitingHeads.length; ++index) {
+            CommandRunner waiting = waitingHeads[index];
+            if (waiting == null) continue;
+            CommandRunner head = null;
+            CommandRunner tail = null;
+            while (waiting != null) {
+                CommandRunner next = waiting.nextWaiting;
+                waiting.nextWaiting = null;
+                if (timeInMillis >= waiting.admissionDeadline) {
+                    waiting.admissionDeadline = CommandRunner.NOT_WAITING;
+                    --waitingCount;
+                    waiting.discarded();
+                } else {
+                    if (head == null) {
+                        head = waiting;
+                    } else {
+                        tail.nextWaiting = waiting;
+                    }
+                    tail = waiting;
+                    if (waiting.admissionDeadline < earliest) earliest = waiting.admissionDeadline;
+                }
+                waiting = next;
+            }
+            waitingHeads[index] = head;
+            waitingTails[index] = tail;
+        }
+        // Runners that were woken but not yet reserved are checked when they are reserved, but still have deadlines ...
+        for (int i = 0; i != pendingAdditionCount; ++i) {
+            long deadline = pendingAddition[i].admissionDeadline;
+            if (deadline != CommandRunner.NOT_WAITING && deadline < earliest) earliest = deadline;
+        }
+        earliestDeadline = earliest;
+    }
+
+    private void ensureCapacity(int words) {
+        if (words > inUse.length) {
+            inUse = Arrays.copyOf(inUse, words);
+            notInterruptible = Arrays.copyOf(notInterruptible, words);
+        }
+        if (words * 64 > owners.length) {
+            owners = Arrays.copyOf(owners, words * 64);
+            waitingHeads = Arrays.copyOf(waitingHeads, words * 64);
+            waitingTails = Arrays.copyOf(waitingTails, words * 64);
+        }
     }
 
     boolean isEmpty() {
-        return pendingAddition.isEmpty() && beingExecuted.isEmpty();
+        return submitted.isEmpty() && pendingAdditionCount == 0 && beingExecutedCount == 0 && waitingCount == 0
+                && parkedCount == 0;
     }
 
+    /**
+     * Kill all runners from any thread. The runners are killed by the thread that {@link #step(long) steps} the commands, at
+     * the end of the current step if one is in progress or otherwise at the start of the next step. Runners submitted before
+     * this call are killed, while those submitted after it are not.
+     */
     void killAll() {
-        pendingAddition.clear();
-        for (int i = 0; i < beingExecuted.size(); i++) {
-            CommandRunner c = beingExecuted.poll();
+        killRequested = true;
+        submitted.offer(KILL_ALL);
+    }
+
+    private void kill() {
+        for (int i = 0; i != pendingAdditionCount; ++i) {
+            pendingAddition[i].discarded();
+            pendingAddition[i] = null;
+        }
+        pendingAdditionCount = 0;
+        int count = beingExecutedCount;
+        beingExecutedCount = 0;
+        for (int i = 0; i != count; ++i) {
+            CommandRunner c = beingExecuted[i];
+            beingExecuted[i] = null;
             c.cancel();
             c.step(0);
+            c.discarded();
         }
-
+        // The only runners remaining in the timer wheel are those that are parked ...
+        timers.clear(parked -> {
+            parked.parked = false;
+            parked.cancel();
+            parked.step(0);
+            parked.discarded();
+        });
+        parkedCount = 0;
+        for (int index = 0; index != waitingHeads.length; ++index) {
+            CommandRunner waiting = waitingHeads[index];
+            while (waiting != null) {
+                CommandRunner next = waiting.nextWaiting;
+                waiting.nextWaiting = null;
+                waiting.discarded();
+                waiting = next;
+            }
+        }
+        Arrays.fill(owners, null);
+        Arrays.fill(inUse, 0L);
+        Arrays.fill(notInterruptible, 0L);
+        Arrays.fill(waitingHeads, null);
+        Arrays.fill(waitingTails, null);
+        waitingCount = 0;
+        earliestDeadline = Long.MAX_VALUE;
     }
 }
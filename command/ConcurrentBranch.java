@@ -0,0 +1,105 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Steps the children of a branch {@link CommandRunner} concurrently. All but the first child are stepped by worker threads in a
+ * shared {@link ForkJoinPool} while the scheduler's thread steps the first child, and then the scheduler's thread waits for all
+ * of the children to finish their step. Thus each cycle takes about as long as the slowest child rather than the total of all
+ * children, and no child ever runs outside of the scheduler's cycle.
+ * <p>
+ * The tasks used to step the children are created once and reused in every cycle. The worker threads are daemon threads, and
+ * are created only when the first concurrent branch is stepped.
+ */
+final class ConcurrentBranch {
+
+    private static final class Pool {
+        protected static final ForkJoinPool INSTANCE = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("Strongback Command Worker " + thread.getPoolIndex());
+                    return thread;
+                }, null, false);
+    }
+
+    private final CommandRunner[] children;
+    private final StepTask[] tasks;
+
+    ConcurrentBranch(CommandRunner[] children) {
+        this.children = children;
+        this.tasks = new StepTask[children.length];
+        for (int i = 1; i < children.length; ++i) {
+            tasks[i] = new StepTask(children[i]);
+        }
+    }
+
+    /**
+     * Step all of the children, and wait for them to complete.
+     *
+     * @param timeInMillis the current system time in milliseconds
+     * @return {@code true} if all of the children are done, or {@code false} otherwise
+     */
+    boolean step(long timeInMillis) {
+        ForkJoinPool pool = Pool.INSTANCE;
+        for (int i = 1; i < tasks.length; ++i) {
+            StepTask task = tasks[i];
+            task.reinitialize();
+            task.timeInMillis = timeInMillis;
+            pool.execute(task);
+        }
+        // Step the first child on this thread, and then wait for the others ...
+        boolean childrenDone = children[0].step(timeInMillis);
+        for (int i = 1; i < tasks.length; ++i) {
+            tasks[i].join();
+            if (!tasks[i].done) childrenDone = false;
+        }
+        return childrenDone;
+    }
+
+    /**
+     * A reusable task that steps one child.
+     */
+    @SuppressWarnings("serial")
+    private static final class StepTask extends ForkJoinTask<Void> {
+        private final CommandRunner runner;
+        protected long timeInMillis;
+        protected boolean done;
+
+        protected StepTask(CommandRunner runner) {
+            this.runner = runner;
+        }
+
+        @Override
+        protected boolean exec() {
+            done = runner.step(timeInMillis);
+            return true;
+        }
+
+        @Override
+        public Void getRawResult() {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(Void value) {
+        }
+    }
+}
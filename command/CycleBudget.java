@@ -0,0 +1,74 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * Divides a {@link Scheduler}'s cycle budget among the {@link IncrementalCommand}s that are running. The methods are
+ * synchronized, since incremental commands in concurrent branches may be executed on worker threads.
+ */
+@ThreadSafe
+final class CycleBudget {
+
+    private long budgetInNanos = Long.MAX_VALUE;
+    private long cycleStartInNanos;
+    private int active;
+    private int served;
+
+    synchronized void setBudget(long budgetInNanos) {
+        this.budgetInNanos = budgetInNanos;
+    }
+
+    /**
+     * Begin a cycle of the scheduler.
+     *
+     * @param nowInNanos the time the cycle began in nanoseconds
+     */
+    synchronized void beginCycle(long nowInNanos) {
+        this.cycleStartInNanos = nowInNanos;
+        this.served = 0;
+    }
+
+    synchronized void started() {
+        ++active;
+    }
+
+    synchronized void finished() {
+        --active;
+    }
+
+    /**
+     * Start the given budget with a fair share of the time that remains in the cycle.
+     *
+     * @param budget the budget of the incremental command that is about to execute; may not be null
+     * @return {@code true} if some time was allotted, or {@code false} if no time remains in this cycle
+     */
+    synchronized boolean allocate(TimeBudget budget) {
+        long now = System.nanoTime();
+        if (budgetInNanos == Long.MAX_VALUE) {
+            budget.start(now, Long.MAX_VALUE);
+            return true;
+        }
+        long remaining = cycleStartInNanos + budgetInNanos - now;
+        int waiting = Math.max(1, active - served);
+        ++served;
+        if (remaining <= 0L) return false;
+        budget.start(now, remaining / waiting);
+        return true;
+    }
+}
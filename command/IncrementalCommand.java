@@ -0,0 +1,95 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.util.Collection;
+
+/**
+ * A {@link Command} that does a lot of work over many cycles, a little at a time. Each cycle the {@link Scheduler} calls
+ * {@link #execute(TimeBudget)} with a {@link TimeBudget}, and the command does as much work as the budget allows, saves its
+ * progress, and returns. The command continues from where it left off during the next cycle, until it returns {@code true}:
+ *
+ * <pre>
+ * public class FitSpline extends IncrementalCommand {
+ *     private int next = 0;
+ *
+ *     public boolean execute(TimeBudget budget) {
+ *         while (next &lt; points.length &amp;&amp; budget.hasRemaining()) {
+ *             fit(points[next++]);
+ *         }
+ *         return next == points.length;
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * The scheduler has a {@link Scheduler#useCycleBudget(long, java.util.concurrent.TimeUnit) budget for each cycle} that is
+ * measured from the start of its cycle, so the time used by other commands earlier in the cycle is not available. The remaining
+ * time is shared fairly among all of the incremental commands that are running: each gets an equal share of the time that is
+ * left when it is executed, so time not used by one command is available to those executed after it. When no time remains, the
+ * incremental commands are not executed until the next cycle.
+ *
+ * @author Randall Hauch
+ */
+public abstract class IncrementalCommand extends Command {
+
+    /**
+     * Create a new incremental command with no timeout and zero or more Requirable components
+     *
+     * @param requirements the {@link Requirable}s this {@link Command} requires
+     */
+    protected IncrementalCommand(Requirable... requirements) {
+        super(requirements);
+    }
+
+    /**
+     * Create a new incremental command with the given timeout and zero or more Requirable components
+     *
+     * @param timeoutInSeconds how long in seconds this command executes before terminating, zero is forever
+     * @param requirements the {@link Requirable}s this {@link Command} requires
+     */
+    protected IncrementalCommand(double timeoutInSeconds, Requirable... requirements) {
+        super(timeoutInSeconds, requirements);
+    }
+
+    /**
+     * Create a new incremental command with the given timeout and zero or more Requirable components
+     *
+     * @param timeoutInSeconds how long in seconds this command executes before terminating, zero is forever
+     * @param requirements the {@link Requirable}s this {@link Command} requires
+     */
+    protected IncrementalCommand(double timeoutInSeconds, Collection<Requirable> requirements) {
+        super(timeoutInSeconds, requirements);
+    }
+
+    /**
+     * Perform some of the work of this command, returning when the work is complete or the budget is exhausted.
+     *
+     * @param budget the time budget for this call; never null
+     * @return {@code true} if this {@link Command} is complete; {@code false} otherwise
+     */
+    public abstract boolean execute(TimeBudget budget);
+
+    /**
+     * Perform the remaining work of this command without a time budget. The {@link Scheduler} never calls this method.
+     *
+     * @return {@code true} if this {@link Command} is complete; {@code false} otherwise
+     */
+    @Override
+    public final boolean execute() {
+        return execute(TimeBudget.unlimited());
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+
+import org.strongback.control.PIDController;
+import org.strongback.control.ProcessModel;
+import org.strongback.control.ProcessModelEstimator;
+import org.strongback.control.SoftwarePIDController;
+
+/**
+ * A command that tunes a {@link PIDController} by running an experiment on the process, estimating a first-order-plus-dead-time
+ * {@link ProcessModel} from the measurements, and defining a {@link PIDController#withProfile(int, double, double, double)
+ * profile} on the controller with gains computed from that model. The experiment sends its own values to the same output that
+ * the controller uses, so the controller must not be running while this command runs.
+ * <p>
+ * There are two experiments:
+ * <ul>
+ * <li>A {@link #useRelay(double, double, double, double, int) relay} switches the output between two values whenever the
+ * input crosses a setpoint, which makes the process oscillate around that setpoint for a number of cycles. This is usually the
+ * best choice, since it keeps the process near the setpoint.</li>
+ * <li>A {@link #useStep(double, double, double) step} holds the output at one value and then changes it to another for a
+ * period of time.</li>
+ * </ul>
+ * The command finishes when the experiment is complete or when its timeout passes, and the gains are computed for a
+ * {@link SoftwarePIDController} for {@link SoftwarePIDController.SourceType#DISTANCE distances} that computes its output every
+ * period. If the measurements do not fit a stable process (for example, when the output is the position of a mechanism rather than its speed), no profile is
+ * defined and {@link #model()} returns null. If the command is interrupted, no profile is defined.
+ *
+ * @author Randall Hauch
+ */
+public class PIDTuningCommand extends Command {
+
+    private static final double DEFAULT_MAX_DEAD_TIME_IN_SECONDS = 0.2;
+
+    private final PIDController controller;
+    private final int profile;
+    private final DoubleSupplier input;
+    private final DoubleConsumer output;
+    private final double period;
+    private boolean relay = true;
+    private double bias = 0.0;
+    private double amplitude = 1.0;
+    private double setpoint = 0.0;
+    private double hysteresis = 0.0;
+    private int cycles = 5;
+    private double stepDurationInSeconds = 0.0;
+    private double closedLoopTimeConstant = 0.0;
+    private double maxDeadTime = DEFAULT_MAX_DEAD_TIME_IN_SECONDS;
+    private ProcessModelEstimator estimator;
+    private volatile ProcessModel model;
+    private double value;
+    private int switches;
+    private long samples;
+
+    /**
+     * Create a command that tunes the given controller using a relay around a setpoint of 0 that switches the output between
+     * -1 and 1, unless a different {@link #useRelay(double, double, double, double, int) relay} or
+     * {@link #useStep(double, double, double) step} experiment is used.
+     *
+     * @param timeoutInSeconds how long in seconds this command executes before terminating, zero is forever
+     * @param controller the controller; may not be null
+     * @param profile the number of the profile that is to be defined with the computed gains
+     * @param input the source of the process measurements, which is usually the controller's source; may not be null
+     * @param output the output to the process, which is usually the controller's output; may not be null
+     * @param periodInSeconds the time between executions of this command, and between the controller's computations; must
+     *        be positive
+     * @param requirements the {@link Requirable}s this {@link Command} requires
+     */
+    public PIDTuningCommand(double timeoutInSeconds, PIDController controller, int profile, DoubleSupplier input,
+            DoubleConsumer output, double periodInSeconds, Requirable... requirements) {
+        super(timeoutInSeconds, requirements);
+        if (controller == null) throw new IllegalArgumentException("The controller may not be null");
+        if (input == null) throw new IllegalArgumentException("The input may not be null");
+        if (output == null) throw new IllegalArgumentException("The output may not be null");
+        if (!(periodInSeconds > 0.0)) throw new IllegalArgumentException("The period must be positive");
+        this.controller = controller;
+        this.profile = profile;
+        this.input = input;
+        this.output = output;
+        this.period = periodInSeconds;
+    }
+
+    /**
+     * Use a relay experiment, which sets the output to {@code bias + amplitude} while the input is below the setpoint and to
+     * {@code bias - amplitude} while the input is above the setpoint. Use a negative amplitude when increasing the output
+     * decreases the input.
+     *
+     * @param bias the output at the center of the relay
+     * @param amplitude the change in the output from the center
+     * @param setpoint the input around which the process is to oscillate
+     * @param hysteresis how far the input must cross the setpoint before the output is switched, which should be larger than
+     *        the noise in the input; may not be negative
+     * @param cycles the number of oscillations to measure; must be positive
+     * @return this object so that methods can be chained; never null
+     */
+    public PIDTuningCommand useRelay(double bias, double amplitude, double setpoint, double hysteresis, int cycles) {
+        if (hysteresis < 0.0) throw new IllegalArgumentException("The hysteresis may not be negative");
+        if (cycles <= 0) throw new IllegalArgumentException("The number of cycles must be positive");
+        this.relay = true;
+        this.bias = bias;
+        this.amplitude = amplitude;
+        this.setpoint = setpoint;
+        this.hysteresis = hysteresis;
+        this.cycles = cycles;
+        return this;
+    }
+
+    /**
+     * Use a step experiment, which sets the output to {@code bias} for the first fifth of the duration and then to
+     * {@code bias + amplitude} for the rest. The duration should be several times longer than it takes the process to settle.
+     *
+     * @param bias the output before the step
+     * @param amplitude the change in the output at the step; may not be 0
+     * @param durationInSeconds the duration of the experiment in seconds; must be positive
+     * @return this object so that methods can be chained; never null
+     */
+    public PIDTuningCommand useStep(double bias, double amplitude, double durationInSeconds) {
+        if (amplitude == 0.0) throw new IllegalArgumentException("The amplitude may not be 0");
+        if (!(durationInSeconds > 0.0)) throw new IllegalArgumentException("The duration must be positive");
+        this.relay = false;
+        this.bias = bias;
+        this.amplitude = amplitude;
+        this.stepDurationInSeconds = durationInSeconds;
+        return this;
+    }
+
+    /**
+     * Set the time constant with which the tuned controller should respond to changes in its target. By default this is the
+     * larger of the estimated dead time and half of the estimated time constant of the process.
+     *
+     * @param timeConstantInSeconds the time constant in seconds; must be positive
+     * @return this object so that methods can be chained; never null
+     * @see ProcessModel#gains(double, double)
+     */
+    public PIDTuningCommand withClosedLoopTimeConstant(double timeConstantInSeconds) {
+        if (!(timeConstantInSeconds > 0.0)) throw new IllegalArgumentException("The time constant must be positive");
+        this.closedLoopTimeConstant = timeConstantInSeconds;
+        return this;
+    }
+
+    /**
+     * Set the largest dead time of the process that is to be considered. The default is 0.2 seconds.
+     *
+     * @param deadTimeInSeconds the dead time in seconds; may not be negative
+     * @return this object so that methods can be chained; never null
+     */
+    public PIDTuningCommand withMaximumDeadTime(double deadTimeInSeconds) {
+        if (deadTimeInSeconds < 0.0) throw new IllegalArgumentException("The dead time may not be negative");
+        this.maxDeadTime = deadTimeInSeconds;
+        return this;
+    }
+
+    /**
+     * Get the model of the process estimated by the last experiment that finished.
+     *
+     * @return the model, or null if no experiment has finished or if the measurements did not fit a stable process
+     */
+    public ProcessModel model() {
+        return model;
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        estimator = new ProcessModelEstimator(period, (int) Math.ceil(maxDeadTime / period));
+        model = null;
+        value = relay ? bias + amplitude : bias;
+        switches = 0;
+        samples = 0;
+    }
+
+    @Override
+    public boolean execute() {
+        double measured = input.getAsDouble();
+        boolean done;
+        if (relay) {
+            double error = setpoint - measured;
+            double next = value;
+            if (error > hysteresis) {
+                next = bias + amplitude;
+            } else if (error < -hysteresis) {
+                next = bias - amplitude;
+            }
+            if (next != value) ++switches;
+            value = next;
+            done = switches >= 2 * cycles;
+        } else {
+            double elapsed = samples * period;
+            value = elapsed < stepDurationInSeconds / 5.0 ? bias : bias + amplitude;
+            done = elapsed >= stepDurationInSeconds;
+        }
+        ++samples;
+        estimator.add(measured, value);
+        if (done) return true;
+        output.accept(value);
+        return false;
+    }
+
+    @Override
+    public void interrupted() {
+        output.accept(0.0);
+    }
+
+    @Override
+    public void end() {
+        output.accept(0.0);
+        ProcessModel model = estimator.model();
+        this.model = model;
+        if (model != null) {
+            PIDController.Gains gains = closedLoopTimeConstant > 0.0 ? model.gains(closedLoopTimeConstant, period)
+                    : model.gains(period);
+            controller.withProfile(profile, gains.getP(), gains.getI(), gains.getD(), gains.getFeedForward());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Tune PID profile " + profile + (relay ? " with a relay" : " with a step");
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * Assigns each {@link Requirable} a dense index the first time it is seen, so that sets of requirements can be represented as
+ * bitmasks of {@code long} words. Bit {@code i % 64} of word {@code i / 64} is set when the {@link Requirable} with index
+ * {@code i} is required.
+ * <p>
+ * Each {@link Scheduler} has its own registry, so the indexes (and therefore the width of the bitmasks) depend only on the
+ * requirables used with that scheduler. The registry does not keep requirables reachable: once a requirable is garbage
+ * collected its index is reused, which is safe because any bitmask that includes the index is held only alongside the commands
+ * that require the requirable.
+ */
+@ThreadSafe
+final class Requirements {
+
+    private static final long[] NONE = new long[0];
+
+    private final Map<Requirable, Indexed> indexes = new WeakHashMap<>();
+    private final ReferenceQueue<Requirable> collected = new ReferenceQueue<>();
+    private int[] free = new int[0];
+    private int freeCount = 0;
+    private int size = 0;
+
+    /**
+     * Get the index of the given {@link Requirable}, assigning an unused index if it has not been seen before.
+     *
+     * @param requirable the requirable; may not be null
+     * @return the index
+     */
+    public synchronized int indexOf(Requirable requirable) {
+        return index(requirable);
+    }
+
+    /**
+     * Get the bitmask for the given set of {@link Requirable}s.
+     *
+     * @param requirables the requirables; may be null or empty
+     * @return the bitmask; never null but empty if there are no requirables
+     */
+    public long[] maskOf(Set<Requirable> requirables) {
+        if (requirables == null || requirables.isEmpty()) return NONE;
+        long[] mask = NONE;
+        synchronized (this) {
+            for (Requirable requirable : requirables) {
+                mask = set(mask, index(requirable));
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Get the number of {@link Requirable}s that currently have indexes.
+     *
+     * @return the number of requirables
+     */
+    public synchronized int size() {
+        reclaim();
+        return size - freeCount;
+    }
+
+    private int index(Requirable requirable) {
+        Indexed indexed = indexes.get(requirable);
+        if (indexed == null) {
+            reclaim();
+            // The map holds the reference until the requirable is collected, so that the reference is then enqueued ...
+            indexed = new Indexed(requirable, freeCount != 0 ? free[--freeCount] : size++, collected);
+            indexes.put(requirable, indexed);
+        }
+        return indexed.index;
+    }
+
+    private void reclaim() {
+        // Make the indexes of collected requirables available for reuse ...
+        for (Indexed ref = (Indexed) collected.poll(); ref != null; ref = (Indexed) collected.poll()) {
+            if (freeCount == free.length) free = Arrays.copyOf(free, Math.max(8, free.length * 2));
+            free[freeCount++] = ref.index;
+        }
+    }
+
+    /**
+     * Compute the union of two bitmasks.
+     *
+     * @param first the first bitmask; may not be null
+     * @param second the second bitmask; may not be null
+     * @return the union, which may be one of the supplied bitmasks; never null
+     */
+    static long[] union(long[] first, long[] second) {
+        if (second.length == 0) return first;
+        if (first.length == 0) return second;
+        long[] result = new long[Math.max(first.length, second.length)];
+        for (int i = 0; i != result.length; ++i) {
+            long a = i < first.length ? first[i] : 0L;
+            long b = i < second.length ? second[i] : 0L;
+            result[i] = a | b;
+        }
+        return result;
+    }
+
+    /**
+     * Determine whether two bitmasks have any bits in common.
+     *
+     * @param first the first bitmask; may not be null
+     * @param second the second bitmask; may not be null
+     * @return {@code true} if at least one bit is set in both bitmasks, or {@code false} otherwise
+     */
+    static boolean intersects(long[] first, long[] second) {
+        int length = Math.min(first.length, second.length);
+        for (int i = 0; i != length; ++i) {
+            if ((first[i] & second[i]) != 0L) return true;
+        }
+        return false;
+    }
+
+    private static long[] set(long[] mask, int index) {
+        int word = index >>> 6;
+        if (word >= mask.length) {
+            long[] larger = new long[word + 1];
+            System.arraycopy(mask, 0, larger, 0, mask.length);
+            mask = larger;
+        }
+        mask[word] |= 1L << (index & 63);
+        return mask;
+    }
+
+    /**
+     * A weak reference to a requirable that is enqueued with the requirable's index once the requirable is collected.
+     */
+    private static final class Indexed extends WeakReference<Requirable> {
+        protected final int index;
+
+        protected Indexed(Requirable requirable, int index, ReferenceQueue<Requirable> queue) {
+            super(requirable, queue);
+            this.index = index;
+        }
+    }
+}
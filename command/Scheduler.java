@@ -16,6 +16,9 @@
 
 package org.strongback.command;
 
+import java.util.concurrent.TimeUnit;
+
+import org.strongback.DataRecorder;
 import org.strongback.Executable;
 import org.strongback.Logger;
 import org.strongback.Strongback;
@@ -30,7 +33,20 @@ public class Scheduler implements Executable {
     private static CommandListener NO_OP = (command, state) -> {
     };
 
+    /**
+     * A listener that is notified when commands change state.
+     */
     public static interface CommandListener {
+        /**
+         * Record that the given command has entered the given state. This is called once for each state transition: when the
+         * command is about to be initialized ({@link CommandState#UNINITIALIZED}), when it first executes
+         * ({@link CommandState#RUNNING}), and when it is {@link CommandState#INTERUPTED interrupted},
+         * {@link CommandState#FINISHED finished} and {@link CommandState#FINALIZED finalized}. If the scheduler was created with
+         * a heartbeat interval, this is also called with {@link CommandState#RUNNING} periodically while the command is running.
+         *
+         * @param command the command; never null
+         * @param state the new state of the command; never null
+         */
         public void record(Command command, CommandState state);
 
         public static CommandListener noOp() {
@@ -38,7 +54,10 @@ public class Scheduler implements Executable {
         }
     }
 
-    private final Commands commands = new Commands();
+    private final TimerWheel timers = new TimerWheel();
+    private final Commands commands = new Commands(timers);
+    private final CommandProfiler profiler = new CommandProfiler();
+    private final CycleBudget budget = new CycleBudget();
     private final CommandRunner.Context context;
 
     public Scheduler(Logger logger) {
@@ -46,13 +65,31 @@ public class Scheduler implements Executable {
     }
 
     public Scheduler(Logger logger, CommandListener listener) {
+        this(logger, listener, 0);
+    }
+
+    /**
+     * Create a scheduler that notifies the listener of each command state transition, and also notifies it every
+     * {@code heartbeatIntervalInCycles} cycles while each command is running.
+     *
+     * @param logger the logger; may be null
+     * @param listener the listener; may be null
+     * @param heartbeatIntervalInCycles the number of cycles between notifications that a command is still running, or 0 if
+     *        the listener is to be notified only of state transitions
+     */
+    public Scheduler(Logger logger, CommandListener listener, int heartbeatIntervalInCycles) {
+        if (heartbeatIntervalInCycles < 0) throw new IllegalArgumentException("The heartbeat interval may not be negative");
         Logger log = logger != null ? logger : Logger.noOp();
         CommandListener commandListener = listener != null ? listener : CommandListener.noOp();
-        this.context = CommandRunner.Context.with(commandListener, log);
+        this.context = CommandRunner.Context.with(commandListener, log, new Requirements(), profiler,
+                                                  heartbeatIntervalInCycles, budget, timers);
     }
 
     /**
-     * Kill all commands.
+     * Kill all commands, including those that have been submitted but have not yet started. This can be called from any
+     * thread, including by a command while it is being executed. The commands are killed by the thread that executes this
+     * scheduler, at the end of the current execution if one is in progress or otherwise at the start of the next execution.
+     * Commands submitted after this method is called are not killed.
      */
     public void killAll() {
         commands.killAll();
@@ -65,35 +102,80 @@ public class Scheduler implements Executable {
      */
     public void submit(Command command) {
         if (command != null) {
-            CommandRunner runner = buildRunner(command, null);
-            commands.add(runner);
+            CommandRunner runner = null;
+            try {
+                runner = buildRunner(command, null, null);
+            } catch (IllegalStateException e) {
+                context.logger().error(e, "Unable to submit command: {}", command);
+                return;
+            }
+            commands.submit(runner);
         }
     }
 
-    private CommandRunner buildRunner(Command command, CommandRunner last) {
+    /**
+     * Schedule a compiled {@link CommandPlan} to be added to the {@link Scheduler}. This does the same thing as submitting the
+     * plan's {@link CommandPlan#group() group}, but uses the plan's pooled runners.
+     *
+     * @param plan the {@link CommandPlan} to be added
+     */
+    public void submit(CommandPlan plan) {
+        if (plan != null) {
+            CommandRunner runner = plan.instantiate(context);
+            if (runner != null) commands.submit(runner);
+        }
+    }
+
+    /**
+     * Build the runner(s) for the given command.
+     *
+     * @param command the command; may not be null
+     * @param last the runner that follows the command; may be null
+     * @param admission the nearest enclosing {@link CommandGroup} that has its own {@link AdmissionPolicy admission policy}, to
+     *        be used by all commands that do not have their own policy; may be null
+     * @return the first runner
+     */
+    private CommandRunner buildRunner(Command command, CommandRunner last, Command admission) {
         if (command instanceof CommandGroup) {
             CommandGroup cg = (CommandGroup) command;
             Command[] commands = cg.getCommands();
+            if (!cg.hasDefaultAdmission()) admission = cg;
+            CommandRunner runner = null;
             switch (cg.getType()) {
                 case SEQUENTIAL:
                     for (int i = commands.length - 1; i >= 0; i--) {
-                        last = buildRunner(commands[i], last);
+                        last = buildRunner(commands[i], last, admission);
                     }
                     return last;
                 case PARRALLEL:
                     CommandRunner[] crs = new CommandRunner[commands.length];
                     for (int i = 0; i < crs.length; i++) {
-                        crs[i] = buildRunner(commands[i], null);
+                        crs[i] = buildRunner(commands[i], null, admission);
                     }
-                    return new CommandRunner(context, last, crs);
+                    runner = new CommandRunner(context, last, crs);
+                    if (cg.isConcurrent() && !runner.runChildrenConcurrently()) {
+                        context.logger().warn("Running the commands in {} on one thread, since some have the same requirements",
+                                              cg);
+                    }
+                    break;
                 case FORK:
                     assert commands.length == 1;
-                    return new CommandRunner(context, last, new CommandRunner(context, buildRunner(commands[0], null)));
+                    CommandRunner forked = buildRunner(commands[0], null, admission);
+                    runner = new CommandRunner(context, last, new CommandRunner(context, forked));
+                    break;
+                default:
+                    // This line should never happen, the switch will throw an exception first
+                    throw new IllegalStateException("Unexpected command type: " + cg.getType());
             }
-            // This line should never happen, the switch will throw an exception first
-            throw new IllegalStateException("Unexpected command type: " + cg.getType());
+            if (admission != null) runner.admit(admission);
+            return runner;
+        }
+        if (command.checkReturned()) {
+            throw new IllegalStateException("The command " + command + " was used after it was returned to its pool");
         }
-        return new CommandRunner(context, last, command);
+        CommandRunner runner = new CommandRunner(context, last, command);
+        if (admission != null && command.hasDefaultAdmission()) runner.admit(admission);
+        return runner;
     }
 
     /**
@@ -103,7 +185,54 @@ public class Scheduler implements Executable {
      */
     @Override
     public void execute(long timeInMillis) {
-        commands.step(timeInMillis);
+        profiler.beginCycle();
+        budget.beginCycle(System.nanoTime());
+        try {
+            commands.step(timeInMillis);
+        } finally {
+            profiler.endCycle();
+        }
+    }
+
+    /**
+     * Set the maximum time in each cycle, measured from the start of the cycle, that can be used by all of the
+     * {@link IncrementalCommand}s. The time that remains after the other commands have been executed is divided fairly among
+     * the incremental commands. By default the budget is unlimited.
+     *
+     * @param duration the budget for each cycle; must be positive
+     * @param unit the unit of the duration; may not be null
+     * @see IncrementalCommand
+     */
+    public void useCycleBudget(long duration, TimeUnit unit) {
+        if (duration <= 0L) throw new IllegalArgumentException("The cycle budget must be positive");
+        budget.setBudget(unit.toNanos(duration));
+    }
+
+    /**
+     * Get a snapshot of the statistics for each class of {@link Command} that this scheduler has run, including the time spent
+     * in each command's methods, the number of cycles each command was alive, and the number of commands that were interrupted.
+     * This can be called from any thread.
+     *
+     * @return the statistics; never null
+     */
+    public CommandStats stats() {
+        return profiler.snapshot();
+    }
+
+    /**
+     * Register with the given {@link DataRecorder} two channels for the given class of {@link Command}: the total time in
+     * microseconds spent in the methods of all commands of that class during the most recent cycle (named
+     * "{@code <class> (us)}"), and the number of commands of that class that executed during the most recent cycle (named
+     * "{@code <class> running}"). The data recorder should be executed by the same thread as this scheduler.
+     *
+     * @param recorder the data recorder; may not be null
+     * @param commandClass the class of command; may not be null
+     */
+    public void recordStats(DataRecorder recorder, Class<? extends Command> commandClass) {
+        int index = profiler.indexOf(commandClass);
+        String name = commandClass.getSimpleName().isEmpty() ? commandClass.getName() : commandClass.getSimpleName();
+        recorder.register(name + " (us)", () -> profiler.cycleMicros(index));
+        recorder.register(name + " running", () -> profiler.cycleRunning(index));
     }
 
     /**
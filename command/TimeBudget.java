@@ -0,0 +1,91 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * The time that an {@link IncrementalCommand} may spend in one call to {@link IncrementalCommand#execute(TimeBudget)}. The
+ * command should check {@link #hasRemaining()} between small units of work, and return as soon as the budget is exhausted.
+ *
+ * @author Randall Hauch
+ * @see IncrementalCommand
+ */
+@NotThreadSafe
+public final class TimeBudget {
+
+    private static final TimeBudget UNLIMITED = new TimeBudget();
+
+    /**
+     * Get a budget that never runs out.
+     *
+     * @return the unlimited budget; never null
+     */
+    public static TimeBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    private long allottedNanos = Long.MAX_VALUE;
+    private long deadlineNanos = Long.MAX_VALUE;
+
+    TimeBudget() {
+    }
+
+    /**
+     * Start this budget with the given amount of time.
+     *
+     * @param nowInNanos the current time in nanoseconds
+     * @param nanos the allotted time in nanoseconds
+     */
+    void start(long nowInNanos, long nanos) {
+        this.allottedNanos = nanos;
+        this.deadlineNanos = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : nowInNanos + nanos;
+    }
+
+    /**
+     * Get the total time allotted for this call.
+     *
+     * @return the allotted time in nanoseconds
+     */
+    public long allottedNanos() {
+        return allottedNanos;
+    }
+
+    /**
+     * Get the time remaining in this budget.
+     *
+     * @return the remaining time in nanoseconds; never negative
+     */
+    public long remainingNanos() {
+        if (deadlineNanos == Long.MAX_VALUE) return Long.MAX_VALUE;
+        return Math.max(0L, deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * Determine whether any time remains in this budget.
+     *
+     * @return {@code true} if there is time remaining, or {@code false} if the budget is exhausted
+     */
+    public boolean hasRemaining() {
+        return deadlineNanos == Long.MAX_VALUE || System.nanoTime() - deadlineNanos < 0L;
+    }
+
+    @Override
+    public String toString() {
+        return deadlineNanos == Long.MAX_VALUE ? "unlimited" : remainingNanos() + " of " + allottedNanos + " ns remaining";
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.command;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A hierarchical timing wheel of {@link CommandRunner}s, used by a {@link Scheduler} so that runners with timeouts do not
+ * have to check the time in every cycle and so that runners that are only waiting for their timeout do not have to be stepped
+ * at all.
+ * <p>
+ * The wheel has {@value #LEVELS} levels of 64 slots each, with a resolution of one millisecond at the lowest level and 64 times
+ * coarser resolution at each higher level. A runner is placed in the level given by the most significant group of 6 bits in
+ * which its deadline differs from the current time, and in the slot given by those bits of its deadline. When the current time
+ * reaches the start of a slot in a higher level, the runners in that slot are moved down to lower levels; runners in a slot of
+ * the lowest level expire when the current time reaches that slot. Deadlines too far in the future for the highest level are
+ * kept in an overflow list that is placed again whenever the highest level wraps.
+ * <p>
+ * Each level has a bitmask of its non-empty slots, so {@link #advance(long, Consumer) advancing} the wheel skips directly to
+ * the next slot that holds any runners no matter how far the time moves. Each runner holds its own links to the other runners
+ * in the same slot, so scheduling and cancelling a timeout never allocate and take constant time.
+ * <p>
+ * The wheel is used only by the thread that executes the scheduler.
+ */
+@NotThreadSafe
+final class TimerWheel {
+
+    private static final int LEVELS = 4;
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int OVERFLOW = LEVELS * SLOTS;
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final CommandRunner[] heads = new CommandRunner[OVERFLOW + 1];
+    private final long[] occupied = new long[LEVELS];
+    private long now = UNSET;
+    private int size = 0;
+
+    /**
+     * Schedule the given runner to expire at the given time. Nothing is scheduled until the wheel has first been
+     * {@link #advance(long, Consumer) advanced}, so that runners stepped outside of a scheduler check their own timeouts.
+     *
+     * @param runner the runner that is not already scheduled; may not be null
+     * @param deadline the time in milliseconds at which the runner expires
+     * @return {@code true} if the runner was scheduled, or {@code false} if the wheel has not been advanced or if the deadline
+     *         has already passed
+     */
+    boolean schedule(CommandRunner runner, long deadline) {
+        if (now == UNSET || deadline <= now) return false;
+        runner.timerDeadline = deadline;
+        insert(runner);
+        ++size;
+        return true;
+    }
+
+    /**
+     * Remove the given runner from the wheel, if it is scheduled.
+     *
+     * @param runner the runner; may not be null
+     */
+    void cancel(CommandRunner runner) {
+        if (runner.timerSlot == CommandRunner.NOT_SCHEDULED) return;
+        unlink(runner);
+        --size;
+    }
+
+    /**
+     * Advance the current time of the wheel, and pass to the given function every runner whose deadline is at or before the
+     * new time. The runners are removed from the wheel before they are passed to the function.
+     *
+     * @param timeInMillis the new time in milliseconds; times earlier than the current time are ignored
+     * @param expired the function that is called with each expired runner; may not be null
+     */
+    void advance(long timeInMillis, Consumer<CommandRunner> expired) {
+        while (now < timeInMillis) {
+            long next = size != 0 ? nextBoundary() : Long.MAX_VALUE;
+            if (next > timeInMillis) {
+                // Nothing expires and no slot needs to be moved before the new time ...
+                now = timeInMillis;
+                return;
+            }
+            now = next;
+            // Move the runners in the slots that start now down to lower levels, beginning with the highest level ...
+            if ((now & ((1L << (BITS * LEVELS)) - 1)) == 0) place(OVERFLOW);
+            for (int level = LEVELS - 1; level != 0; --level) {
+                int shift = BITS * level;
+                if ((now & ((1L << shift) - 1)) == 0) place(level * SLOTS + (int) ((now >>> shift) & (SLOTS - 1)));
+            }
+            // And expire all of the runners in the lowest level's slot for now ...
+            int slot = (int) (now & (SLOTS - 1));
+            CommandRunner runner = heads[slot];
+            heads[slot] = null;
+            occupied[0] &= ~(1L << slot);
+            while (runner != null) {
+                CommandRunner following = runner.timerNext;
+                runner.timerNext = null;
+                runner.timerPrev = null;
+                runner.timerSlot = CommandRunner.NOT_SCHEDULED;
+                --size;
+                expired.accept(runner);
+                runner = following;
+            }
+        }
+    }
+
+    /**
+     * Remove all runners from the wheel, passing each to the given function.
+     *
+     * @param removed the function that is called with each removed runner; may not be null
+     */
+    void clear(Consumer<CommandRunner> removed) {
+        for (int slot = 0; slot != heads.length; ++slot) {
+            CommandRunner runner = heads[slot];
+            heads[slot] = null;
+            while (runner != null) {
+                CommandRunner following = runner.timerNext;
+                runner.timerNext = null;
+                runner.timerPrev = null;
+                runner.timerSlot = CommandRunner.NOT_SCHEDULED;
+                removed.accept(runner);
+                runner = following;
+            }
+        }
+        Arrays.fill(occupied, 0L);
+        size = 0;
+    }
+
+    /**
+     * Get the number of runners in the wheel.
+     *
+     * @return the number of runners
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Find the earliest time after now at which a slot of any level starts and holds runners, or at which the highest level
+     * wraps when there are overflowing runners.
+     */
+    private long nextBoundary() {
+        long next = heads[OVERFLOW] != null ? ((now >>> (BITS * LEVELS)) + 1) << (BITS * LEVELS) : Long.MAX_VALUE;
+        for (int level = 0; level != LEVELS; ++level) {
+            int shift = BITS * level;
+            int current = (int) ((now >>> shift) & (SLOTS - 1));
+            // Only the slots after the current one can hold runners ...
+            long later = current == SLOTS - 1 ? 0L : occupied[level] & (-1L << (current + 1));
+            if (later == 0L) continue;
+            long block = (now >>> (shift + BITS)) << (shift + BITS);
+            long start = block | ((long) Long.numberOfTrailingZeros(later) << shift);
+            if (start < next) next = start;
+        }
+        return next;
+    }
+
+    private void place(int slot) {
+        CommandRunner runner = heads[slot];
+        heads[slot] = null;
+        if (slot != OVERFLOW) occupied[slot / SLOTS] &= ~(1L << (slot % SLOTS));
+        while (runner != null) {
+            CommandRunner following = runner.timerNext;
+            runner.timerNext = null;
+            runner.timerPrev = null;
+            insert(runner);
+            runner = following;
+        }
+    }
+
+    private void insert(CommandRunner runner) {
+        long deadline = runner.timerDeadline;
+        int level = (63 - Long.numberOfLeadingZeros(deadline ^ now)) / BITS;
+        int slot;
+        if (level >= LEVELS) {
+            slot = OVERFLOW;
+        } else {
+            int index = (int) ((deadline >>> (BITS * level)) & (SLOTS - 1));
+            slot = level * SLOTS + index;
+            occupied[level] |= 1L << index;
+        }
+        CommandRunner head = heads[slot];
+        runner.timerSlot = slot;
+        runner.timerPrev = null;
+        runner.timerNext = head;
+        if (head != null) head.timerPrev = runner;
+        heads[slot] = runner;
+    }
+
+    private void unlink(CommandRunner runner) {
+        int slot = runner.timerSlot;
+        CommandRunner prev = runner.timerPrev;
+        CommandRunner next = runner.timerNext;
+        if (prev != null) {
+            prev.timerNext = next;
+        } else {
+            heads[slot] = next;
+            if (next == null && slot != OVERFLOW) occupied[slot / SLOTS] &= ~(1L << (slot % SLOTS));
+        }
+        if (next != null) next.timerPrev = prev;
+        runner.timerNext = null;
+        runner.timerPrev = null;
+        runner.timerSlot = CommandRunner.NOT_SCHEDULED;
+    }
+}
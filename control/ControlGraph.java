@@ -0,0 +1,376 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+
+import org.strongback.Executable;
+import org.strongback.Executor;
+import org.strongback.annotation.Immutable;
+import org.strongback.annotation.NotThreadSafe;
+import org.strongback.control.SoftwarePIDController.SourceType;
+import org.strongback.function.DoubleBiFunction;
+import org.strongback.function.DoubleToDoubleFunction;
+
+/**
+ * A graph of inputs, {@link SoftwarePIDController PID controllers}, feed-forward terms, filters and outputs that is computed as
+ * a single {@link Executable}. Each node in the graph produces a {@link Signal} that can be used by any nodes added afterward,
+ * so the nodes are always in topological order and are computed in the order they were added. The value of every signal is
+ * kept in one preallocated array, so computing the graph does not allocate any objects.
+ * <p>
+ * A PID controller in a graph uses the value of another signal as its setpoint without resetting its accumulated errors, so
+ * controllers can be cascaded. For example, a position loop that sets the target of a velocity loop, with a feed-forward term
+ * added to the output of the velocity loop:
+ *
+ * <pre>
+ * ControlGraph graph = new ControlGraph();
+ * Signal target = graph.input("target", () -&gt; desiredPosition);
+ * Signal position = graph.input("position", encoder::getPosition);
+ * Signal velocity = graph.input("velocity", encoder::getSpeed);
+ * Signal velocityTarget = graph.pid("position loop", SourceType.DISTANCE, target, position);
+ * Signal correction = graph.pid("velocity loop", SourceType.DISTANCE, velocityTarget, velocity);
+ * Signal feedForward = graph.feedForward("feed forward", velocityTarget, null, kS, kV, kA);
+ * graph.output(graph.sum("output", correction, feedForward), motor::setSpeed);
+ * graph.controller(velocityTarget).withGains(1.5, 0.0, 0.0).withOutputRange(-3.0, 3.0);
+ * graph.controller(correction).withGains(0.1, 0.01, 0.0);
+ * Strongback.executor().register(graph, Priority.HIGH);
+ * </pre>
+ *
+ * The graph should be completely built before it is registered with an {@link Executor}, although the
+ * {@link #controller(Signal) controllers} can be changed at any time.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+public final class ControlGraph implements Executable {
+
+    /**
+     * A handle to the value produced by one node of a {@link ControlGraph}.
+     */
+    @Immutable
+    public static final class Signal {
+        protected final int index;
+        protected final String name;
+
+        protected Signal(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        /**
+         * Get the name of this signal.
+         *
+         * @return the name; never null
+         */
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private Node[] nodes = new Node[0];
+    private Signal[] signals = new Signal[0];
+    private double[] values = new double[0];
+
+    /**
+     * Add a signal whose value is read from the given source each time the graph is computed.
+     *
+     * @param name the name of the signal; may not be null
+     * @param source the source of the values; may not be null
+     * @return the signal; never null
+     */
+    public Signal input(String name, DoubleSupplier source) {
+        if (source == null) throw new IllegalArgumentException("The source may not be null");
+        Signal signal = newSignal(name);
+        return add(signal, new Node(signal.index) {
+            @Override
+            protected void compute(double[] values, long timeInNanos) {
+                values[output] = source.getAsDouble();
+            }
+        });
+    }
+
+    /**
+     * Add a signal that is the output of a new {@link SoftwarePIDController} that moves the measurement toward the setpoint.
+     * Use {@link #controller(Signal)} to obtain the controller to set its gains, ranges and other settings; its target is not
+     * used.
+     *
+     * @param name the name of the signal; may not be null
+     * @param sourceType the type of the measurement; may not be null
+     * @param setpoint the signal used as the setpoint; may not be null
+     * @param measurement the signal used as the input of the controller; may not be null
+     * @return the signal; never null
+     */
+    public Signal pid(String name, SourceType sourceType, Signal setpoint, Signal measurement) {
+        check(setpoint);
+        check(measurement);
+        Signal signal = newSignal(name);
+        int output = signal.index;
+        SoftwarePIDController controller = new SoftwarePIDController(sourceType, () -> values[measurement.index],
+                value -> values[output] = value);
+        return add(signal, new PidNode(output, controller, setpoint.index));
+    }
+
+    /**
+     * Add a signal that is the feed-forward output {@code kS * signum(velocity) + kV * velocity + kA * acceleration} needed to
+     * move a mechanism at the given velocity and acceleration.
+     *
+     * @param name the name of the signal; may not be null
+     * @param velocity the signal of the desired velocity; may not be null
+     * @param acceleration the signal of the desired acceleration, or null if the acceleration is to be computed from the change
+     *        in velocity since the graph was last computed
+     * @param kS the output needed to overcome static friction
+     * @param kV the output per unit of velocity
+     * @param kA the output per unit of acceleration
+     * @return the signal; never null
+     */
+    public Signal feedForward(String name, Signal velocity, Signal acceleration, double kS, double kV, double kA) {
+        check(velocity);
+        if (acceleration != null) check(acceleration);
+        Signal signal = newSignal(name);
+        int v = velocity.index;
+        int a = acceleration != null ? acceleration.index : -1;
+        return add(signal, new Node(signal.index) {
+            private long lastTimeInNanos = Long.MIN_VALUE;
+            private double lastVelocity;
+
+            @Override
+            protected void compute(double[] values, long timeInNanos) {
+                double vel = values[v];
+                double accel = 0.0;
+                if (a >= 0) {
+                    accel = values[a];
+                } else if (lastTimeInNanos != Long.MIN_VALUE && timeInNanos > lastTimeInNanos) {
+                    accel = (vel - lastVelocity) * TimeUnit.SECONDS.toNanos(1) / (timeInNanos - lastTimeInNanos);
+                }
+                lastTimeInNanos = timeInNanos;
+                lastVelocity = vel;
+                values[output] = kS * Math.signum(vel) + kV * vel + kA * accel;
+            }
+        });
+    }
+
+    /**
+     * Add a signal that is the result of applying the given function, such as a filter, to another signal. The function is
+     * called exactly once each time the graph is computed, so it may keep state.
+     *
+     * @param name the name of the signal; may not be null
+     * @param input the signal to which the function is applied; may not be null
+     * @param function the function; may not be null
+     * @return the signal; never null
+     */
+    public Signal filter(String name, Signal input, DoubleToDoubleFunction function) {
+        check(input);
+        if (function == null) throw new IllegalArgumentException("The function may not be null");
+        Signal signal = newSignal(name);
+        int in = input.index;
+        return add(signal, new Node(signal.index) {
+            @Override
+            protected void compute(double[] values, long timeInNanos) {
+                values[output] = function.applyAsDouble(values[in]);
+            }
+        });
+    }
+
+    /**
+     * Add a signal that is the result of applying the given function to two other signals.
+     *
+     * @param name the name of the signal; may not be null
+     * @param first the signal used as the first argument; may not be null
+     * @param second the signal used as the second argument; may not be null
+     * @param function the function; may not be null
+     * @return the signal; never null
+     */
+    public Signal combine(String name, Signal first, Signal second, DoubleBiFunction function) {
+        check(first);
+        check(second);
+        if (function == null) throw new IllegalArgumentException("The function may not be null");
+        Signal signal = newSignal(name);
+        int a = first.index;
+        int b = second.index;
+        return add(signal, new Node(signal.index) {
+            @Override
+            protected void compute(double[] values, long timeInNanos) {
+                values[output] = function.applyAsDouble(values[a], values[b]);
+            }
+        });
+    }
+
+    /**
+     * Add a signal that is the sum of other signals.
+     *
+     * @param name the name of the signal; may not be null
+     * @param inputs the signals to be added; may not be null or empty
+     * @return the signal; never null
+     */
+    public Signal sum(String name, Signal... inputs) {
+        if (inputs == null || inputs.length == 0) throw new IllegalArgumentException("At least one signal is required");
+        int[] indexes = new int[inputs.length];
+        for (int i = 0; i != inputs.length; ++i) {
+            check(inputs[i]);
+            indexes[i] = inputs[i].index;
+        }
+        Signal signal = newSignal(name);
+        return add(signal, new Node(signal.index) {
+            @Override
+            protected void compute(double[] values, long timeInNanos) {
+                double sum = 0.0;
+                for (int index : indexes) {
+                    sum += values[index];
+                }
+                values[output] = sum;
+            }
+        });
+    }
+
+    /**
+     * Send the value of the signal to the given consumer each time the graph is computed.
+     *
+     * @param signal the signal; may not be null
+     * @param consumer the function that accepts the values; may not be null
+     * @return this object so that methods can be chained; never null
+     */
+    public ControlGraph output(Signal signal, DoubleConsumer consumer) {
+        check(signal);
+        if (consumer == null) throw new IllegalArgumentException("The consumer may not be null");
+        int in = signal.index;
+        append(new Node(-1) {
+            @Override
+            protected void compute(double[] values, long timeInNanos) {
+                consumer.accept(values[in]);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Get the controller that produces the given signal.
+     *
+     * @param signal the signal {@link #pid(String, SourceType, Signal, Signal) produced by a controller}; may not be null
+     * @return the controller; never null
+     * @throws IllegalArgumentException if the signal is not produced by a controller in this graph
+     */
+    public SoftwarePIDController controller(Signal signal) {
+        check(signal);
+        for (Node node : nodes) {
+            if (node.output == signal.index && node instanceof PidNode) return ((PidNode) node).controller;
+        }
+        throw new IllegalArgumentException("The signal '" + signal + "' is not the output of a controller");
+    }
+
+    /**
+     * Get the value of the signal computed the last time the graph was computed. This should be called only on the thread that
+     * computes the graph, such as from a command or another {@link Executable} on the same {@link Executor}.
+     *
+     * @param signal the signal; may not be null
+     * @return the value
+     */
+    public double value(Signal signal) {
+        check(signal);
+        return values[signal.index];
+    }
+
+    /**
+     * Get the signal with the given name.
+     *
+     * @param name the name of the signal
+     * @return the signal, or null if there is no signal with that name
+     */
+    public Signal signal(String name) {
+        for (Signal signal : signals) {
+            if (signal.name.equals(name)) return signal;
+        }
+        return null;
+    }
+
+    private Signal newSignal(String name) {
+        if (name == null) throw new IllegalArgumentException("The name may not be null");
+        if (signal(name) != null) throw new IllegalArgumentException("There is already a signal named '" + name + "'");
+        Signal signal = new Signal(signals.length, name);
+        signals = Arrays.copyOf(signals, signals.length + 1);
+        signals[signal.index] = signal;
+        values = Arrays.copyOf(values, signals.length);
+        return signal;
+    }
+
+    @Override
+    public void execute(long timeInMillis) {
+        long timeInNanos = TimeUnit.MILLISECONDS.toNanos(timeInMillis);
+        double[] values = this.values;
+        for (Node node : nodes) {
+            node.compute(values, timeInNanos);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Control graph of " + signals.length + " signals";
+    }
+
+    private Signal add(Signal signal, Node node) {
+        append(node);
+        return signal;
+    }
+
+    private void append(Node node) {
+        nodes = Arrays.copyOf(nodes, nodes.length + 1);
+        nodes[nodes.length - 1] = node;
+    }
+
+    private void check(Signal signal) {
+        if (signal == null) throw new IllegalArgumentException("The signal may not be null");
+        if (signal.index >= signals.length || signals[signal.index] != signal) {
+            throw new IllegalArgumentException("The signal '" + signal + "' is not in this graph");
+        }
+    }
+
+    /**
+     * A node that computes the value of one signal, or that uses signals without producing one.
+     */
+    private static abstract class Node {
+        protected final int output;
+
+        protected Node(int output) {
+            this.output = output;
+        }
+
+        protected abstract void compute(double[] values, long timeInNanos);
+    }
+
+    private static final class PidNode extends Node {
+        protected final SoftwarePIDController controller;
+        private final int setpoint;
+
+        protected PidNode(int output, SoftwarePIDController controller, int setpoint) {
+            super(output);
+            this.controller = controller;
+            this.setpoint = setpoint;
+        }
+
+        @Override
+        protected void compute(double[] values, long timeInNanos) {
+            controller.computeOutput(timeInNanos, values[setpoint]);
+        }
+    }
+}
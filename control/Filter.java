@@ -0,0 +1,156 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import java.util.function.DoubleSupplier;
+
+import org.strongback.annotation.NotThreadSafe;
+import org.strongback.function.DoubleToDoubleFunction;
+
+/**
+ * A filter that smooths a signal one sample at a time. Each call to {@link #applyAsDouble(double)} adds the next sample and
+ * returns the filtered value, so a filter should be called exactly once per sample, usually once per cycle of an
+ * {@link org.strongback.Executor}. None of the filters allocate objects after they are created.
+ * <p>
+ * To filter a sensor once per cycle and share the filtered value with any number of consumers, use
+ * {@link #sample(DoubleSupplier)} to create a {@link FilteredValue} and register it with the executor before the consumers. A
+ * filter can also be used directly in a {@link ControlGraph#filter(String, ControlGraph.Signal, DoubleToDoubleFunction)
+ * control graph}.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+public interface Filter extends DoubleToDoubleFunction {
+
+    /**
+     * Add the next sample and return the filtered value.
+     *
+     * @param value the next sample
+     * @return the filtered value
+     */
+    @Override
+    public double applyAsDouble(double value);
+
+    /**
+     * Discard all samples, so that the next sample is treated as the first.
+     */
+    public void reset();
+
+    /**
+     * Create a {@link FilteredValue} that applies this filter to samples of the given source.
+     *
+     * @param source the source of the samples; may not be null
+     * @return the filtered value; never null
+     */
+    default public FilteredValue sample(DoubleSupplier source) {
+        return new FilteredValue(source, this);
+    }
+
+    /**
+     * Create a filter that applies this filter and then the given filter.
+     *
+     * @param next the filter applied to the output of this filter; may not be null
+     * @return the combined filter; never null
+     */
+    default public Filter then(Filter next) {
+        if (next == null) throw new IllegalArgumentException("The next filter may not be null");
+        Filter first = this;
+        return new Filter() {
+            @Override
+            public double applyAsDouble(double value) {
+                return next.applyAsDouble(first.applyAsDouble(value));
+            }
+
+            @Override
+            public void reset() {
+                first.reset();
+                next.reset();
+            }
+        };
+    }
+
+    /**
+     * Create an exponential moving average filter, which moves the filtered value the given fraction of the way toward each
+     * new sample.
+     *
+     * @param smoothing the fraction of the way toward each new sample, between 0 (exclusive) and 1 (inclusive); smaller values
+     *        smooth more
+     * @return the filter; never null
+     */
+    public static Filter exponential(double smoothing) {
+        return new ExponentialFilter(smoothing);
+    }
+
+    /**
+     * Create an exponential moving average filter with the given time constant, for samples taken at the given period.
+     *
+     * @param timeConstantInSeconds the time for the filtered value to move 63% of the way to a new steady sample; may not be
+     *        negative
+     * @param periodInSeconds the time between samples; must be positive
+     * @return the filter; never null
+     */
+    public static Filter exponential(double timeConstantInSeconds, double periodInSeconds) {
+        if (timeConstantInSeconds < 0.0) throw new IllegalArgumentException("The time constant may not be negative");
+        if (!(periodInSeconds > 0.0)) throw new IllegalArgumentException("The period must be positive");
+        return new ExponentialFilter(periodInSeconds / (timeConstantInSeconds + periodInSeconds));
+    }
+
+    /**
+     * Create a filter that computes the mean of the most recent samples.
+     *
+     * @param windowSize the number of samples; must be positive
+     * @return the filter; never null
+     */
+    public static Filter movingAverage(int windowSize) {
+        return new MovingAverageFilter(windowSize);
+    }
+
+    /**
+     * Create a filter that computes the median of the most recent samples in time proportional to the logarithm of the window
+     * size, which removes occasional spikes in the samples.
+     *
+     * @param windowSize the number of samples; must be positive
+     * @return the filter; never null
+     */
+    public static Filter movingMedian(int windowSize) {
+        return new MovingMedianFilter(windowSize);
+    }
+
+    /**
+     * Create a one-dimensional Kalman filter for a value that is expected to stay nearly constant between samples.
+     *
+     * @param processVariance the variance of the change in the actual value between samples; must be positive
+     * @param measurementVariance the variance of the noise in each sample; must be positive
+     * @return the filter; never null
+     */
+    public static Filter kalman(double processVariance, double measurementVariance) {
+        return new KalmanFilter(processVariance, measurementVariance);
+    }
+
+    /**
+     * Create a filter that limits how quickly the filtered value can change.
+     *
+     * @param maxRatePerSecond the largest change in the value per second; must be positive
+     * @param periodInSeconds the time between samples; must be positive
+     * @return the filter; never null
+     */
+    public static Filter slewRateLimiter(double maxRatePerSecond, double periodInSeconds) {
+        if (!(maxRatePerSecond > 0.0)) throw new IllegalArgumentException("The maximum rate must be positive");
+        if (!(periodInSeconds > 0.0)) throw new IllegalArgumentException("The period must be positive");
+        return new SlewRateLimiter(maxRatePerSecond * periodInSeconds);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import java.util.function.DoubleSupplier;
+
+import org.strongback.Executable;
+import org.strongback.Executor;
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.AngleSensor;
+import org.strongback.components.DistanceSensor;
+
+/**
+ * An {@link Executable} that reads a source, such as a sensor, and applies a {@link Filter} once each time it is executed, so
+ * that any number of consumers can share the same filtered value without each filtering the source. Register it with the
+ * {@link Executor} before the executables that use the value, and use it wherever a {@link DoubleSupplier} is expected:
+ *
+ * <pre>
+ * FilteredValue range = Filter.movingMedian(5).sample(rangefinder::getDistanceInInches);
+ * Strongback.executor().register(range, Priority.HIGH);
+ * DistanceSensor filteredRangefinder = range.asDistanceSensor();
+ * </pre>
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+public final class FilteredValue implements Executable, DoubleSupplier {
+
+    private final DoubleSupplier source;
+    private final Filter filter;
+    private volatile double value;
+
+    /**
+     * Create a filtered value.
+     *
+     * @param source the source of the samples; may not be null
+     * @param filter the filter, which should be used only by this object; may not be null
+     */
+    public FilteredValue(DoubleSupplier source, Filter filter) {
+        if (source == null) throw new IllegalArgumentException("The source may not be null");
+        if (filter == null) throw new IllegalArgumentException("The filter may not be null");
+        this.source = source;
+        this.filter = filter;
+    }
+
+    @Override
+    public void execute(long timeInMillis) {
+        value = filter.applyAsDouble(source.getAsDouble());
+    }
+
+    /**
+     * Get the filtered value computed the last time this was executed.
+     *
+     * @return the filtered value
+     */
+    @Override
+    public double getAsDouble() {
+        return value;
+    }
+
+    /**
+     * Get a {@link DistanceSensor} that returns the filtered value.
+     *
+     * @return the distance sensor; never null
+     */
+    public DistanceSensor asDistanceSensor() {
+        return DistanceSensor.create(this);
+    }
+
+    /**
+     * Get an {@link AngleSensor} that returns the filtered value.
+     *
+     * @return the angle sensor; never null
+     */
+    public AngleSensor asAngleSensor() {
+        return AngleSensor.create(this);
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(value);
+    }
+}
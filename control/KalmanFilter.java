@@ -0,0 +1,66 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A one-dimensional {@link Filter Kalman filter} for a value that is expected to stay nearly constant between samples. The
+ * filter keeps an estimate of the value and of the variance of that estimate, and moves the estimate toward each sample in
+ * proportion to how uncertain the estimate is compared to the sample.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+final class KalmanFilter implements Filter {
+
+    private final double processVariance;
+    private final double measurementVariance;
+    private double estimate;
+    private double variance;
+    private boolean first = true;
+
+    KalmanFilter(double processVariance, double measurementVariance) {
+        if (!(processVariance > 0.0)) throw new IllegalArgumentException("The process variance must be positive");
+        if (!(measurementVariance > 0.0)) throw new IllegalArgumentException("The measurement variance must be positive");
+        this.processVariance = processVariance;
+        this.measurementVariance = measurementVariance;
+    }
+
+    @Override
+    public double applyAsDouble(double sample) {
+        if (first) {
+            estimate = sample;
+            variance = measurementVariance;
+            first = false;
+            return estimate;
+        }
+        // Predict that the value is unchanged but less certain, and then correct it with the sample ...
+        double predicted = variance + processVariance;
+        double gain = predicted / (predicted + measurementVariance);
+        estimate += gain * (sample - estimate);
+        variance = (1.0 - gain) * predicted;
+        return estimate;
+    }
+
+    @Override
+    public void reset() {
+        first = true;
+        estimate = 0.0;
+        variance = 0.0;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.strongback.annotation.Immutable;
+
+/**
+ * A motion profile that moves a given distance within limits on velocity, acceleration and optionally jerk, precomputed as one
+ * point per execution period. Each point has a position relative to the start of the motion, a velocity, and an acceleration,
+ * and the last point is always at rest at the end of the motion. A {@link MotionProfileFollower} streams the points into a
+ * controller's or motor's setpoint one point per cycle.
+ * <p>
+ * A {@link Constraints#trapezoidal(double, double, double) trapezoidal} profile accelerates at the maximum acceleration,
+ * cruises at the maximum velocity, and decelerates at the maximum acceleration; when the distance is too short to reach the
+ * maximum velocity there is no cruise. A {@link Constraints#sCurve(double, double, double, double) S-curve} profile also
+ * limits how quickly the acceleration changes, and is computed by averaging the trapezoidal profile over a sliding window of
+ * the time it takes to reach the maximum acceleration at the maximum jerk. This preserves the distance and makes the motion
+ * longer by that time, and the velocity and acceleration are reduced when the motion is too short to reach them without
+ * exceeding the maximum jerk.
+ * <p>
+ * Profiles are {@link #of(double, Constraints) obtained} for a distance and a set of constraints, and are cached so that
+ * obtaining the same profile again does not compute it again.
+ *
+ * @author Randall Hauch
+ */
+@Immutable
+public final class MotionProfile {
+
+    private static final int MAX_CACHED_PROFILES = 256;
+    private static final Map<Key, MotionProfile> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Get the profile that moves the given distance within the given constraints, computing it only if it is not already
+     * cached.
+     *
+     * @param distance the distance to move, which is negative to move in the negative direction
+     * @param constraints the constraints on the motion; may not be null
+     * @return the motion profile; never null
+     */
+    public static MotionProfile of(double distance, Constraints constraints) {
+        if (constraints == null) throw new IllegalArgumentException("The constraints may not be null");
+        Key key = new Key(distance, constraints);
+        MotionProfile profile = CACHE.get(key);
+        if (profile == null) {
+            profile = new MotionProfile(distance, constraints);
+            if (CACHE.size() >= MAX_CACHED_PROFILES) CACHE.clear();
+            MotionProfile existing = CACHE.putIfAbsent(key, profile);
+            if (existing != null) profile = existing;
+        }
+        return profile;
+    }
+
+    private final double distance;
+    private final Constraints constraints;
+    private final double[] positions;
+    private final double[] velocities;
+    private final double[] accelerations;
+
+    private MotionProfile(double distance, Constraints constraints) {
+        this.distance = distance;
+        this.constraints = constraints;
+        double sign = Math.signum(distance);
+        double length = Math.abs(distance);
+        double velocity = constraints.maxVelocity;
+        double acceleration = constraints.maxAcceleration;
+        double jerk = constraints.maxJerk;
+        double window = 0.0;
+        if (jerk > 0.0 && length > 0.0) {
+            // Accelerating must take at least as long as the window, or the jerk will exceed the maximum ...
+            if (velocity / acceleration < acceleration / jerk) acceleration = Math.sqrt(velocity * jerk);
+            window = acceleration / jerk;
+            // Cruising must also take at least as long as the window, so reduce the velocity if needed ...
+            if (velocity / acceleration + window > length / velocity) {
+                velocity = acceleration * (Math.sqrt(window * window + 4.0 * length / acceleration) - window) / 2.0;
+                if (velocity / acceleration < window) {
+                    velocity = Math.pow(length * Math.sqrt(jerk) / 2.0, 2.0 / 3.0);
+                    acceleration = Math.sqrt(velocity * jerk);
+                    window = acceleration / jerk;
+                }
+            }
+        }
+        Trapezoid shape = new Trapezoid(length, velocity, acceleration);
+        double duration = shape.duration + window;
+        int size = (int) Math.ceil(duration / constraints.periodInSeconds - 1.0e-9) + 1;
+        this.positions = new double[size];
+        this.velocities = new double[size];
+        this.accelerations = new double[size];
+        for (int i = 0; i != size; ++i) {
+            double t = Math.min(i * constraints.periodInSeconds, duration);
+            if (window > 0.0) {
+                // Average the trapezoidal profile over the preceding window ...
+                double earlier = t - window;
+                positions[i] = sign * (shape.integral(t) - shape.integral(earlier)) / window;
+                velocities[i] = sign * (shape.position(t) - shape.position(earlier)) / window;
+                accelerations[i] = sign * (shape.velocity(t) - shape.velocity(earlier)) / window;
+            } else {
+                positions[i] = sign * shape.position(t);
+                velocities[i] = sign * shape.velocity(t);
+                accelerations[i] = sign * shape.acceleration(t);
+            }
+        }
+        // Always end exactly at rest at the end of the motion ...
+        positions[size - 1] = distance;
+        velocities[size - 1] = 0.0;
+        accelerations[size - 1] = 0.0;
+    }
+
+    /**
+     * Get the distance moved by this profile.
+     *
+     * @return the distance, which is negative when moving in the negative direction
+     */
+    public double distance() {
+        return distance;
+    }
+
+    /**
+     * Get the constraints of this profile.
+     *
+     * @return the constraints; never null
+     */
+    public Constraints constraints() {
+        return constraints;
+    }
+
+    /**
+     * Get the number of points in this profile, which is one more than the number of periods in the motion.
+     *
+     * @return the number of points; always positive
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * Get the duration of the motion, rounded up to a whole number of periods.
+     *
+     * @return the duration in seconds
+     */
+    public double durationInSeconds() {
+        return (positions.length - 1) * constraints.periodInSeconds;
+    }
+
+    /**
+     * Get the position at the given point, relative to the start of the motion.
+     *
+     * @param index the index of the point; must be less than {@link #size()}
+     * @return the position
+     */
+    public double position(int index) {
+        return positions[index];
+    }
+
+    /**
+     * Get the velocity at the given point.
+     *
+     * @param index the index of the point; must be less than {@link #size()}
+     * @return the velocity in distance per second
+     */
+    public double velocity(int index) {
+        return velocities[index];
+    }
+
+    /**
+     * Get the acceleration at the given point.
+     *
+     * @param index the index of the point; must be less than {@link #size()}
+     * @return the acceleration in distance per second per second
+     */
+    public double acceleration(int index) {
+        return accelerations[index];
+    }
+
+    @Override
+    public String toString() {
+        return "Motion profile of " + distance + " in " + positions.length + " points with " + constraints;
+    }
+
+    /**
+     * The limits on the motion of a {@link MotionProfile}, and the period between its points.
+     */
+    @Immutable
+    public static final class Constraints {
+
+        /**
+         * Create constraints for trapezoidal profiles, which limit the velocity and acceleration.
+         *
+         * @param maxVelocity the maximum velocity in distance per second; must be positive
+         * @param maxAcceleration the maximum acceleration in distance per second per second; must be positive
+         * @param periodInSeconds the time between points, which should match the period at which the points are used; must be
+         *        positive
+         * @return the constraints; never null
+         */
+        public static Constraints trapezoidal(double maxVelocity, double maxAcceleration, double periodInSeconds) {
+            return new Constraints(maxVelocity, maxAcceleration, 0.0, periodInSeconds);
+        }
+
+        /**
+         * Create constraints for S-curve profiles, which limit the velocity, acceleration, and jerk.
+         *
+         * @param maxVelocity the maximum velocity in distance per second; must be positive
+         * @param maxAcceleration the maximum acceleration in distance per second per second; must be positive
+         * @param maxJerk the maximum jerk in distance per second per second per second; must be positive
+         * @param periodInSeconds the time between points, which should match the period at which the points are used; must be
+         *        positive
+         * @return the constraints; never null
+         */
+        public static Constraints sCurve(double maxVelocity, double maxAcceleration, double maxJerk, double periodInSeconds) {
+            if (!(maxJerk > 0.0)) throw new IllegalArgumentException("The maximum jerk must be positive");
+            return new Constraints(maxVelocity, maxAcceleration, maxJerk, periodInSeconds);
+        }
+
+        protected final double maxVelocity;
+        protected final double maxAcceleration;
+        protected final double maxJerk;
+        protected final double periodInSeconds;
+
+        private Constraints(double maxVelocity, double maxAcceleration, double maxJerk, double periodInSeconds) {
+            if (!(maxVelocity > 0.0)) throw new IllegalArgumentException("The maximum velocity must be positive");
+            if (!(maxAcceleration > 0.0)) throw new IllegalArgumentException("The maximum acceleration must be positive");
+            if (!(periodInSeconds > 0.0)) throw new IllegalArgumentException("The period must be positive");
+            this.maxVelocity = maxVelocity;
+            this.maxAcceleration = maxAcceleration;
+            this.maxJerk = maxJerk;
+            this.periodInSeconds = periodInSeconds;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(maxVelocity) * 31 + Double.hashCode(maxAcceleration) * 17 + Double.hashCode(maxJerk)
+                    + Double.hashCode(periodInSeconds) * 7;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (obj instanceof Constraints) {
+                Constraints that = (Constraints) obj;
+                return this.maxVelocity == that.maxVelocity && this.maxAcceleration == that.maxAcceleration
+                        && this.maxJerk == that.maxJerk && this.periodInSeconds == that.periodInSeconds;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "maximum velocity " + maxVelocity + ", acceleration " + maxAcceleration
+                    + (maxJerk > 0.0 ? ", jerk " + maxJerk : "") + " every " + periodInSeconds + " seconds";
+        }
+    }
+
+    /**
+     * A trapezoidal velocity profile over a positive distance, which can be evaluated at any time.
+     */
+    private static final class Trapezoid {
+        private final double accel;
+        private final double peak;
+        private final double accelEnd;
+        private final double cruiseEnd;
+        private final double duration;
+        private final double distance;
+        // The position and integral of the position at the end of each phase ...
+        private final double accelEndPosition;
+        private final double accelEndIntegral;
+        private final double cruiseEndPosition;
+        private final double cruiseEndIntegral;
+        private final double endIntegral;
+
+        protected Trapezoid(double distance, double maxVelocity, double maxAcceleration) {
+            this.distance = distance;
+            this.accel = maxAcceleration;
+            double accelTime = maxVelocity / maxAcceleration;
+            double cruiseTime;
+            if (maxVelocity * accelTime >= distance) {
+                // There's not enough distance to reach the maximum velocity ...
+                accelTime = Math.sqrt(distance / maxAcceleration);
+                cruiseTime = 0.0;
+            } else {
+                cruiseTime = (distance - maxVelocity * accelTime) / maxVelocity;
+            }
+            this.peak = maxAcceleration * accelTime;
+            this.accelEnd = accelTime;
+            this.cruiseEnd = accelTime + cruiseTime;
+            this.duration = cruiseEnd + accelTime;
+            this.accelEndPosition = accel * accelTime * accelTime / 2.0;
+            this.accelEndIntegral = accel * accelTime * accelTime * accelTime / 6.0;
+            this.cruiseEndPosition = accelEndPosition + peak * cruiseTime;
+            this.cruiseEndIntegral = accelEndIntegral + accelEndPosition * cruiseTime + peak * cruiseTime * cruiseTime / 2.0;
+            this.endIntegral = cruiseEndIntegral + cruiseEndPosition * accelTime + peak * accelTime * accelTime / 2.0
+                    - accel * accelTime * accelTime * accelTime / 6.0;
+        }
+
+        protected double acceleration(double t) {
+            if (t <= 0.0 || t >= duration) return 0.0;
+            if (t < accelEnd) return accel;
+            if (t < cruiseEnd) return 0.0;
+            return -accel;
+        }
+
+        protected double velocity(double t) {
+            if (t <= 0.0 || t >= duration) return 0.0;
+            if (t < accelEnd) return accel * t;
+            if (t < cruiseEnd) return peak;
+            return peak - accel * (t - cruiseEnd);
+        }
+
+        protected double position(double t) {
+            if (t <= 0.0) return 0.0;
+            if (t >= duration) return distance;
+            if (t < accelEnd) return accel * t * t / 2.0;
+            if (t < cruiseEnd) return accelEndPosition + peak * (t - accelEnd);
+            double dt = t - cruiseEnd;
+            return cruiseEndPosition + peak * dt - accel * dt * dt / 2.0;
+        }
+
+        protected double integral(double t) {
+            if (t <= 0.0) return 0.0;
+            if (t < accelEnd) return accel * t * t * t / 6.0;
+            if (t < cruiseEnd) {
+                double dt = t - accelEnd;
+                return accelEndIntegral + accelEndPosition * dt + peak * dt * dt / 2.0;
+            }
+            if (t < duration) {
+                double dt = t - cruiseEnd;
+                return cruiseEndIntegral + cruiseEndPosition * dt + peak * dt * dt / 2.0 - accel * dt * dt * dt / 6.0;
+            }
+            return endIntegral + distance * (t - duration);
+        }
+    }
+
+    private static final class Key {
+        private final double distance;
+        private final Constraints constraints;
+
+        protected Key(double distance, Constraints constraints) {
+            this.distance = distance;
+            this.constraints = constraints;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(distance) * 31 + constraints.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key that = (Key) obj;
+                return this.distance == that.distance && this.constraints.equals(that.constraints);
+            }
+            return false;
+        }
+    }
+}
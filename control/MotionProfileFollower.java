@@ -0,0 +1,196 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import java.util.function.DoubleConsumer;
+
+import org.strongback.Executable;
+import org.strongback.Executor;
+import org.strongback.annotation.Immutable;
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.Motor;
+import org.strongback.components.Motor.ControlMode;
+
+/**
+ * An {@link Executable} that streams the points of a {@link MotionProfile} into a setpoint, one point each time it is
+ * executed. Register the follower with an {@link Executor} whose period matches the period of the profiles, and then
+ * {@link #follow(MotionProfile, double) follow} a profile at any time:
+ *
+ * <pre>
+ * SoftwarePIDController controller = ...
+ * MotionProfileFollower follower = MotionProfileFollower.positions(controller::moveTarget);
+ * Strongback.executor().register(controller.executable(), Priority.HIGH);
+ * Strongback.executor().register(follower, Priority.HIGH);
+ * ...
+ * follower.follow(MotionProfile.of(2.0, constraints), encoder.getPosition());
+ * </pre>
+ *
+ * Motors such as a {@code HardwareTalonSRX} can instead follow the positions or velocities in their own closed-loop
+ * {@link #positions(Motor) position} or {@link #velocities(Motor) speed} modes. All of the work of computing the profile is
+ * done when the profile is {@link MotionProfile#of(double, MotionProfile.Constraints) obtained}, so each execution only reads
+ * the next point. After the last point, the follower stops sending setpoints and the final setpoint remains in effect.
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+public final class MotionProfileFollower implements Executable {
+
+    /**
+     * A function that accepts each point of a motion profile.
+     */
+    @FunctionalInterface
+    public static interface Setpoint {
+        /**
+         * Accept the next point of a motion profile.
+         *
+         * @param position the position, which includes the starting position
+         * @param velocity the velocity in distance per second
+         * @param acceleration the acceleration in distance per second per second
+         */
+        public void accept(double position, double velocity, double acceleration);
+    }
+
+    /**
+     * Create a follower that sends each position to the given function, such as the
+     * {@link SoftwarePIDController#moveTarget(double) target} of a distance controller.
+     *
+     * @param positions the function that accepts each position; may not be null
+     * @return the follower; never null
+     */
+    public static MotionProfileFollower positions(DoubleConsumer positions) {
+        if (positions == null) throw new IllegalArgumentException("The position consumer may not be null");
+        return new MotionProfileFollower((position, velocity, acceleration) -> positions.accept(position));
+    }
+
+    /**
+     * Create a follower that sends each velocity to the given function, such as the
+     * {@link SoftwarePIDController#moveTarget(double) target} of a rate controller.
+     *
+     * @param velocities the function that accepts each velocity; may not be null
+     * @return the follower; never null
+     */
+    public static MotionProfileFollower velocities(DoubleConsumer velocities) {
+        if (velocities == null) throw new IllegalArgumentException("The velocity consumer may not be null");
+        return new MotionProfileFollower((position, velocity, acceleration) -> velocities.accept(velocity));
+    }
+
+    /**
+     * Create a follower that sets the motor to each position using its closed-loop {@link ControlMode#Position position} mode.
+     *
+     * @param motor the motor; may not be null
+     * @return the follower; never null
+     */
+    public static MotionProfileFollower positions(Motor motor) {
+        if (motor == null) throw new IllegalArgumentException("The motor may not be null");
+        return new MotionProfileFollower((position, velocity, acceleration) -> motor.set(ControlMode.Position, position));
+    }
+
+    /**
+     * Create a follower that sets the motor to each velocity using its closed-loop {@link ControlMode#Speed speed} mode.
+     *
+     * @param motor the motor; may not be null
+     * @return the follower; never null
+     */
+    public static MotionProfileFollower velocities(Motor motor) {
+        if (motor == null) throw new IllegalArgumentException("The motor may not be null");
+        return new MotionProfileFollower((position, velocity, acceleration) -> motor.set(ControlMode.Speed, velocity));
+    }
+
+    private final Setpoint setpoint;
+    private volatile Run run = null;
+    private volatile Run finished = null;
+    // These are owned by the executor thread ...
+    private Run current = null;
+    private int index = 0;
+
+    /**
+     * Create a follower that sends each point to the given function.
+     *
+     * @param setpoint the function that accepts each point; may not be null
+     */
+    public MotionProfileFollower(Setpoint setpoint) {
+        if (setpoint == null) throw new IllegalArgumentException("The setpoint may not be null");
+        this.setpoint = setpoint;
+    }
+
+    /**
+     * Begin following the given profile with the next execution, replacing any profile that is currently being followed.
+     *
+     * @param profile the profile; may not be null
+     * @param startPosition the position at the start of the motion, which is added to the positions of the profile
+     * @return this object so that methods can be chained; never null
+     */
+    public MotionProfileFollower follow(MotionProfile profile, double startPosition) {
+        if (profile == null) throw new IllegalArgumentException("The profile may not be null");
+        run = new Run(profile, startPosition);
+        return this;
+    }
+
+    /**
+     * Stop following the current profile, if there is one. The last setpoint remains in effect.
+     *
+     * @return this object so that methods can be chained; never null
+     */
+    public MotionProfileFollower stop() {
+        run = null;
+        return this;
+    }
+
+    /**
+     * Determine whether all points of the last profile have been sent, or whether the follower was stopped.
+     *
+     * @return {@code true} if there is no profile being followed, or {@code false} otherwise
+     */
+    public boolean isComplete() {
+        Run run = this.run;
+        return run == null || run == finished;
+    }
+
+    @Override
+    public void execute(long timeInMillis) {
+        Run run = this.run;
+        if (run == null) return;
+        if (run != current) {
+            // Start following a new profile ...
+            current = run;
+            index = 0;
+        }
+        MotionProfile profile = run.profile;
+        if (index < profile.size()) {
+            int i = index++;
+            setpoint.accept(run.start + profile.position(i), profile.velocity(i), profile.acceleration(i));
+            if (index == profile.size()) finished = run;
+        }
+    }
+
+    @Override
+    public String toString() {
+        Run run = this.run;
+        return run != null && run != finished ? "Following " + run.profile : "Motion profile follower";
+    }
+
+    @Immutable
+    private static final class Run {
+        protected final MotionProfile profile;
+        protected final double start;
+
+        protected Run(MotionProfile profile, double start) {
+            this.profile = profile;
+            this.start = start;
+        }
+    }
+}
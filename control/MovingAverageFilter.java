@@ -0,0 +1,66 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A {@link Filter} that computes the mean of the most recent samples, kept in a ring buffer. The sum of the samples is updated
+ * incrementally, and is recomputed each time the ring buffer wraps so that rounding errors do not accumulate.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+final class MovingAverageFilter implements Filter {
+
+    private final double[] samples;
+    private int next;
+    private int count;
+    private double sum;
+
+    MovingAverageFilter(int windowSize) {
+        if (windowSize <= 0) throw new IllegalArgumentException("The window size must be positive");
+        this.samples = new double[windowSize];
+    }
+
+    @Override
+    public double applyAsDouble(double sample) {
+        if (count < samples.length) {
+            ++count;
+        } else {
+            sum -= samples[next];
+        }
+        samples[next] = sample;
+        sum += sample;
+        if (++next == samples.length) {
+            next = 0;
+            // Recompute the sum to discard any accumulated rounding error ...
+            sum = 0.0;
+            for (int i = 0; i != count; ++i) {
+                sum += samples[i];
+            }
+        }
+        return sum / count;
+    }
+
+    @Override
+    public void reset() {
+        next = 0;
+        count = 0;
+        sum = 0.0;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A {@link Filter} that computes the median of the most recent samples. The samples are kept in a ring buffer, and each slot
+ * of the ring buffer is also in one of two heaps: a max-heap of the smaller half of the samples and a min-heap of the larger
+ * half. A new sample replaces the oldest sample in its slot and is sifted within that slot's heap, and then the tops of the
+ * heaps are swapped if they are out of order, so each sample takes time proportional to the logarithm of the window size and
+ * the median is always at the top of the heaps.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+final class MovingMedianFilter implements Filter {
+
+    private final double[] samples;
+    // The slots in each heap, and the position of each slot within its heap ...
+    private final int[] lower;
+    private final int[] upper;
+    private final int[] positions;
+    private final boolean[] inLower;
+    private int lowerSize;
+    private int upperSize;
+    private int next;
+    private int count;
+
+    MovingMedianFilter(int windowSize) {
+        if (windowSize <= 0) throw new IllegalArgumentException("The window size must be positive");
+        this.samples = new double[windowSize];
+        this.lower = new int[(windowSize + 1) / 2];
+        this.upper = new int[windowSize / 2];
+        this.positions = new int[windowSize];
+        this.inLower = new boolean[windowSize];
+    }
+
+    @Override
+    public double applyAsDouble(double sample) {
+        int slot = next;
+        if (++next == samples.length) next = 0;
+        samples[slot] = sample;
+        if (count < samples.length) {
+            // Still filling the window, so add the slot to the smaller heap (keeping the lower heap never smaller) ...
+            ++count;
+            if (lowerSize <= upperSize) {
+                inLower[slot] = true;
+                lower[lowerSize] = slot;
+                positions[slot] = lowerSize++;
+                siftUp(slot);
+            } else {
+                inLower[slot] = false;
+                upper[upperSize] = slot;
+                positions[slot] = upperSize++;
+                siftUp(slot);
+            }
+        } else {
+            // Replace the oldest sample in place ...
+            siftUp(slot);
+            siftDown(slot);
+        }
+        if (upperSize != 0 && samples[lower[0]] > samples[upper[0]]) {
+            // The new sample is on the wrong side of the median, so swap the tops ...
+            int low = lower[0];
+            int high = upper[0];
+            lower[0] = high;
+            inLower[high] = true;
+            positions[high] = 0;
+            upper[0] = low;
+            inLower[low] = false;
+            positions[low] = 0;
+            siftDown(high);
+            siftDown(low);
+        }
+        return lowerSize > upperSize ? samples[lower[0]] : (samples[lower[0]] + samples[upper[0]]) / 2.0;
+    }
+
+    /**
+     * Determine whether the first slot belongs above the second in their heap.
+     */
+    private boolean above(boolean isLower, int first, int second) {
+        return isLower ? samples[first] > samples[second] : samples[first] < samples[second];
+    }
+
+    private void siftUp(int slot) {
+        boolean isLower = inLower[slot];
+        int[] heap = isLower ? lower : upper;
+        int position = positions[slot];
+        while (position > 0) {
+            int parentPosition = (position - 1) / 2;
+            int parent = heap[parentPosition];
+            if (!above(isLower, slot, parent)) break;
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+
+    private void siftDown(int slot) {
+        boolean isLower = inLower[slot];
+        int[] heap = isLower ? lower : upper;
+        int size = isLower ? lowerSize : upperSize;
+        int position = positions[slot];
+        while (true) {
+            int childPosition = 2 * position + 1;
+            if (childPosition >= size) break;
+            int child = heap[childPosition];
+            if (childPosition + 1 < size && above(isLower, heap[childPosition + 1], child)) {
+                child = heap[++childPosition];
+            }
+            if (!above(isLower, child, slot)) break;
+            heap[position] = child;
+            positions[child] = position;
+            position = childPosition;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+
+    @Override
+    public void reset() {
+        lowerSize = 0;
+        upperSize = 0;
+        next = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+
+import org.strongback.Executable;
+import org.strongback.Executor;
+import org.strongback.Strongback;
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.control.SoftwarePIDController.SourceType;
+import org.strongback.control.SoftwarePIDController.Target;
+
+/**
+ * A bank of software-only PID controllers that are all computed together. Each controller {@link #add(SourceType,
+ * DoubleSupplier, DoubleConsumer) added} to the bank is a {@link BankedController} that behaves just like a
+ * {@link SoftwarePIDController}, including its {@link BankedController#withInputRange(double, double) input range},
+ * {@link BankedController#withOutputRange(double, double) output range} and {@link BankedController#continuousInputs(boolean)
+ * continuous inputs}, but the bank is a single {@link Executable} that is registered with an {@link Executor}
+ * (typically Strongback's {@link Strongback#executor() central executor}) to compute the outputs of all of its controllers.
+ * <p>
+ * The settings and the state of all controllers are kept in separate {@code double[]} arrays indexed by controller, and each
+ * execution reads all of the inputs, computes all of the outputs in one pass over those arrays, and then writes all of the
+ * outputs. The settings of each controller are converted into coefficients when they are copied into the arrays, so that the
+ * same arithmetic computes controllers of both {@link SourceType source types}, with or without continuous inputs and integral
+ * terms, and the loop that computes the outputs has no branches or calls other than to {@link Math#rint(double)},
+ * {@link Math#min(double, double)} and {@link Math#max(double, double)}, which a JIT compiler that vectorizes loops can
+ * vectorize. Disabled controllers are computed too, but their inputs are not read, their outputs are not written, and their
+ * errors are cleared when they are enabled. The arrays are used only by the thread that executes the bank. The targets, gains
+ * and other settings can be changed on any thread at any time; each change is kept with its controller and marks the bank as
+ * changed, and the bank copies the settings of all controllers into its arrays at the start of the next execution after any
+ * change.
+ * <p>
+ * If the bank is registered with an executor, then its controllers should <em>never</em> be used with commands that
+ * {@link Controller#computeOutput() compute their outputs}. This is not checked, so robot programs are responsible for ensuring
+ * this does not happen.
+ *
+ * @author Randall Hauch
+ */
+@ThreadSafe
+public final class PIDControllerBank implements Executable {
+
+    private final AtomicBoolean changed = new AtomicBoolean(false);
+    private volatile BankedController[] controllers = new BankedController[0];
+
+    // These are only used by the thread that executes the bank ...
+    private int size = 0;
+    private DoubleSupplier[] sources = new DoubleSupplier[0];
+    private DoubleConsumer[] outputs = new DoubleConsumer[0];
+    private boolean[] enabled = new boolean[0];
+    private long[] resets = new long[0];
+    private double[] setpoint = new double[0];
+    private double[] tolerance = new double[0];
+    private double[] minOutput = new double[0];
+    private double[] maxOutput = new double[0];
+    // The coefficients computed from the settings; each mask is 1.0 or 0.0 ...
+    private double[] wrapRange = new double[0];
+    private double[] inverseWrapRange = new double[0];
+    private double[] errorGain = new double[0];
+    private double[] totalGain = new double[0];
+    private double[] inverseTotalGain = new double[0];
+    private double[] deltaGain = new double[0];
+    private double[] feedForward = new double[0];
+    private double[] integrate = new double[0];
+    private double[] keepTotal = new double[0];
+    private double[] hold = new double[0];
+    private double[] input = new double[0];
+    private double[] error = new double[0];
+    private double[] prevError = new double[0];
+    private double[] totalError = new double[0];
+    private double[] result = new double[0];
+
+    /**
+     * Add a new PID+FF controller to this bank that uses the supplied source for inputs and sends outputs to the supplied
+     * consumer. Before using, be sure to set the {@link PIDController#withGains(double, double, double, double) PID and feed
+     * forward gains}, {@link PIDController#withTarget(double) setpoint}, and {@link PIDController#withTolerance(double)
+     * tolerance}.
+     *
+     * @param sourceType the type of source values; may not be null
+     * @param source the source from which the inputs are to be read; may not be null
+     * @param output the output to which the calculated output is to be send; may not be null
+     * @return the controller; never null
+     */
+    public synchronized BankedController add(SourceType sourceType, DoubleSupplier source, DoubleConsumer output) {
+        if (sourceType == null) throw new IllegalArgumentException("The source type may not be null");
+        if (source == null) throw new IllegalArgumentException("The source may not be null");
+        if (output == null) throw new IllegalArgumentException("The output may not be null");
+        BankedController[] existing = controllers;
+        BankedController controller = new BankedController(this, existing.length, sourceType, source, output);
+        BankedController[] updated = Arrays.copyOf(existing, existing.length + 1);
+        updated[existing.length] = controller;
+        controllers = updated;
+        changed.set(true);
+        return controller;
+    }
+
+    /**
+     * Get the number of controllers in this bank.
+     *
+     * @return the number of controllers
+     */
+    public int size() {
+        return controllers.length;
+    }
+
+    @Override
+    public void execute(long timeInMillis) {
+        if (changed.getAndSet(false)) load();
+        int size = this.size;
+        DoubleSupplier[] sources = this.sources;
+        double[] input = this.input;
+        for (int k = 0; k != size; ++k) {
+            if (enabled[k]) input[k] = sources[k].getAsDouble();
+        }
+        compute(0, size);
+        DoubleConsumer[] outputs = this.outputs;
+        double[] result = this.result;
+        for (int k = 0; k != size; ++k) {
+            if (enabled[k]) outputs[k].accept(result[k]);
+        }
+    }
+
+    /**
+     * Compute the output of a single controller, as when the bank is not registered with an executor.
+     *
+     * @param k the index of the controller
+     * @return {@code true} if the controller is within tolerance, or {@code false} otherwise
+     */
+    synchronized boolean computeOutput(int k) {
+        if (changed.getAndSet(false)) load();
+        if (!enabled[k]) return false;
+        input[k] = sources[k].getAsDouble();
+        compute(k, k + 1);
+        outputs[k].accept(result[k]);
+        return Math.abs(error[k]) < tolerance[k];
+    }
+
+    /**
+     * Compute the outputs of a range of controllers in one pass without any branches.
+     *
+     * @param from the index of the first controller
+     * @param to the index after the last controller
+     */
+    private void compute(int from, int to) {
+        for (int k = from; k != to; ++k) {
+            // Current error, wrapping around for continuous inputs ...
+            double err = setpoint[k] - input[k];
+            err -= wrapRange[k] * Math.rint(err * inverseWrapRange[k]);
+            double previous = error[k];
+            prevError[k] = previous;
+            error[k] = err;
+
+            // Accumulate the total error, but only as far as the output range allows ...
+            double sum = totalError[k] + err;
+            double potential = sum * totalGain[k];
+            double limited = Math.max(minOutput[k], Math.min(maxOutput[k], potential));
+            double total = integrate[k] * (sum + (limited - potential) * inverseTotalGain[k]) + keepTotal[k] * totalError[k];
+            totalError[k] = total;
+
+            // Calculate the new result based upon PD+FF for rates, or PID+FF for distances ...
+            double out = errorGain[k] * err + totalGain[k] * total + deltaGain[k] * (err - previous)
+                    + setpoint[k] * feedForward[k];
+            out = hold[k] * result[k] + (1.0 - hold[k]) * out;
+            result[k] = Math.max(minOutput[k], Math.min(maxOutput[k], out));
+        }
+    }
+
+    /**
+     * Copy the settings of all controllers into the arrays, growing the arrays if controllers were added.
+     */
+    private synchronized void load() {
+        BankedController[] controllers = this.controllers;
+        int count = controllers.length;
+        if (count > sources.length) grow(Math.max(count, sources.length * 2));
+        for (int k = 0; k != count; ++k) {
+            BankedController controller = controllers[k];
+            Target target = controller.target;
+            SoftwarePIDController.Gains gains = controller.gains;
+            if (k >= size) {
+                sources[k] = controller.source;
+                outputs[k] = controller.output;
+            }
+            boolean wasEnabled = k < size && enabled[k];
+            enabled[k] = controller.enabled;
+            setpoint[k] = target.setpoint;
+            tolerance[k] = target.tolerance;
+            minOutput[k] = target.minOutput;
+            maxOutput[k] = target.maxOutput;
+            double range = target.maxInput - target.minInput;
+            boolean wraps = target.continuous && range > 0.0;
+            wrapRange[k] = wraps ? range : 0.0;
+            inverseWrapRange[k] = wraps ? 1.0 / range : 0.0;
+            // Rates use the P gain on the total error and the D gain on the error, and hold their output without a P gain ...
+            boolean rate = controller.sourceType == SourceType.RATE;
+            double gain = rate ? gains.p : gains.i;
+            errorGain[k] = rate ? gains.d : gains.p;
+            totalGain[k] = gain;
+            inverseTotalGain[k] = gain != 0.0 ? 1.0 / gain : 0.0;
+            deltaGain[k] = rate ? 0.0 : gains.d;
+            feedForward[k] = gains.feedForward;
+            integrate[k] = gain != 0.0 ? 1.0 : 0.0;
+            keepTotal[k] = gain == 0.0 && rate ? 1.0 : 0.0;
+            hold[k] = gain == 0.0 && rate ? 1.0 : 0.0;
+            long resetCount = controller.resets;
+            if (resets[k] != resetCount || (enabled[k] && !wasEnabled)) {
+                resets[k] = resetCount;
+                input[k] = 0.0;
+                error[k] = 0.0;
+                prevError[k] = 0.0;
+                totalError[k] = 0.0;
+                result[k] = 0.0;
+            }
+        }
+        size = count;
+    }
+
+    private void grow(int capacity) {
+        sources = Arrays.copyOf(sources, capacity);
+        outputs = Arrays.copyOf(outputs, capacity);
+        enabled = Arrays.copyOf(enabled, capacity);
+        resets = Arrays.copyOf(resets, capacity);
+        setpoint = Arrays.copyOf(setpoint, capacity);
+        tolerance = Arrays.copyOf(tolerance, capacity);
+        minOutput = Arrays.copyOf(minOutput, capacity);
+        maxOutput = Arrays.copyOf(maxOutput, capacity);
+        wrapRange = Arrays.copyOf(wrapRange, capacity);
+        inverseWrapRange = Arrays.copyOf(inverseWrapRange, capacity);
+        errorGain = Arrays.copyOf(errorGain, capacity);
+        totalGain = Arrays.copyOf(totalGain, capacity);
+        inverseTotalGain = Arrays.copyOf(inverseTotalGain, capacity);
+        deltaGain = Arrays.copyOf(deltaGain, capacity);
+        feedForward = Arrays.copyOf(feedForward, capacity);
+        integrate = Arrays.copyOf(integrate, capacity);
+        keepTotal = Arrays.copyOf(keepTotal, capacity);
+        hold = Arrays.copyOf(hold, capacity);
+        input = Arrays.copyOf(input, capacity);
+        error = Arrays.copyOf(error, capacity);
+        prevError = Arrays.copyOf(prevError, capacity);
+        totalError = Arrays.copyOf(totalError, capacity);
+        result = Arrays.copyOf(result, capacity);
+    }
+
+    void changed() {
+        changed.set(true);
+    }
+
+    /**
+     * A {@link PIDController} in a {@link PIDControllerBank}, which holds its own settings until the bank copies them into its
+     * arrays.
+     */
+    @ThreadSafe
+    public static final class BankedController implements PIDController {
+        private final PIDControllerBank bank;
+        private final int index;
+        protected final SourceType sourceType;
+        protected final DoubleSupplier source;
+        protected final DoubleConsumer output;
+        private final Map<Integer, SoftwarePIDController.Gains> gainsByProfile = new ConcurrentHashMap<>();
+        private final Executable executable = timeInMillis -> computeOutput();
+        protected volatile Target target = new Target();
+        protected volatile SoftwarePIDController.Gains gains = new SoftwarePIDController.Gains(0.0, 0.0, 0.0, 0.0);
+        protected volatile boolean enabled = true;
+        protected volatile long resets = 0L;
+        private volatile int currentProfile = DEFAULT_PROFILE;
+
+        private BankedController(PIDControllerBank bank, int index, SourceType sourceType, DoubleSupplier source,
+                DoubleConsumer output) {
+            this.bank = bank;
+            this.index = index;
+            this.sourceType = sourceType;
+            this.source = source;
+            this.output = output;
+            this.gainsByProfile.put(currentProfile, gains);
+        }
+
+        @Override
+        public Executable executable() {
+            return executable;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public BankedController enable() {
+            enabled = true;
+            bank.changed();
+            return this;
+        }
+
+        @Override
+        public BankedController disable() {
+            enabled = false;
+            output.accept(0.0d);
+            return reset();
+        }
+
+        @Override
+        public synchronized BankedController reset() {
+            ++resets;
+            bank.changed();
+            return this;
+        }
+
+        @Override
+        public synchronized BankedController withGains(double p, double i, double d, double feedForward) {
+            return withProfile(currentProfile, p, i, d, feedForward);
+        }
+
+        @Override
+        public Set<Integer> getProfiles() {
+            return Collections.unmodifiableSet(gainsByProfile.keySet());
+        }
+
+        @Override
+        public synchronized BankedController withProfile(int profile, double p, double i, double d, double feedForward) {
+            SoftwarePIDController.Gains newGains = new SoftwarePIDController.Gains(p, i, d, feedForward);
+            gainsByProfile.put(profile, newGains);
+            if (profile == currentProfile) {
+                gains = newGains;
+                bank.changed();
+            }
+            return this;
+        }
+
+        @Override
+        public int getCurrentProfile() {
+            return currentProfile;
+        }
+
+        @Override
+        public PIDController.Gains getGainsForCurrentProfile() {
+            return gains;
+        }
+
+        @Override
+        public synchronized BankedController useProfile(int profile) {
+            SoftwarePIDController.Gains gains = gainsByProfile.get(profile);
+            if (gains == null) throw new IllegalArgumentException("No profile '" + profile + "' exists");
+            this.gains = gains;
+            this.currentProfile = profile;
+            bank.changed();
+            return this;
+        }
+
+        @Override
+        public synchronized BankedController withTarget(double setpoint) {
+            target = target.withSetpoint(setpoint);
+            return reset();
+        }
+
+        @Override
+        public BankedController setValue(double value) {
+            return withTarget(value);
+        }
+
+        @Override
+        public double getTarget() {
+            return target.setpoint;
+        }
+
+        @Override
+        public double getValue() {
+            return source.getAsDouble();
+        }
+
+        @Override
+        public synchronized BankedController withTolerance(double tolerance) {
+            target = target.withTolerance(Math.abs(tolerance));
+            bank.changed();
+            return this;
+        }
+
+        /**
+         * Sets whether the input range is continuous, meaning it wraps around such as with an encoder.
+         *
+         * @param continuous <code>true</code> if the input values are continuous values, or <code>false</code> otherwise
+         * @return this object so that methods can be chained; never null
+         * @see #withInputRange(double, double)
+         */
+        public synchronized BankedController continuousInputs(boolean continuous) {
+            target = target.continuous(continuous);
+            bank.changed();
+            return this;
+        }
+
+        /**
+         * Sets the maximum and minimum values expected from the input and setpoint.
+         *
+         * @param minimumInput the minimum value expected from the input
+         * @param maximumInput the maximum value expected from the input
+         * @return this object so that methods can be chained; never null
+         * @throws IllegalArgumentException if the minimum is greater than the maximum
+         */
+        public synchronized BankedController withInputRange(double minimumInput, double maximumInput) {
+            if (minimumInput > maximumInput) {
+                throw new IllegalArgumentException("Lower bound is greater than upper bound");
+            }
+            // Recalculate the setpoint within range, and reset the errors ...
+            target = target.withInputRange(minimumInput, maximumInput);
+            return reset();
+        }
+
+        /**
+         * Sets the maximum and minimum values to be output.
+         *
+         * @param minimumOutput the minimum value to be output
+         * @param maximumOutput the maximum value to be output
+         * @return this object so that methods can be chained; never null
+         * @throws IllegalArgumentException if the minimum is greater than the maximum
+         */
+        public synchronized BankedController withOutputRange(double minimumOutput, double maximumOutput) {
+            if (minimumOutput > maximumOutput) {
+                throw new IllegalArgumentException("Lower bound is greater than upper bound");
+            }
+            target = target.withOutputRange(minimumOutput, maximumOutput);
+            bank.changed();
+            return this;
+        }
+
+        @Override
+        public double getTolerance() {
+            return target.tolerance;
+        }
+
+        @Override
+        public boolean checkTolerance(double value) {
+            return target.isWithinTolerance(value);
+        }
+
+        @Override
+        public boolean computeOutput() {
+            return bank.computeOutput(index);
+        }
+
+        @Override
+        public String toString() {
+            return "PID controller " + index + " in bank of " + bank.size();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import org.strongback.annotation.Immutable;
+
+/**
+ * A first-order-plus-dead-time model of a process, where a change in the input changes the output only after the dead time,
+ * and then the output moves exponentially toward the input times the gain with the given time constant. Many self-regulating
+ * mechanisms, such as the speed of a motor or the temperature of a part, are approximated well by such a model, and the model
+ * can be used to compute PID gains. Models are usually {@link ProcessModelEstimator estimated} from measurements.
+ *
+ * @author Randall Hauch
+ */
+@Immutable
+public final class ProcessModel {
+
+    private final double gain;
+    private final double timeConstant;
+    private final double deadTime;
+    private final double offset;
+
+    /**
+     * Create a model.
+     *
+     * @param gain the steady-state change in output per unit change in input; may not be 0
+     * @param timeConstantInSeconds the time in seconds for the output to move 63% of the way to its new steady state; must be
+     *        positive
+     * @param deadTimeInSeconds the time in seconds before a change in the input begins to change the output; may not be
+     *        negative
+     * @param offset the steady-state output when the input is 0
+     */
+    public ProcessModel(double gain, double timeConstantInSeconds, double deadTimeInSeconds, double offset) {
+        if (gain == 0.0) throw new IllegalArgumentException("The gain may not be 0");
+        if (!(timeConstantInSeconds > 0.0)) throw new IllegalArgumentException("The time constant must be positive");
+        if (deadTimeInSeconds < 0.0) throw new IllegalArgumentException("The dead time may not be negative");
+        this.gain = gain;
+        this.timeConstant = timeConstantInSeconds;
+        this.deadTime = deadTimeInSeconds;
+        this.offset = offset;
+    }
+
+    /**
+     * Get the steady-state change in output per unit change in input.
+     *
+     * @return the gain; never 0
+     */
+    public double gain() {
+        return gain;
+    }
+
+    /**
+     * Get the time for the output to move 63% of the way to its new steady state.
+     *
+     * @return the time constant in seconds; always positive
+     */
+    public double timeConstantInSeconds() {
+        return timeConstant;
+    }
+
+    /**
+     * Get the time before a change in the input begins to change the output.
+     *
+     * @return the dead time in seconds; never negative
+     */
+    public double deadTimeInSeconds() {
+        return deadTime;
+    }
+
+    /**
+     * Get the steady-state output when the input is 0.
+     *
+     * @return the offset
+     */
+    public double offset() {
+        return offset;
+    }
+
+    /**
+     * Compute the gains of a {@link SoftwarePIDController} for {@link SoftwarePIDController.SourceType#DISTANCE distances}
+     * that controls this process using internal model control (IMC) tuning, where the controlled output follows a change in the
+     * target with roughly the given time constant. Smaller time constants respond more quickly but are less robust to errors
+     * in the model; the time constant should be no smaller than the dead time, and half of the process' time constant is a good
+     * place to start.
+     *
+     * @param closedLoopTimeConstantInSeconds the desired time constant of the controlled process in seconds; must be positive
+     * @param periodInSeconds the period at which the controller computes its output; must be positive
+     * @return the gains, without feed forward; never null
+     */
+    public PIDController.Gains gains(double closedLoopTimeConstantInSeconds, double periodInSeconds) {
+        if (!(closedLoopTimeConstantInSeconds > 0.0)) throw new IllegalArgumentException("The time constant must be positive");
+        if (!(periodInSeconds > 0.0)) throw new IllegalArgumentException("The period must be positive");
+        // Sampling and holding the output adds about half a period of dead time ...
+        double delay = deadTime + periodInSeconds / 2.0;
+        double kc = (timeConstant + delay / 2.0) / (gain * (closedLoopTimeConstantInSeconds + delay / 2.0));
+        double ti = timeConstant + delay / 2.0;
+        double td = timeConstant * delay / (2.0 * timeConstant + delay);
+        // The controller sums the errors and differences the errors once per period ...
+        return new SoftwarePIDController.Gains(kc, kc * periodInSeconds / ti, kc * td / periodInSeconds, 0.0);
+    }
+
+    /**
+     * Compute the gains of a {@link SoftwarePIDController} for {@link SoftwarePIDController.SourceType#DISTANCE distances}
+     * using a closed-loop time constant of the larger of the dead time and half of this process' time constant.
+     *
+     * @param periodInSeconds the period at which the controller computes its output; must be positive
+     * @return the gains, without feed forward; never null
+     * @see #gains(double, double)
+     */
+    public PIDController.Gains gains(double periodInSeconds) {
+        return gains(Math.max(deadTime + periodInSeconds / 2.0, timeConstant / 2.0), periodInSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return "gain " + gain + " with time constant " + timeConstant + " s and dead time " + deadTime + " s";
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import java.util.Arrays;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * Estimates a first-order-plus-dead-time {@link ProcessModel} from samples of a process' input and output taken once per
+ * period, using streaming (recursive) least squares so that each sample is processed in constant time and memory.
+ * <p>
+ * Each sample is fitted to the discrete model {@code y[k+1] = a y[k] + b u[k-n] + c}, where {@code y} is the output,
+ * {@code u} is the input, and {@code n} is the dead time in periods. A separate estimate is kept for every dead time up to the
+ * maximum, and the {@link #model() model} uses the dead time whose estimate has predicted the samples best. The input should
+ * vary enough to excite the process, such as with a relay or a step; see {@code PIDTuningCommand}.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+public final class ProcessModelEstimator {
+
+    private static final int PARAMETERS = 3;
+    private static final double INITIAL_COVARIANCE = 1.0e6;
+    private static final int WARM_UP_SAMPLES = 5;
+
+    private final double period;
+    private final int maxDelay;
+    private final double[] inputs;
+    // The parameters and covariance of the estimate for each dead time, each as a flat array ...
+    private final double[][] parameters;
+    private final double[][] covariances;
+    private final double[] squaredErrors;
+    private final double[] phi = new double[PARAMETERS];
+    private final double[] gain = new double[PARAMETERS];
+    private double lastOutput;
+    private long samples;
+
+    /**
+     * Create an estimator.
+     *
+     * @param periodInSeconds the time between samples in seconds; must be positive
+     * @param maxDeadTimeInPeriods the largest dead time to consider, in periods; may not be negative
+     */
+    public ProcessModelEstimator(double periodInSeconds, int maxDeadTimeInPeriods) {
+        if (!(periodInSeconds > 0.0)) throw new IllegalArgumentException("The period must be positive");
+        if (maxDeadTimeInPeriods < 0) throw new IllegalArgumentException("The maximum dead time may not be negative");
+        this.period = periodInSeconds;
+        this.maxDelay = maxDeadTimeInPeriods;
+        this.inputs = new double[maxDeadTimeInPeriods + 1];
+        this.parameters = new double[maxDeadTimeInPeriods + 1][PARAMETERS];
+        this.covariances = new double[maxDeadTimeInPeriods + 1][PARAMETERS * PARAMETERS];
+        this.squaredErrors = new double[maxDeadTimeInPeriods + 1];
+        reset();
+    }
+
+    /**
+     * Discard all samples.
+     */
+    public void reset() {
+        for (int n = 0; n <= maxDelay; ++n) {
+            Arrays.fill(parameters[n], 0.0);
+            Arrays.fill(covariances[n], 0.0);
+            for (int j = 0; j != PARAMETERS; ++j) {
+                covariances[n][j * PARAMETERS + j] = INITIAL_COVARIANCE;
+            }
+            squaredErrors[n] = 0.0;
+        }
+        Arrays.fill(inputs, 0.0);
+        lastOutput = 0.0;
+        samples = 0;
+    }
+
+    /**
+     * Add a sample, which is the output of the process measured at the start of the period and the input applied to the process
+     * for the rest of the period.
+     *
+     * @param output the measured output of the process
+     * @param input the input applied to the process after the output was measured
+     */
+    public void add(double output, double input) {
+        if (samples > maxDelay) {
+            for (int n = 0; n <= maxDelay; ++n) {
+                // The input applied n periods before the previous sample ...
+                double delayed = inputs[(int) ((samples - 1 - n) % inputs.length)];
+                double error = update(parameters[n], covariances[n], lastOutput, delayed, output);
+                if (samples > maxDelay + WARM_UP_SAMPLES) squaredErrors[n] += error * error;
+            }
+        }
+        inputs[(int) (samples % inputs.length)] = input;
+        lastOutput = output;
+        ++samples;
+    }
+
+    private double update(double[] theta, double[] p, double previousOutput, double delayedInput, double output) {
+        phi[0] = previousOutput;
+        phi[1] = delayedInput;
+        phi[2] = 1.0;
+        // The error of the prediction made before this sample ...
+        double error = output - (theta[0] * phi[0] + theta[1] * phi[1] + theta[2] * phi[2]);
+        // gain = P phi / (1 + phi' P phi) ...
+        double denominator = 1.0;
+        for (int i = 0; i != PARAMETERS; ++i) {
+            double sum = 0.0;
+            for (int j = 0; j != PARAMETERS; ++j) {
+                sum += p[i * PARAMETERS + j] * phi[j];
+            }
+            gain[i] = sum;
+            denominator += phi[i] * sum;
+        }
+        for (int i = 0; i != PARAMETERS; ++i) {
+            gain[i] /= denominator;
+            theta[i] += gain[i] * error;
+        }
+        // P = P - gain (P phi)' , where P phi = gain * denominator ...
+        for (int i = 0; i != PARAMETERS; ++i) {
+            for (int j = 0; j != PARAMETERS; ++j) {
+                p[i * PARAMETERS + j] -= gain[i] * gain[j] * denominator;
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Get the number of samples that have been added.
+     *
+     * @return the number of samples
+     */
+    public long sampleCount() {
+        return samples;
+    }
+
+    /**
+     * Get the model that best fits the samples added so far.
+     *
+     * @return the model, or null if there are not enough samples or the samples do not fit a stable first-order process
+     */
+    public ProcessModel model() {
+        if (samples <= maxDelay + WARM_UP_SAMPLES + PARAMETERS) return null;
+        int best = 0;
+        for (int n = 1; n <= maxDelay; ++n) {
+            if (squaredErrors[n] < squaredErrors[best]) best = n;
+        }
+        double a = parameters[best][0];
+        double b = parameters[best][1];
+        double c = parameters[best][2];
+        if (!(a > 0.0 && a < 1.0) || b == 0.0) return null;
+        return new ProcessModel(b / (1.0 - a), -period / Math.log(a), best * period, c / (1.0 - a));
+    }
+
+    @Override
+    public String toString() {
+        return "Estimator of " + samples + " samples: " + model();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.control;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A {@link Filter} that follows the samples but changes by no more than a fixed amount per sample.
+ *
+ * @author Randall Hauch
+ */
+@NotThreadSafe
+final class SlewRateLimiter implements Filter {
+
+    private final double maxChange;
+    private double value;
+    private boolean first = true;
+
+    SlewRateLimiter(double maxChange) {
+        this.maxChange = maxChange;
+    }
+
+    @Override
+    public double applyAsDouble(double sample) {
+        if (first) {
+            value = sample;
+            first = false;
+        } else if (sample > value + maxChange) {
+            value += maxChange;
+        } else if (sample < value - maxChange) {
+            value -= maxChange;
+        } else {
+            value = sample;
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        first = true;
+        value = 0.0;
+    }
+}
@@ -17,10 +17,11 @@
 package org.strongback.control;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.DoubleConsumer;
 import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
@@ -78,6 +79,30 @@ import org.strongback.annotation.ThreadSafe;
  * {@link #withProfile(int, double, double, double, double) defined}, and then while in operation the gains for the controller
  * can be switched to any of the named profiles.
  *
+ * <h2>Elapsed time</h2>
+ * <p>
+ * By default the integral and differential terms assume that the output is computed at a fixed period, so delayed or skipped
+ * executions change how the controller behaves. A controller can instead {@link #useElapsedTime(double, double, double) use
+ * the time elapsed} since the output was last computed, as given by the time of each execution. The gains keep their meaning
+ * at the nominal period, so gains tuned for that period need not be changed, and in this mode:
+ * <ul>
+ * <li>the integral term accumulates the error scaled by the elapsed time;</li>
+ * <li>for {@link SourceType#DISTANCE distances}, the differential term uses the rate of change of the input rather than of the
+ * error, so changing the setpoint does not cause a spike in the output;</li>
+ * <li>that rate of change is smoothed with a first-order low-pass filter; and</li>
+ * <li>when the output is limited to the output range, the accumulated error is reduced in proportion to how much the output
+ * was limited (back-calculation), so the integral term does not wind up.</li>
+ * </ul>
+ *
+ * <h2>Threading</h2>
+ * <p>
+ * All of the settings (the target, the gains and profiles, whether the controller is enabled, and so on) are kept in a single
+ * immutable snapshot that is replaced with a compare-and-set whenever any setting is changed, so settings can be changed from
+ * any thread and each computation of the output always uses settings that are consistent with one another. The errors and
+ * other values used to compute the output are owned by the thread that computes the output (usually the {@link Executor}'s
+ * thread), and resetting the controller from another thread only asks that thread to clear them before its next computation.
+ * The {@link #basicChannels() recorded channels} of those values are meant to be read on that same thread.
+ *
  * @author Randall Hauch
  */
 @ThreadSafe
@@ -92,23 +117,25 @@ public class SoftwarePIDController implements PIDController {
     private final DoubleSupplier source;
     private final DoubleConsumer output;
     private final SourceType sourceType;
-    private final AtomicBoolean enabled = new AtomicBoolean(true);
-    private volatile Target target = new Target();
-    private volatile Gains gains = new Gains(0.0, 0.0, 0.0, 0.0);
-    private final Map<Integer, Gains> gainsByProfile = new ConcurrentHashMap<>();
-    private volatile int currentProfile = DEFAULT_PROFILE;
-    private volatile double lastInput = 0.0d;
-    private volatile double error = 0.0d;
-    private volatile double totalError = 0.0d;
-    private volatile double prevError = 0.0d;
-    private volatile double result = 0.0d;
+    private final AtomicReference<State> state = new AtomicReference<>(new State());
+    // These are owned by the thread that computes the output ...
+    private long resets = 0L;
+    private double lastInput = 0.0d;
+    private double error = 0.0d;
+    private double totalError = 0.0d;
+    private double prevError = 0.0d;
+    private double result = 0.0d;
+    private double derivative = 0.0d;
+    private long lastTimeInNanos = NO_TIME;
     private final Executable executable = new Executable() {
         @Override
         public void execute(long timeInMillis) {
-            computeOutput();
+            computeOutput(TimeUnit.MILLISECONDS.toNanos(timeInMillis));
         }
     };
 
+    private static final long NO_TIME = Long.MIN_VALUE;
+
     /**
      * Create a new PID+FF controller that uses the supplied source for inputs and sends outputs to the supplied consumer.
      * Before using, be sure to set the {@link #withGains(double, double, double, double) PID and feed forward gains}, the
@@ -140,8 +167,6 @@ public class SoftwarePIDController implements PIDController {
         if (source == null) throw new IllegalArgumentException("The source may not be null");
         if (output == null) throw new IllegalArgumentException("The output may not be null");
         this.sourceType = sourceType;
-        this.gains = new Gains(0.0, 0.0, 0.0, 0.0);
-        this.gainsByProfile.put(currentProfile, gains); // add the gains as the default profile
         this.source = source;
         this.output = output;
     }
@@ -163,30 +188,75 @@ public class SoftwarePIDController implements PIDController {
 
     @Override
     public boolean isEnabled() {
-        return enabled.get();
+        return state.get().enabled;
     }
 
     @Override
     public SoftwarePIDController enable() {
-        enabled.set(true);
+        state.updateAndGet(s -> s.enabled(true));
         return this;
     }
 
     @Override
     public SoftwarePIDController disable() {
-        enabled.set(false);
+        state.updateAndGet(s -> s.enabled(false).reset());
         output.accept(0.0d);
-        reset();
         return this;
     }
 
+    /**
+     * Reset the accumulated and previous errors. When called on any thread other than the one that computes the output, the
+     * errors are cleared just before the output is next computed.
+     *
+     * @return this object so that methods can be chained; never null
+     */
     @Override
     public SoftwarePIDController reset() {
+        state.updateAndGet(State::reset);
+        return this;
+    }
+
+    private void clear() {
         error = 0.0;
         prevError = 0.0;
         result = 0.0;
         totalError = 0.0;
         lastInput = 0.0;
+        derivative = 0.0;
+        lastTimeInNanos = NO_TIME;
+    }
+
+    /**
+     * Compute the integral and differential terms using the time elapsed since the output was last computed, rather than
+     * assuming the output is computed at a fixed period. The gains keep their meaning at the nominal period.
+     *
+     * @param nominalPeriodInSeconds the period at which the gains were tuned, typically the period of the executor; must be
+     *        positive
+     * @param derivativeFilterInSeconds the time constant of the low-pass filter applied to the rate of change used in the
+     *        differential term, or 0 for no filtering; may not be negative
+     * @param backCalculationGain how quickly the accumulated error is reduced when the output is limited, where 1.0 removes
+     *        the excess at the nominal period and 0 disables anti-windup; may not be negative
+     * @return this object so that methods can be chained; never null
+     * @see #useFixedPeriod()
+     */
+    public SoftwarePIDController useElapsedTime(double nominalPeriodInSeconds, double derivativeFilterInSeconds,
+            double backCalculationGain) {
+        if (nominalPeriodInSeconds <= 0.0) throw new IllegalArgumentException("The nominal period must be positive");
+        if (derivativeFilterInSeconds < 0.0) throw new IllegalArgumentException("The filter time constant may not be negative");
+        if (backCalculationGain < 0.0) throw new IllegalArgumentException("The back-calculation gain may not be negative");
+        Timing timing = new Timing(nominalPeriodInSeconds, derivativeFilterInSeconds, backCalculationGain);
+        state.updateAndGet(s -> s.withTiming(timing));
+        return this;
+    }
+
+    /**
+     * Compute the integral and differential terms assuming the output is computed at a fixed period. This is the default.
+     *
+     * @return this object so that methods can be chained; never null
+     * @see #useElapsedTime(double, double, double)
+     */
+    public SoftwarePIDController useFixedPeriod() {
+        state.updateAndGet(s -> s.withTiming(null));
         return this;
     }
 
@@ -214,15 +284,14 @@ public class SoftwarePIDController implements PIDController {
      */
     @Override
     public SoftwarePIDController withGains(double p, double i, double d, double feedForward) {
-        synchronized (this) {
-            withProfile(currentProfile, p, i, d, feedForward);
-        }
+        Gains gains = new Gains(p, i, d, feedForward);
+        state.updateAndGet(s -> s.withProfile(s.currentProfile, gains));
         return this;
     }
 
     @Override
     public Set<Integer> getProfiles() {
-        return Collections.unmodifiableSet(gainsByProfile.keySet());
+        return Collections.unmodifiableSet(state.get().gainsByProfile.keySet());
     }
 
     @Override
@@ -232,24 +301,19 @@ public class SoftwarePIDController implements PIDController {
 
     @Override
     public SoftwarePIDController withProfile(int profile, double p, double i, double d, double feedForward) {
-        synchronized (this) {
-            Gains newGains = new Gains(p, i, d, feedForward);
-            this.gainsByProfile.put(profile, newGains);
-            if (profile == this.currentProfile) {
-                this.gains = newGains;
-            }
-        }
+        Gains gains = new Gains(p, i, d, feedForward);
+        state.updateAndGet(s -> s.withProfile(profile, gains));
         return this;
     }
 
     @Override
     public int getCurrentProfile() {
-        return this.currentProfile;
+        return state.get().currentProfile;
     }
 
     @Override
     public PIDController.Gains getGainsForCurrentProfile() {
-        return this.gains;
+        return state.get().gains;
     }
 
     /**
@@ -259,17 +323,12 @@ public class SoftwarePIDController implements PIDController {
      * @return the gains for the named profile; may be null if the profile does not exist
      */
     public PIDController.Gains getGainsFor(int profile) {
-        return this.gainsByProfile.get(profile);
+        return state.get().gainsByProfile.get(profile);
     }
 
     @Override
     public SoftwarePIDController useProfile(int profile) {
-        Gains gains = this.gainsByProfile.get(profile);
-        if (gains == null) throw new IllegalArgumentException("No profile '" + profile + "' exists");
-        synchronized (this) {
-            this.gains = gains;
-            this.currentProfile = profile;
-        }
+        state.updateAndGet(s -> s.useProfile(profile));
         return this;
     }
 
@@ -283,7 +342,7 @@ public class SoftwarePIDController implements PIDController {
      * @see #withInputRange(double, double)
      */
     public SoftwarePIDController continuousInputs(boolean continuous) {
-        target = target.continuous(continuous);
+        state.updateAndGet(s -> s.withTarget(s.target.continuous(continuous)));
         return this;
     }
 
@@ -301,9 +360,8 @@ public class SoftwarePIDController implements PIDController {
         if (minimumInput > maximumInput) {
             throw new IllegalArgumentException("Lower bound is greater than upper bound");
         }
-        Target target = this.target.withInputRange(minimumInput, maximumInput); // recalculates setpoint within range
-        this.target = target;
-        updateSetpoint(target);
+        // Recalculate the setpoint within range, and reset the errors ...
+        state.updateAndGet(s -> s.withTarget(s.target.withInputRange(minimumInput, maximumInput)).reset());
         return this;
     }
 
@@ -318,12 +376,24 @@ public class SoftwarePIDController implements PIDController {
      */
     @Override
     public SoftwarePIDController withTarget(double setpoint) {
-        Target target = this.target.withSetpoint(setpoint);
-        this.target = target;
-        updateSetpoint(target);
+        state.updateAndGet(s -> s.withTarget(s.target.withSetpoint(setpoint)).reset());
         return this;
     }
     
+    /**
+     * Sets the target value for this controller without resetting the accumulated errors, for targets that move a little every
+     * cycle such as the positions or velocities of a {@link MotionProfile}. Otherwise this is the same as
+     * {@link #withTarget(double)}.
+     *
+     * @param setpoint the desired setpoint that this controller will use as a target
+     * @return this object so that methods can be chained; never null
+     * @see MotionProfileFollower
+     */
+    public SoftwarePIDController moveTarget(double setpoint) {
+        state.updateAndGet(s -> s.withTarget(s.target.withSetpoint(setpoint)));
+        return this;
+    }
+
     @Override
     public SoftwarePIDController setValue(double value) {
     	return withTarget(value);
@@ -331,7 +401,7 @@ public class SoftwarePIDController implements PIDController {
 
     @Override
     public double getTarget() {
-        return target.setpoint;
+        return state.get().target.setpoint;
     }
 
     @Override
@@ -348,17 +418,13 @@ public class SoftwarePIDController implements PIDController {
      */
     @Override
     public SoftwarePIDController withTolerance(double tolerance) {
-        target = target.withTolerance(Math.abs(tolerance));
+        state.updateAndGet(s -> s.withTarget(s.target.withTolerance(Math.abs(tolerance))));
         return this;
     }
 
     @Override
     public double getTolerance() {
-        return target.tolerance;
-    }
-
-    private void updateSetpoint(Target target) {
-        reset();
+        return state.get().target.tolerance;
     }
 
     /**
@@ -373,26 +439,71 @@ public class SoftwarePIDController implements PIDController {
         if (minimumOutput > maximumOutput) {
             throw new IllegalArgumentException("Lower bound is greater than upper bound");
         }
-        target = target.withOutputRange(minimumOutput, maximumOutput);
+        state.updateAndGet(s -> s.withTarget(s.target.withOutputRange(minimumOutput, maximumOutput)));
         return this;
     }
 
     @Override
     public boolean checkTolerance(double value) {
-        return target.isWithinTolerance(value);
+        return state.get().target.isWithinTolerance(value);
     }
 
     @Override
     public boolean computeOutput() {
-        if (enabled.get()) {
+        return computeOutput(state.get().timing != null ? Strongback.timeSystem().currentTimeInNanos() : 0L);
+    }
+
+    /**
+     * Compute the output given the current time, which is used only when {@link #useElapsedTime(double, double, double) using
+     * the elapsed time}. The executable of this controller calls this with the time of each execution.
+     *
+     * @param timeInNanos the current time in nanoseconds
+     * @return {@code true} if the controller is within tolerance of the setpoint, or {@code false} otherwise
+     */
+    public boolean computeOutput(long timeInNanos) {
+        State state = this.state.get();
+        return compute(state, state.target.setpoint, timeInNanos);
+    }
+
+    /**
+     * Compute the output given the current time and a setpoint that is used instead of the target, without changing the target
+     * or resetting the accumulated errors. This is used when the setpoint is the output of another controller, as in a
+     * {@link ControlGraph}.
+     *
+     * @param timeInNanos the current time in nanoseconds
+     * @param setpoint the setpoint, which is limited to the input range
+     * @return {@code true} if the controller is within tolerance of the setpoint, or {@code false} otherwise
+     */
+    boolean computeOutput(long timeInNanos, double setpoint) {
+        State state = this.state.get();
+        return compute(state, state.target.limitSetpoint(setpoint), timeInNanos);
+    }
+
+    private boolean compute(State state, double setpoint, long timeInNanos) {
+        if (state.enabled) {
+            if (state.resets != resets) {
+                // The controller was reset since the output was last computed ...
+                resets = state.resets;
+                clear();
+            }
+            double previousInput = lastInput;
             lastInput = source.getAsDouble();
-            Target target = this.target;
-            Gains gains = this.gains;
+            Target target = state.target;
+            Gains gains = state.gains;
 
             // Current error ...
             prevError = error;
-            error = target.calculateError(lastInput);
+            error = target.calculateError(setpoint, lastInput);
+
+            Timing timing = state.timing;
+            if (timing != null) {
+                result = computeTimed(timing, target, gains, setpoint, previousInput, timeInNanos);
+                // Output the result ...
+                output.accept(result);
+                return Math.abs(error) < target.tolerance;
+            }
 
+            derivative = error - prevError;
             switch (sourceType) {
                 case RATE:
                     // Total error will be used in the proportional term ...
@@ -408,7 +519,7 @@ public class SoftwarePIDController implements PIDController {
                             totalError = target.maxOutput / gains.p;
                         }
                         // Calculate the new result based upon PD+FF ...
-                        result = (gains.p * totalError) + (gains.d * error) + (target.setpoint * gains.feedForward);
+                        result = (gains.p * totalError) + (gains.d * error) + (setpoint * gains.feedForward);
                     }
                     break;
                 case DISTANCE:
@@ -429,7 +540,7 @@ public class SoftwarePIDController implements PIDController {
                     }
                     // Calculate the new result based upon PID+FF ...
                     result = (gains.p * error) + (gains.i * totalError) + (gains.d * (error - prevError))
-                            + (target.setpoint * gains.feedForward);
+                            + (setpoint * gains.feedForward);
                     break;
             }
 
@@ -445,6 +556,46 @@ public class SoftwarePIDController implements PIDController {
         return false;
     }
 
+    private double computeTimed(Timing timing, Target target, Gains gains, double setpoint, double previousInput,
+            long timeInNanos) {
+        // The elapsed time relative to the nominal period, assuming the nominal period the first time ...
+        long elapsed = lastTimeInNanos == NO_TIME ? timing.nominalInNanos : timeInNanos - lastTimeInNanos;
+        boolean first = lastTimeInNanos == NO_TIME;
+        lastTimeInNanos = timeInNanos;
+        double scale = elapsed > 0 ? (double) elapsed / timing.nominalInNanos : 0.0;
+
+        // Accumulate the error over the elapsed time, and compute the smoothed rate of change of the input ...
+        double total = totalError + error * scale;
+        if (sourceType == SourceType.DISTANCE && scale > 0.0) {
+            // The change in input is the opposite of the change in error for a fixed setpoint, and wraps the same way ...
+            double change = first ? 0.0 : -target.calculateError(setpoint, lastInput - previousInput + setpoint);
+            double rate = -change / scale;
+            double alpha = timing.filterInNanos / (timing.filterInNanos + elapsed);
+            derivative = alpha * derivative + (1.0 - alpha) * rate;
+        }
+
+        // Calculate the new result based upon PD+FF for rates, or PID+FF for distances ...
+        double unlimited;
+        double integralGain;
+        if (sourceType == SourceType.RATE) {
+            integralGain = gains.p;
+            unlimited = (gains.p * total) + (gains.d * error) + (setpoint * gains.feedForward);
+        } else {
+            integralGain = gains.i;
+            unlimited = (gains.p * error) + (gains.i * total) + (gains.d * derivative) + (setpoint * gains.feedForward);
+        }
+        double limited = target.limitOutput(unlimited);
+
+        // Back-calculate the accumulated error so that the integral term tracks the limited output ...
+        if (integralGain != 0) {
+            total += timing.backCalculation * (limited - unlimited) * scale / integralGain;
+        } else if (sourceType == SourceType.DISTANCE) {
+            total = 0.0;
+        }
+        totalError = total;
+        return limited;
+    }
+
     /**
      * Get a {@link DataRecordable recordable} object that can be used to {@link DataRecorder#register(String, DataRecordable)
      * register} this controller's input, output, setpoint, and error values as separate channels.
@@ -457,7 +608,7 @@ public class SoftwarePIDController implements PIDController {
         return (recorder, name) -> {
             recorder.register(name + " input", () -> lastInput);
             recorder.register(name + " output", () -> result);
-            recorder.register(name + " setpoint", () -> target.setpoint);
+            recorder.register(name + " setpoint", this::getTarget);
             recorder.register(name + " error", () -> error);
         };
     }
@@ -485,8 +636,8 @@ public class SoftwarePIDController implements PIDController {
             basicChannels().registerWith(recorder, name);
             recorder.register(name + " error(P)", () -> currentP() * error);
             recorder.register(name + " error(I)", () -> currentI() * totalError);
-            recorder.register(name + " error(D)", () -> currentD() * (error - prevError));
-            recorder.register(name + " error(F)", () -> currentFeedForward() * target.setpoint);
+            recorder.register(name + " error(D)", () -> currentD() * derivative);
+            recorder.register(name + " error(F)", () -> currentFeedForward() * getTarget());
         };
     }
 
@@ -517,7 +668,7 @@ public class SoftwarePIDController implements PIDController {
     public DataRecordable detailedChannels() {
         return (recorder, name) -> {
             errorChannels().registerWith(recorder, name);
-            recorder.register(name + " tolerance", () -> target.tolerance);
+            recorder.register(name + " tolerance", this::getTolerance);
             recorder.register(name + " gain(P)", this::currentP);
             recorder.register(name + " gain(I)", this::currentI);
             recorder.register(name + " gain(D)", this::currentD);
@@ -527,19 +678,77 @@ public class SoftwarePIDController implements PIDController {
     }
 
     protected double currentP() {
-        return gains.p;
+        return state.get().gains.p;
     }
 
     protected double currentI() {
-        return gains.i;
+        return state.get().gains.i;
     }
 
     protected double currentD() {
-        return gains.d;
+        return state.get().gains.d;
     }
 
     protected double currentFeedForward() {
-        return gains.feedForward;
+        return state.get().gains.feedForward;
+    }
+
+    /**
+     * An immutable snapshot of all of the settings of a controller.
+     */
+    @Immutable
+    protected static final class State {
+        protected final Target target;
+        protected final Gains gains;
+        protected final int currentProfile;
+        protected final Map<Integer, Gains> gainsByProfile;
+        protected final Timing timing;
+        protected final boolean enabled;
+        protected final long resets;
+
+        protected State() {
+            this(new Target(), new Gains(0.0, 0.0, 0.0, 0.0), DEFAULT_PROFILE, null, null, true, 0L);
+        }
+
+        private State(Target target, Gains gains, int currentProfile, Map<Integer, Gains> gainsByProfile, Timing timing,
+                boolean enabled, long resets) {
+            this.target = target;
+            this.gains = gains;
+            this.currentProfile = currentProfile;
+            this.gainsByProfile = gainsByProfile != null ? gainsByProfile : Collections.singletonMap(currentProfile, gains);
+            this.timing = timing;
+            this.enabled = enabled;
+            this.resets = resets;
+        }
+
+        public State withTarget(Target target) {
+            return new State(target, gains, currentProfile, gainsByProfile, timing, enabled, resets);
+        }
+
+        public State withProfile(int profile, Gains gains) {
+            Map<Integer, Gains> gainsByProfile = new HashMap<>(this.gainsByProfile);
+            gainsByProfile.put(profile, gains);
+            Gains current = profile == currentProfile ? gains : this.gains;
+            return new State(target, current, currentProfile, gainsByProfile, timing, enabled, resets);
+        }
+
+        public State useProfile(int profile) {
+            Gains gains = gainsByProfile.get(profile);
+            if (gains == null) throw new IllegalArgumentException("No profile '" + profile + "' exists");
+            return new State(target, gains, profile, gainsByProfile, timing, enabled, resets);
+        }
+
+        public State withTiming(Timing timing) {
+            return new State(target, gains, currentProfile, gainsByProfile, timing, enabled, resets);
+        }
+
+        public State enabled(boolean enabled) {
+            return new State(target, gains, currentProfile, gainsByProfile, timing, enabled, resets);
+        }
+
+        public State reset() {
+            return new State(target, gains, currentProfile, gainsByProfile, timing, enabled, resets + 1);
+        }
     }
 
     protected static final class Gains implements PIDController.Gains {
@@ -576,6 +785,22 @@ public class SoftwarePIDController implements PIDController {
         }
     }
 
+    /**
+     * The settings used when {@link SoftwarePIDController#useElapsedTime(double, double, double) using the elapsed time}.
+     */
+    @Immutable
+    protected static final class Timing {
+        protected final long nominalInNanos;
+        protected final double filterInNanos;
+        protected final double backCalculation;
+
+        protected Timing(double nominalPeriodInSeconds, double derivativeFilterInSeconds, double backCalculation) {
+            this.nominalInNanos = Math.max(1L, Math.round(nominalPeriodInSeconds * TimeUnit.SECONDS.toNanos(1)));
+            this.filterInNanos = derivativeFilterInSeconds * TimeUnit.SECONDS.toNanos(1);
+            this.backCalculation = backCalculation;
+        }
+    }
+
     @Immutable
     protected static final class Target {
         protected final double maxOutput;
@@ -635,7 +860,19 @@ public class SoftwarePIDController implements PIDController {
             return calculateError(value) < tolerance;
         }
 
+        public double limitSetpoint(double setpoint) {
+            if (maxInput > minInput) {
+                if (setpoint > maxInput) return maxInput;
+                if (setpoint < minInput) return minInput;
+            }
+            return setpoint;
+        }
+
         public double calculateError(double input) {
+            return calculateError(setpoint, input);
+        }
+
+        public double calculateError(double setpoint, double input) {
             double error = setpoint - input;
             if (continuous) {
                 if (Math.abs(error) > (maxInput - minInput) / 2.0) {
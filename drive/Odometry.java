@@ -0,0 +1,331 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.drive;
+
+import java.util.function.DoubleSupplier;
+
+import org.strongback.Executable;
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.AngleSensor;
+import org.strongback.components.Motor;
+
+/**
+ * An {@link Executable} that tracks the {@link Pose} of a robot on the field by fusing the distances travelled by its wheels
+ * with the heading from a gyroscope. Register it with Strongback's executor so that the pose is updated once every cycle:
+ *
+ * <pre>
+ * Odometry odometry = Odometry.tank(leftMotor, rightMotor, gyro, 64);
+ * Strongback.executor().register(odometry, Priority.HIGH);
+ * </pre>
+ *
+ * Each cycle the change in the wheel distances since the previous cycle is integrated along the arc implied by the change in
+ * heading, so the pose stays accurate even when the robot turns while driving. The gyroscope is used for the heading because
+ * it is far more accurate than the difference between the wheels, which slip whenever the robot turns. The
+ * {@link AngleSensor#getAngle() angle} of the gyroscope must increase as the robot turns counter-clockwise; use
+ * {@link AngleSensor#invert(AngleSensor)} for gyroscopes that measure clockwise.
+ * <p>
+ * The most recent poses are also kept in a preallocated ring buffer along with the time at which each was computed, so that
+ * measurements that arrive late (such as the location of a vision target computed from a camera image) can be combined with
+ * the pose of the robot {@link #poseAt(long, double[]) at the time} the measurement was taken. Looking up a past pose is a
+ * binary search through the buffer and allocates nothing.
+ *
+ * @author Randall Hauch
+ * @see Pose
+ */
+@ThreadSafe
+public final class Odometry implements Executable {
+
+    /**
+     * The default number of poses that are kept, which at the default 20 millisecond period covers the last 1.28 seconds.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 64;
+
+    private static final double EPSILON = 1.0e-9;
+
+    /**
+     * Create the odometry for a {@link TankDrive}, where the robot moves forward by the average of the distances travelled by
+     * the left and right wheels.
+     *
+     * @param left the left motor, whose {@link Motor#getPosition() position} is the distance travelled by the left wheels; may
+     *        not be null
+     * @param right the right motor, whose {@link Motor#getPosition() position} is the distance travelled by the right wheels;
+     *        may not be null
+     * @param gyro the sensor for the robot's heading in degrees, positive counter-clockwise; may not be null
+     * @param historySize the minimum number of poses to keep; must be positive
+     * @return the odometry; never null
+     */
+    public static Odometry tank(Motor left, Motor right, AngleSensor gyro, int historySize) {
+        if (left == null) throw new IllegalArgumentException("The left motor may not be null");
+        if (right == null) throw new IllegalArgumentException("The right motor may not be null");
+        return create(() -> (left.getPosition() + right.getPosition()) / 2.0, () -> 0.0, gyro, historySize);
+    }
+
+    /**
+     * Create the odometry for a {@link MecanumDrive}, where the distances travelled forward and sideways are computed from the
+     * distances travelled by each of the four wheels.
+     *
+     * @param leftFront the left front motor; may not be null
+     * @param leftRear the left rear motor; may not be null
+     * @param rightFront the right front motor; may not be null
+     * @param rightRear the right rear motor; may not be null
+     * @param gyro the sensor for the robot's heading in degrees, positive counter-clockwise; may not be null
+     * @param historySize the minimum number of poses to keep; must be positive
+     * @return the odometry; never null
+     */
+    public static Odometry mecanum(Motor leftFront, Motor leftRear, Motor rightFront, Motor rightRear, AngleSensor gyro,
+                                   int historySize) {
+        if (leftFront == null) throw new IllegalArgumentException("The left front motor may not be null");
+        if (leftRear == null) throw new IllegalArgumentException("The left rear motor may not be null");
+        if (rightFront == null) throw new IllegalArgumentException("The right front motor may not be null");
+        if (rightRear == null) throw new IllegalArgumentException("The right rear motor may not be null");
+        // This is the inverse of the wheel speeds computed by MecanumDrive.relativeCartesian ...
+        DoubleSupplier forward = () -> (leftFront.getPosition() + rightFront.getPosition() + leftRear.getPosition()
+                + rightRear.getPosition()) / 4.0;
+        DoubleSupplier left = () -> (rightFront.getPosition() + leftRear.getPosition() - leftFront.getPosition()
+                - rightRear.getPosition()) / 4.0;
+        return create(forward, left, gyro, historySize);
+    }
+
+    /**
+     * Create the odometry for a robot given functions that return the total distances the robot has travelled forward and to
+     * its left, each measured relative to the robot itself.
+     *
+     * @param forward the function that returns the total distance travelled forward; may not be null
+     * @param left the function that returns the total distance travelled to the left; may not be null
+     * @param gyro the sensor for the robot's heading in degrees, positive counter-clockwise; may not be null
+     * @param historySize the minimum number of poses to keep; must be positive
+     * @return the odometry; never null
+     */
+    public static Odometry create(DoubleSupplier forward, DoubleSupplier left, AngleSensor gyro, int historySize) {
+        if (forward == null) throw new IllegalArgumentException("The forward distance supplier may not be null");
+        if (left == null) throw new IllegalArgumentException("The left distance supplier may not be null");
+        if (gyro == null) throw new IllegalArgumentException("The gyroscope may not be null");
+        if (historySize <= 0) throw new IllegalArgumentException("The history size must be positive");
+        return new Odometry(forward, left, gyro, historySize);
+    }
+
+    private final DoubleSupplier forward;
+    private final DoubleSupplier left;
+    private final AngleSensor gyro;
+
+    // These are only used by the executor thread ...
+    private boolean started = false;
+    private double lastForward;
+    private double lastLeft;
+    private double lastHeading;
+    private double headingOffset;
+    private double x;
+    private double y;
+
+    // These are guarded by 'this' ...
+    private final long[] times;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] headings;
+    private final int mask;
+    private long count = 0L;
+    private long first = 0L;
+    private boolean resetRequested = true;
+    private double resetX;
+    private double resetY;
+    private double resetHeading;
+
+    private Odometry(DoubleSupplier forward, DoubleSupplier left, AngleSensor gyro, int historySize) {
+        this.forward = forward;
+        this.left = left;
+        this.gyro = gyro;
+        int size = Integer.highestOneBit(historySize);
+        if (size < historySize) size <<= 1;
+        this.times = new long[size];
+        this.xs = new double[size];
+        this.ys = new double[size];
+        this.headings = new double[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Reset the pose of the robot to the origin with a heading of zero. The change takes effect the next time this odometry is
+     * executed, and all poses computed before then are discarded.
+     *
+     * @return this object so that methods can be chained together; never null
+     */
+    public Odometry reset() {
+        return reset(0.0, 0.0, 0.0);
+    }
+
+    /**
+     * Reset the pose of the robot to the given position and heading. The change takes effect the next time this odometry is
+     * executed, and all poses computed before then are discarded.
+     *
+     * @param x the distance along the x-axis
+     * @param y the distance along the y-axis
+     * @param heading the heading in degrees, positive counter-clockwise
+     * @return this object so that methods can be chained together; never null
+     */
+    public synchronized Odometry reset(double x, double y, double heading) {
+        resetX = x;
+        resetY = y;
+        resetHeading = heading;
+        resetRequested = true;
+        return this;
+    }
+
+    @Override
+    public void execute(long timeInMillis) {
+        double forward = this.forward.getAsDouble();
+        double left = this.left.getAsDouble();
+        double angle = gyro.getAngle();
+        synchronized (this) {
+            if (resetRequested) {
+                x = resetX;
+                y = resetY;
+                headingOffset = resetHeading - angle;
+                started = false;
+                first = count;
+                resetRequested = false;
+            }
+        }
+        double heading = angle + headingOffset;
+        if (started) {
+            double dForward = forward - lastForward;
+            double dLeft = left - lastLeft;
+            double start = Math.toRadians(lastHeading);
+            double dTheta = Math.toRadians(heading) - start;
+            // Move along the arc with the measured change in heading, expressed relative to the starting heading ...
+            double sin = 1.0;
+            double cos = dTheta / 2.0;
+            if (Math.abs(dTheta) > EPSILON) {
+                sin = Math.sin(dTheta) / dTheta;
+                cos = (1.0 - Math.cos(dTheta)) / dTheta;
+            }
+            double dx = dForward * sin - dLeft * cos;
+            double dy = dForward * cos + dLeft * sin;
+            double sinStart = Math.sin(start);
+            double cosStart = Math.cos(start);
+            x += dx * cosStart - dy * sinStart;
+            y += dx * sinStart + dy * cosStart;
+        }
+        started = true;
+        lastForward = forward;
+        lastLeft = left;
+        lastHeading = heading;
+        record(timeInMillis, x, y, heading);
+    }
+
+    private synchronized void record(long timeInMillis, double x, double y, double heading) {
+        int slot = (int) count & mask;
+        times[slot] = timeInMillis;
+        xs[slot] = x;
+        ys[slot] = y;
+        headings[slot] = heading;
+        ++count;
+    }
+
+    /**
+     * Get the most recently computed pose.
+     *
+     * @return the pose, or null if no pose has been computed since this odometry was created or last reset
+     */
+    public synchronized Pose pose() {
+        if (count == first) return null;
+        int slot = (int) (count - 1) & mask;
+        return new Pose(xs[slot], ys[slot], headings[slot]);
+    }
+
+    /**
+     * Get the most recently computed pose without allocating any objects.
+     *
+     * @param pose the array of at least 3 values into which the x-coordinate, y-coordinate and heading are written; may not be
+     *        null
+     * @return true if the pose was written, or false if no pose has been computed since this odometry was created or last reset
+     */
+    public synchronized boolean pose(double[] pose) {
+        if (count == first) return false;
+        write(count - 1, pose);
+        return true;
+    }
+
+    /**
+     * Get the pose of the robot at the given time, interpolating between the poses computed immediately before and after that
+     * time.
+     *
+     * @param timeInMillis the time in the match (in milliseconds)
+     * @return the pose, or null if the time precedes all of the poses that are kept
+     * @see #poseAt(long, double[])
+     */
+    public Pose poseAt(long timeInMillis) {
+        double[] pose = new double[3];
+        return poseAt(timeInMillis, pose) ? new Pose(pose[0], pose[1], pose[2]) : null;
+    }
+
+    /**
+     * Get the pose of the robot at the given time, interpolating between the poses computed immediately before and after that
+     * time, without allocating any objects. Times after the most recent pose return the most recent pose.
+     *
+     * @param timeInMillis the time in the match (in milliseconds)
+     * @param pose the array of at least 3 values into which the x-coordinate, y-coordinate and heading are written; may not be
+     *        null
+     * @return true if the pose was written, or false if the time precedes all of the poses that are kept
+     */
+    public synchronized boolean poseAt(long timeInMillis, double[] pose) {
+        long low = Math.max(first, count - times.length);
+        long high = count - 1;
+        if (high < low || timeInMillis < times[(int) low & mask]) return false;
+        if (timeInMillis >= times[(int) high & mask]) {
+            write(high, pose);
+            return true;
+        }
+        // Find the last pose at or before the time; the pose at 'high' is always after the time ...
+        while (high - low > 1) {
+            long mid = (low + high) >>> 1;
+            if (times[(int) mid & mask] <= timeInMillis) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        int before = (int) low & mask;
+        int after = (int) high & mask;
+        double fraction = (double) (timeInMillis - times[before]) / (times[after] - times[before]);
+        pose[0] = xs[before] + fraction * (xs[after] - xs[before]);
+        pose[1] = ys[before] + fraction * (ys[after] - ys[before]);
+        pose[2] = headings[before] + fraction * (headings[after] - headings[before]);
+        return true;
+    }
+
+    private void write(long sequence, double[] pose) {
+        int slot = (int) sequence & mask;
+        pose[0] = xs[slot];
+        pose[1] = ys[slot];
+        pose[2] = headings[slot];
+    }
+
+    /**
+     * Get the maximum number of poses that are kept.
+     *
+     * @return the capacity of the pose history
+     */
+    public int historySize() {
+        return times.length;
+    }
+
+    @Override
+    public synchronized String toString() {
+        Pose pose = pose();
+        return pose != null ? pose.toString() : "[]";
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.drive;
+
+import org.strongback.annotation.Immutable;
+
+/**
+ * The position and heading of a robot on the field. The position is measured from the point where the robot's
+ * {@link Odometry} was last reset, with the x-axis pointing forward along the robot's initial heading and the y-axis pointing
+ * to the robot's left. The heading is in degrees, is positive counter-clockwise, and is not wrapped to any range.
+ *
+ * @author Randall Hauch
+ * @see Odometry
+ */
+@Immutable
+public final class Pose {
+
+    private final double x;
+    private final double y;
+    private final double heading;
+
+    /**
+     * Create a new pose.
+     *
+     * @param x the distance along the x-axis
+     * @param y the distance along the y-axis
+     * @param heading the heading in degrees, positive counter-clockwise
+     */
+    public Pose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+
+    /**
+     * Get the distance along the x-axis.
+     *
+     * @return the x-coordinate
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Get the distance along the y-axis.
+     *
+     * @return the y-coordinate
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Get the heading in degrees, where positive is counter-clockwise.
+     *
+     * @return the heading
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + x + ',' + y + ',' + heading + "]";
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.drive;
+
+import org.strongback.annotation.Immutable;
+
+/**
+ * A path for a robot to follow through a series of waypoints, precomputed as one point per execution period. Each point has
+ * a position, a heading in degrees, a signed curvature (positive when turning counter-clockwise), and a velocity along the
+ * path, using the same coordinates as {@link Odometry} and {@link Pose}. The first and last points are at rest. A
+ * {@link TrajectoryCommand} drives a {@link TankDrive} along the points, one point per cycle.
+ * <p>
+ * The path is a cubic Hermite spline that passes through each {@link Pose waypoint} in the direction of its heading, and so
+ * has a continuous heading. The velocity along the path is limited by the maximum velocity, by the maximum centripetal
+ * acceleration in the turns, and by the maximum acceleration when speeding up and slowing down, and the path is then sampled
+ * at equal intervals of time. All of this is computed when the trajectory is {@link #through(Constraints, Pose...) created},
+ * so it should be created when the robot is initialized rather than while it is running.
+ * <p>
+ * The points are also stored in a grid so that the {@link #nearest(double, double) point nearest} to any position can be
+ * found by examining only the grid cells around that position.
+ *
+ * @author Randall Hauch
+ */
+@Immutable
+public final class Trajectory {
+
+    private static final double RESOLUTION = 0.005;
+    private static final int MIN_STEPS_PER_SEGMENT = 16;
+
+    /**
+     * Create the trajectory that passes through the given waypoints within the given constraints.
+     *
+     * @param constraints the constraints on the motion; may not be null
+     * @param waypoints the poses through which the path passes, in order; there must be at least 2, and consecutive waypoints
+     *        must be at different positions
+     * @return the trajectory; never null
+     */
+    public static Trajectory through(Constraints constraints, Pose... waypoints) {
+        if (constraints == null) throw new IllegalArgumentException("The constraints may not be null");
+        if (waypoints == null || waypoints.length < 2) throw new IllegalArgumentException("There must be at least 2 waypoints");
+        for (int i = 1; i != waypoints.length; ++i) {
+            if (waypoints[i - 1] == null || waypoints[i] == null) {
+                throw new IllegalArgumentException("The waypoints may not be null");
+            }
+            if (waypoints[i - 1].getX() == waypoints[i].getX() && waypoints[i - 1].getY() == waypoints[i].getY()) {
+                throw new IllegalArgumentException("Consecutive waypoints must be at different positions");
+            }
+        }
+        return new Trajectory(constraints, waypoints);
+    }
+
+    private final Constraints constraints;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] headings;
+    private final double[] curvatures;
+    private final double[] velocities;
+    private final double length;
+
+    // The grid of points ...
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStarts;
+    private final int[] cellPoints;
+
+    private Trajectory(Constraints constraints, Pose[] waypoints) {
+        this.constraints = constraints;
+        // Sample the spline finely at roughly equal distances ...
+        int count = 1;
+        int[] steps = new int[waypoints.length - 1];
+        for (int i = 0; i != steps.length; ++i) {
+            double chord = distance(waypoints[i], waypoints[i + 1]);
+            steps[i] = Math.max(MIN_STEPS_PER_SEGMENT, (int) Math.ceil(chord / RESOLUTION));
+            count += steps[i];
+        }
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] heading = new double[count];
+        double[] curvature = new double[count];
+        double[] s = new double[count];
+        int n = 0;
+        for (int i = 0; i != steps.length; ++i) {
+            Pose from = waypoints[i];
+            Pose to = waypoints[i + 1];
+            double scale = distance(from, to);
+            double h0 = Math.toRadians(from.getHeading());
+            double h1 = Math.toRadians(to.getHeading());
+            double tx0 = scale * Math.cos(h0);
+            double ty0 = scale * Math.sin(h0);
+            double tx1 = scale * Math.cos(h1);
+            double ty1 = scale * Math.sin(h1);
+            for (int j = i == 0 ? 0 : 1; j <= steps[i]; ++j) {
+                double u = (double) j / steps[i];
+                double u2 = u * u;
+                double u3 = u2 * u;
+                // The Hermite basis functions and their first and second derivatives ...
+                double b0 = 2 * u3 - 3 * u2 + 1, b1 = u3 - 2 * u2 + u, b2 = -2 * u3 + 3 * u2, b3 = u3 - u2;
+                double d0 = 6 * u2 - 6 * u, d1 = 3 * u2 - 4 * u + 1, d2 = -6 * u2 + 6 * u, d3 = 3 * u2 - 2 * u;
+                double e0 = 12 * u - 6, e1 = 6 * u - 4, e2 = -12 * u + 6, e3 = 6 * u - 2;
+                x[n] = b0 * from.getX() + b1 * tx0 + b2 * to.getX() + b3 * tx1;
+                y[n] = b0 * from.getY() + b1 * ty0 + b2 * to.getY() + b3 * ty1;
+                double dx = d0 * from.getX() + d1 * tx0 + d2 * to.getX() + d3 * tx1;
+                double dy = d0 * from.getY() + d1 * ty0 + d2 * to.getY() + d3 * ty1;
+                double ddx = e0 * from.getX() + e1 * tx0 + e2 * to.getX() + e3 * tx1;
+                double ddy = e0 * from.getY() + e1 * ty0 + e2 * to.getY() + e3 * ty1;
+                double speed = Math.hypot(dx, dy);
+                double angle = speed > 0.0 ? Math.atan2(dy, dx) : h0 + u * (h1 - h0);
+                if (n == 0) {
+                    heading[n] = Math.toDegrees(angle);
+                } else {
+                    // Keep the heading continuous rather than wrapping it ...
+                    double change = Math.toDegrees(angle) - heading[n - 1];
+                    heading[n] = heading[n - 1] + change - 360.0 * Math.rint(change / 360.0);
+                    s[n] = s[n - 1] + Math.hypot(x[n] - x[n - 1], y[n] - y[n - 1]);
+                }
+                curvature[n] = speed > 0.0 ? (dx * ddy - dy * ddx) / (speed * speed * speed) : 0.0;
+                ++n;
+            }
+        }
+        this.length = s[count - 1];
+        // Limit the velocity in turns, then while accelerating from rest and while decelerating to rest ...
+        double[] v = new double[count];
+        for (int i = 0; i != count; ++i) {
+            double k = Math.abs(curvature[i]);
+            v[i] = k > 0.0 ? Math.min(constraints.maxVelocity, Math.sqrt(constraints.maxCentripetalAcceleration / k))
+                    : constraints.maxVelocity;
+        }
+        v[0] = 0.0;
+        v[count - 1] = 0.0;
+        double twoA = 2.0 * constraints.maxAcceleration;
+        for (int i = 1; i != count; ++i) {
+            v[i] = Math.min(v[i], Math.sqrt(v[i - 1] * v[i - 1] + twoA * (s[i] - s[i - 1])));
+        }
+        for (int i = count - 2; i >= 0; --i) {
+            v[i] = Math.min(v[i], Math.sqrt(v[i + 1] * v[i + 1] + twoA * (s[i + 1] - s[i])));
+        }
+        // Compute the time at which each sample is reached ...
+        double[] t = new double[count];
+        for (int i = 1; i != count; ++i) {
+            double ds = s[i] - s[i - 1];
+            double average = (v[i] + v[i - 1]) / 2.0;
+            t[i] = t[i - 1] + (average > 0.0 ? ds / average : 0.0);
+        }
+        // And sample at equal intervals of time ...
+        double period = constraints.periodInSeconds;
+        double duration = t[count - 1];
+        int size = (int) Math.ceil(duration / period - 1.0e-9) + 1;
+        this.xs = new double[size];
+        this.ys = new double[size];
+        this.headings = new double[size];
+        this.curvatures = new double[size];
+        this.velocities = new double[size];
+        int j = 0;
+        for (int i = 0; i != size; ++i) {
+            double time = Math.min(i * period, duration);
+            while (j < count - 2 && t[j + 1] <= time) {
+                ++j;
+            }
+            double span = t[j + 1] - t[j];
+            double f = span > 0.0 ? Math.min(1.0, (time - t[j]) / span) : 1.0;
+            xs[i] = x[j] + f * (x[j + 1] - x[j]);
+            ys[i] = y[j] + f * (y[j + 1] - y[j]);
+            headings[i] = heading[j] + f * (heading[j + 1] - heading[j]);
+            curvatures[i] = curvature[j] + f * (curvature[j + 1] - curvature[j]);
+            velocities[i] = v[j] + f * (v[j + 1] - v[j]);
+        }
+        velocities[0] = 0.0;
+        velocities[size - 1] = 0.0;
+
+        // Build the grid, with about one point per cell ...
+        double minX = xs[0], maxX = xs[0], minY = ys[0], maxY = ys[0];
+        for (int i = 1; i != size; ++i) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        double width = maxX - minX;
+        double height = maxY - minY;
+        double cell = Math.max(Math.sqrt(width * height / size), Math.max(width, height) / size);
+        this.cellSize = cell > 0.0 ? cell : 1.0;
+        this.minX = minX;
+        this.minY = minY;
+        this.columns = (int) (width / cellSize) + 1;
+        this.rows = (int) (height / cellSize) + 1;
+        this.cellStarts = new int[columns * rows + 1];
+        this.cellPoints = new int[size];
+        for (int i = 0; i != size; ++i) {
+            ++cellStarts[cell(xs[i], ys[i]) + 1];
+        }
+        for (int c = 0; c != columns * rows; ++c) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        int[] next = new int[columns * rows];
+        for (int i = 0; i != size; ++i) {
+            int c = cell(xs[i], ys[i]);
+            cellPoints[cellStarts[c] + next[c]++] = i;
+        }
+    }
+
+    private static double distance(Pose a, Pose b) {
+        return Math.hypot(b.getX() - a.getX(), b.getY() - a.getY());
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    private int cell(double x, double y) {
+        return row(y) * columns + column(x);
+    }
+
+    /**
+     * Get the constraints of this trajectory.
+     *
+     * @return the constraints; never null
+     */
+    public Constraints constraints() {
+        return constraints;
+    }
+
+    /**
+     * Get the number of points in this trajectory, which is one more than the number of periods it takes.
+     *
+     * @return the number of points; always at least 1
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Get the x-coordinate of the given point.
+     *
+     * @param index the index of the point; must be at least 0 and less than {@link #size()}
+     * @return the x-coordinate
+     */
+    public double x(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Get the y-coordinate of the given point.
+     *
+     * @param index the index of the point; must be at least 0 and less than {@link #size()}
+     * @return the y-coordinate
+     */
+    public double y(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Get the heading of the path at the given point.
+     *
+     * @param index the index of the point; must be at least 0 and less than {@link #size()}
+     * @return the heading in degrees, positive counter-clockwise
+     */
+    public double heading(int index) {
+        return headings[index];
+    }
+
+    /**
+     * Get the curvature of the path at the given point, which is the reciprocal of the radius of the turn.
+     *
+     * @param index the index of the point; must be at least 0 and less than {@link #size()}
+     * @return the curvature, which is positive when turning counter-clockwise
+     */
+    public double curvature(int index) {
+        return curvatures[index];
+    }
+
+    /**
+     * Get the velocity along the path at the given point.
+     *
+     * @param index the index of the point; must be at least 0 and less than {@link #size()}
+     * @return the velocity in distance per second
+     */
+    public double velocity(int index) {
+        return velocities[index];
+    }
+
+    /**
+     * Get the index of the point that is to be used at the given time after the start of the trajectory.
+     *
+     * @param seconds the time in seconds since the start of the trajectory
+     * @return the index of the point; never negative and always less than {@link #size()}
+     */
+    public int indexAt(double seconds) {
+        if (!(seconds > 0.0)) return 0;
+        double index = Math.rint(seconds / constraints.periodInSeconds);
+        return index < xs.length ? (int) index : xs.length - 1;
+    }
+
+    /**
+     * Get the index of the point nearest to the given position. This examines only the points in the grid cells around the
+     * position, so it takes roughly constant time when the position is near the path.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return the index of the nearest point; never negative and always less than {@link #size()}
+     */
+    public int nearest(double x, double y) {
+        int column = column(x);
+        int row = row(y);
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ++ring) {
+            for (int r = row - ring; r <= row + ring; ++r) {
+                if (r < 0 || r >= rows) continue;
+                boolean edge = r == row - ring || r == row + ring;
+                int step = edge ? 1 : Math.max(1, 2 * ring);
+                for (int c = column - ring; c <= column + ring; c += step) {
+                    if (c < 0 || c >= columns) continue;
+                    int cell = r * columns + c;
+                    for (int i = cellStarts[cell]; i != cellStarts[cell + 1]; ++i) {
+                        int point = cellPoints[i];
+                        double dx = xs[point] - x;
+                        double dy = ys[point] - y;
+                        double distance = dx * dx + dy * dy;
+                        if (distance < bestDistance || (distance == bestDistance && point < best)) {
+                            best = point;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+            // Every point in the next ring is at least this far from the position (or its nearest point within the grid) ...
+            double bound = ring * cellSize;
+            if (best >= 0 && bestDistance <= bound * bound) break;
+        }
+        return best;
+    }
+
+    /**
+     * Get the length of the path.
+     *
+     * @return the length
+     */
+    public double length() {
+        return length;
+    }
+
+    /**
+     * Get the time it takes to follow this trajectory.
+     *
+     * @return the duration in seconds
+     */
+    public double durationInSeconds() {
+        return (xs.length - 1) * constraints.periodInSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "trajectory of " + length + " over " + durationInSeconds() + " seconds with " + constraints;
+    }
+
+    /**
+     * The limits on the motion along a {@link Trajectory}, and the period between its points.
+     */
+    @Immutable
+    public static final class Constraints {
+
+        /**
+         * Create constraints that limit the velocity along the path, the acceleration along the path, and the centripetal
+         * acceleration in turns.
+         *
+         * @param maxVelocity the maximum velocity in distance per second; must be positive
+         * @param maxAcceleration the maximum acceleration in distance per second per second; must be positive
+         * @param maxCentripetalAcceleration the maximum centripetal acceleration in distance per second per second; must be
+         *        positive
+         * @param periodInSeconds the time between points, which should match the period at which the points are used; must be
+         *        positive
+         * @return the constraints; never null
+         */
+        public static Constraints of(double maxVelocity, double maxAcceleration, double maxCentripetalAcceleration,
+                                     double periodInSeconds) {
+            return new Constraints(maxVelocity, maxAcceleration, maxCentripetalAcceleration, periodInSeconds);
+        }
+
+        protected final double maxVelocity;
+        protected final double maxAcceleration;
+        protected final double maxCentripetalAcceleration;
+        protected final double periodInSeconds;
+
+        private Constraints(double maxVelocity, double maxAcceleration, double maxCentripetalAcceleration,
+                double periodInSeconds) {
+            if (!(maxVelocity > 0.0)) throw new IllegalArgumentException("The maximum velocity must be positive");
+            if (!(maxAcceleration > 0.0)) throw new IllegalArgumentException("The maximum acceleration must be positive");
+            if (!(maxCentripetalAcceleration > 0.0)) {
+                throw new IllegalArgumentException("The maximum centripetal acceleration must be positive");
+            }
+            if (!(periodInSeconds > 0.0)) throw new IllegalArgumentException("The period must be positive");
+            this.maxVelocity = maxVelocity;
+            this.maxAcceleration = maxAcceleration;
+            this.maxCentripetalAcceleration = maxCentripetalAcceleration;
+            this.periodInSeconds = periodInSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return "maximum velocity " + maxVelocity + ", acceleration " + maxAcceleration + ", centripetal acceleration "
+                    + maxCentripetalAcceleration + " every " + periodInSeconds + " seconds";
+        }
+    }
+}
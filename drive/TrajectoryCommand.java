@@ -0,0 +1,188 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.drive;
+
+import org.strongback.Strongback;
+import org.strongback.command.Command;
+import org.strongback.components.Clock;
+
+/**
+ * A command that drives a {@link TankDrive} along a {@link Trajectory}, using the robot's {@link Odometry} to correct for
+ * any difference between where the robot is and where the trajectory says it should be. Each time this command is executed it
+ * looks up the point of the trajectory for the time since the command started, computes the velocity and turn rate that move
+ * the robot toward that point with the Ramsete controller, and sends the corresponding left and right wheel speeds to
+ * {@link TankDrive#tank(double, double)} as fractions of the maximum wheel speed. Since the trajectory is sampled at equal
+ * intervals of time, looking up the point is a single division, and each execution takes constant time regardless of the
+ * length of the trajectory.
+ * <p>
+ * The trajectory and the odometry must use the same coordinates, so typically the odometry is
+ * {@link Odometry#reset(double, double, double) reset} to the first waypoint of the trajectory before this command runs. The
+ * command finishes when the time it takes to follow the trajectory has passed, and then stops the drive.
+ *
+ * @author Randall Hauch
+ */
+public class TrajectoryCommand extends Command {
+
+    /**
+     * The default gain that determines how aggressively the robot converges to the trajectory, for distances in meters.
+     */
+    public static final double DEFAULT_CONVERGENCE = 2.0;
+
+    /**
+     * The default damping of the convergence to the trajectory.
+     */
+    public static final double DEFAULT_DAMPING = 0.7;
+
+    private static final double NANOS_PER_SECOND = 1.0e9;
+
+    private final TankDrive drive;
+    private final Odometry odometry;
+    private final Trajectory trajectory;
+    private final double halfTrackWidth;
+    private final double maxWheelSpeed;
+    private final Clock clock;
+    private final double[] pose = new double[3];
+    private double convergence = DEFAULT_CONVERGENCE;
+    private double damping = DEFAULT_DAMPING;
+    private boolean startAtNearestPoint = false;
+    private long startInNanos;
+
+    /**
+     * Create a command that drives along the trajectory using Strongback's {@link Strongback#timeSystem() clock}.
+     *
+     * @param drive the drive; may not be null
+     * @param odometry the odometry that tracks the pose of the robot; may not be null
+     * @param trajectory the trajectory to follow; may not be null
+     * @param trackWidth the distance between the left and right wheels; must be positive
+     * @param maxWheelSpeed the speed of the wheels in distance per second when the drive's motors are at full speed; must be
+     *        positive
+     */
+    public TrajectoryCommand(TankDrive drive, Odometry odometry, Trajectory trajectory, double trackWidth,
+            double maxWheelSpeed) {
+        this(drive, odometry, trajectory, trackWidth, maxWheelSpeed, Strongback.timeSystem());
+    }
+
+    /**
+     * Create a command that drives along the trajectory using the given clock.
+     *
+     * @param drive the drive; may not be null
+     * @param odometry the odometry that tracks the pose of the robot; may not be null
+     * @param trajectory the trajectory to follow; may not be null
+     * @param trackWidth the distance between the left and right wheels; must be positive
+     * @param maxWheelSpeed the speed of the wheels in distance per second when the drive's motors are at full speed; must be
+     *        positive
+     * @param clock the clock used to determine how far along the trajectory the robot should be; may not be null
+     */
+    public TrajectoryCommand(TankDrive drive, Odometry odometry, Trajectory trajectory, double trackWidth,
+            double maxWheelSpeed, Clock clock) {
+        super(drive);
+        if (drive == null) throw new IllegalArgumentException("The drive may not be null");
+        if (odometry == null) throw new IllegalArgumentException("The odometry may not be null");
+        if (trajectory == null) throw new IllegalArgumentException("The trajectory may not be null");
+        if (!(trackWidth > 0.0)) throw new IllegalArgumentException("The track width must be positive");
+        if (!(maxWheelSpeed > 0.0)) throw new IllegalArgumentException("The maximum wheel speed must be positive");
+        if (clock == null) throw new IllegalArgumentException("The clock may not be null");
+        this.drive = drive;
+        this.odometry = odometry;
+        this.trajectory = trajectory;
+        this.halfTrackWidth = trackWidth / 2.0;
+        this.maxWheelSpeed = maxWheelSpeed;
+        this.clock = clock;
+    }
+
+    /**
+     * Set the gains of the Ramsete controller. The defaults are {@value #DEFAULT_CONVERGENCE} and {@value #DEFAULT_DAMPING},
+     * which work well for most robots when distances are in meters.
+     *
+     * @param convergence how aggressively the robot converges to the trajectory, like a proportional gain; must be positive
+     * @param damping the damping of the convergence, between 0 and 1; must be positive
+     * @return this object so that methods can be chained; never null
+     */
+    public TrajectoryCommand withGains(double convergence, double damping) {
+        if (!(convergence > 0.0)) throw new IllegalArgumentException("The convergence must be positive");
+        if (!(damping > 0.0 && damping < 1.0)) throw new IllegalArgumentException("The damping must be between 0 and 1");
+        this.convergence = convergence;
+        this.damping = damping;
+        return this;
+    }
+
+    /**
+     * Start following the trajectory from the point nearest to the robot's position when this command starts, rather than from
+     * the start of the trajectory. This is useful for resuming a trajectory after it was interrupted.
+     *
+     * @return this object so that methods can be chained; never null
+     */
+    public TrajectoryCommand startAtNearestPoint() {
+        this.startAtNearestPoint = true;
+        return this;
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        startInNanos = clock.currentTimeInNanos();
+        if (startAtNearestPoint && odometry.pose(pose)) {
+            int index = trajectory.nearest(pose[0], pose[1]);
+            startInNanos -= Math.round(index * trajectory.constraints().periodInSeconds * NANOS_PER_SECOND);
+        }
+    }
+
+    @Override
+    public boolean execute() {
+        double elapsed = (clock.currentTimeInNanos() - startInNanos) / NANOS_PER_SECOND;
+        int index = trajectory.indexAt(elapsed);
+        double velocity = trajectory.velocity(index);
+        double turnRate = velocity * trajectory.curvature(index);
+        if (odometry.pose(pose)) {
+            // Compute the error in the robot's own coordinates ...
+            double dx = trajectory.x(index) - pose[0];
+            double dy = trajectory.y(index) - pose[1];
+            double heading = Math.toRadians(pose[2]);
+            double cos = Math.cos(heading);
+            double sin = Math.sin(heading);
+            double errorX = cos * dx + sin * dy;
+            double errorY = cos * dy - sin * dx;
+            double errorHeading = Math.toRadians(trajectory.heading(index)) - heading;
+            errorHeading = Math.atan2(Math.sin(errorHeading), Math.cos(errorHeading));
+            // And apply the Ramsete control law ...
+            double gain = 2.0 * damping * Math.sqrt(turnRate * turnRate + convergence * velocity * velocity);
+            double sinc = Math.abs(errorHeading) > 1.0e-9 ? Math.sin(errorHeading) / errorHeading : 1.0;
+            double reference = velocity;
+            velocity = reference * Math.cos(errorHeading) + gain * errorX;
+            turnRate += gain * errorHeading + convergence * reference * sinc * errorY;
+        }
+        double left = velocity - turnRate * halfTrackWidth;
+        double right = velocity + turnRate * halfTrackWidth;
+        drive.tank(left / maxWheelSpeed, right / maxWheelSpeed);
+        return elapsed >= trajectory.durationInSeconds();
+    }
+
+    @Override
+    public void interrupted() {
+        drive.tank(0.0, 0.0);
+    }
+
+    @Override
+    public void end() {
+        drive.tank(0.0, 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return "TrajectoryCommand (" + trajectory + ")";
+    }
+}
@@ -64,7 +64,19 @@ public class MockClock implements Clock {
         notifyAll(); // Tell all sleeping threads to wake up and check the time.
         return this;
     }
-    
+
+    /**
+     * Set the clock to the specified time. This is useful to follow the times recorded during a match.
+     *
+     * @param timeInMillis the time in milliseconds
+     * @return this instance to enable chaining methods; never null
+     */
+    synchronized public MockClock setTimeInMillis(long timeInMillis) {
+        ticker.set(1000 * timeInMillis);
+        notifyAll(); // Tell all sleeping threads to wake up and check the time.
+        return this;
+    }
+
     /**
      * Sleep until the clock is incremented past specified number of seconds.
      * @param seconds the number of seconds to sleep.